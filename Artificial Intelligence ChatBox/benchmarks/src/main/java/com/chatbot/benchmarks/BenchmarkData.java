@@ -0,0 +1,80 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.storage.FAQStorage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Corpus and scratch directories shared by the benchmarks
+ */
+final class BenchmarkData {
+    
+    static final long SEED = 42;
+    static final int VOCABULARY = 50_000;
+    
+    // Queries cycled through by the benchmarks; a power of two
+    static final int QUERIES = 1024;
+    
+    // FAQs added per log record, so large corpora are not written in one piece
+    private static final int BATCH = 10_000;
+    
+    private BenchmarkData() {
+    }
+    
+    static SyntheticCorpus corpus() {
+        return new SyntheticCorpus(SEED, VOCABULARY);
+    }
+    
+    /**
+     * Open a storage in the given directory and add the FAQs to it
+     */
+    static FAQStorage createStorage(Path directory, List<FAQ> faqs) {
+        FAQStorage storage = new FAQStorage(directory);
+        for (int from = 0; from < faqs.size(); from += BATCH) {
+            storage.addFAQs(faqs.subList(from, Math.min(faqs.size(), from + BATCH)));
+        }
+        return storage;
+    }
+    
+    static Path createDirectory() {
+        try {
+            return Files.createTempDirectory("chatbot-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Copy the files of a storage directory into a new temporary directory
+     */
+    static Path copyDirectory(Path source) {
+        Path target = createDirectory();
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return target;
+    }
+    
+    static void deleteDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Error deleting " + directory + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.chatbot.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the usual JMH command line, but by default
+ * profiles allocations and writes the results as JSON to jmh-result.json,
+ * so runs of different builds can be compared.
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar [JMH options] [benchmark regexp...]
+ * </pre>
+ */
+public class BenchmarkMain {
+    
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println("Error parsing command line: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        if (options.shouldHelp()) {
+            try {
+                options.showHelp();
+            } catch (java.io.IOException e) {
+                System.err.println("Error showing help: " + e.getMessage());
+            }
+            return;
+        }
+        
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+        if (options.getProfilers().isEmpty()) {
+            builder.addProfiler(GCProfiler.class);
+        }
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result("jmh-result.json");
+        }
+        
+        Runner runner = new Runner(builder.build());
+        if (options.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQMatch;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.MatchEngine;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Compares the latency of the match engines on logged questions.
+ *
+ * Matches every question on one thread with the exact engine, which merges
+ * term arrays of the indexed candidates, and with the bit vector engine
+ * using scalar and, when available, SIMD bit counting. Each engine is warmed
+ * up with one pass before the timed rounds. Engines that are meant to agree
+ * with exact matching are checked against it. SIMD is included when the
+ * chatbot was installed with {@code mvn -Psimd install} and this runs with
+ * {@code --add-modules jdk.incubator.vector}.
+ *
+ * Questions are read one per line, as plain text or as JSON objects with a
+ * {@code question}, {@code message} or {@code input} field, like those
+ * {@code ReplayTool} reads.
+ *
+ * <pre>
+ * EngineComparison [--data dir] [--rounds n] input|-
+ * </pre>
+ */
+public class EngineComparison {
+    
+    private static final String[] QUESTION_FIELDS = { "question", "message", "input" };
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        int rounds = 5;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--rounds") && i + 1 < args.length) {
+                rounds = Integer.parseInt(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 1) {
+            System.err.println("Usage: EngineComparison [--data dir] [--rounds n] input|-");
+            System.exit(2);
+        }
+        
+        List<String> questions = new ArrayList<>();
+        Gson gson = new Gson();
+        try (BufferedReader in = openInput(files.get(0))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String question = line.trim().isEmpty() ? null : parseQuestion(gson, line);
+                if (question != null) {
+                    questions.add(question);
+                }
+            }
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try {
+            System.out.printf("%d FAQs, %d questions, %d rounds%n", storage.size(), questions.size(), rounds);
+            List<FAQMatch> expected = run("exact", new FAQTrainer(storage, MatchEngine.EXACT), questions, rounds, null);
+            
+            System.setProperty(FAQTrainer.BITVECTOR_SIMD_PROPERTY, "false");
+            run("bitvector", new FAQTrainer(storage, MatchEngine.BITVECTOR), questions, rounds, expected);
+            
+            System.setProperty(FAQTrainer.BITVECTOR_SIMD_PROPERTY, "true");
+            if (isSimdAvailable()) {
+                run("bitvector-simd", new FAQTrainer(storage, MatchEngine.BITVECTOR), questions, rounds, expected);
+            } else {
+                System.out.println("bitvector-simd: not available; install with -Psimd and run with"
+                    + " --add-modules jdk.incubator.vector");
+            }
+        } finally {
+            storage.close();
+        }
+    }
+    
+    /**
+     * Time an engine and report how many matches differ from the expected ones
+     */
+    private static List<FAQMatch> run(String name, FAQTrainer trainer, List<String> questions, int rounds,
+            List<FAQMatch> expected) {
+        List<FAQMatch> matches = new ArrayList<>(questions.size());
+        for (String question : questions) {
+            matches.add(trainer.scoreBestMatch(question));
+        }
+        
+        long started = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String question : questions) {
+                trainer.scoreBestMatch(question);
+            }
+        }
+        double micros = (System.nanoTime() - started) / 1000.0 / Math.max(1, rounds * questions.size());
+        
+        String agreement = "";
+        if (expected != null) {
+            int differences = 0;
+            for (int i = 0; i < matches.size(); i++) {
+                FAQMatch match = matches.get(i);
+                FAQMatch reference = expected.get(i);
+                if ((match == null) != (reference == null) || (match != null && match.getFaq() != reference.getFaq())) {
+                    differences++;
+                }
+            }
+            agreement = String.format(", %d differences from exact", differences);
+        }
+        System.out.printf("%s: %.1f us per question%s%n", name, micros, agreement);
+        return matches;
+    }
+    
+    private static boolean isSimdAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            Class.forName(FAQTrainer.class.getPackageName() + ".VectorBitCounter");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+    
+    private static String parseQuestion(Gson gson, String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) {
+            return trimmed;
+        }
+        try {
+            JsonObject object = gson.fromJson(trimmed, JsonObject.class);
+            for (String field : QUESTION_FIELDS) {
+                JsonElement value = object.get(field);
+                if (value != null && value.isJsonPrimitive()) {
+                    return value.getAsString();
+                }
+            }
+            return null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+    
+    private static BufferedReader openInput(String name) throws IOException {
+        InputStream in = name.equals("-") ? System.in : new FileInputStream(name);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,73 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.storage.FAQStorage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of loading a corpus: opening a store from its snapshot and log, as
+ * on startup, and importing the exported JSON file. Every load starts from
+ * a fresh copy of the same store, so each one is timed separately.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+    
+    @Param({"1000", "100000", "1000000"})
+    public int faqs;
+    
+    private Path saved;
+    private Path empty;
+    private FAQStorage reader;
+    private Path directory;
+    private FAQStorage opened;
+    
+    @Setup(Level.Trial)
+    public void save() {
+        saved = BenchmarkData.createDirectory();
+        // Closing waits for compaction and exports faqs.json
+        BenchmarkData.createStorage(saved, BenchmarkData.corpus().faqs(faqs)).close();
+        empty = BenchmarkData.createDirectory();
+        reader = new FAQStorage(empty);
+    }
+    
+    @TearDown(Level.Trial)
+    public void delete() {
+        reader.close();
+        BenchmarkData.deleteDirectory(empty);
+        BenchmarkData.deleteDirectory(saved);
+    }
+    
+    @Setup(Level.Invocation)
+    public void copy() {
+        directory = BenchmarkData.copyDirectory(saved);
+    }
+    
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (opened != null) {
+            opened.close();
+            opened = null;
+        }
+        BenchmarkData.deleteDirectory(directory);
+    }
+    
+    @Benchmark
+    public int loadFAQs() {
+        opened = new FAQStorage(directory);
+        return opened.size();
+    }
+    
+    @Benchmark
+    public List<FAQ> readJSON() throws IOException {
+        return reader.readJSON(directory.resolve("faqs.json"));
+    }
+}
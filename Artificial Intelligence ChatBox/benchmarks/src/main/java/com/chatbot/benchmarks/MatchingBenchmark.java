@@ -0,0 +1,65 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.MatchEngine;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of finding the best FAQ for an input, by corpus size and match engine.
+ * The forked JVM has the Vector API, so the bit vector engine counts bits
+ * with SIMD where the CPU supports it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Benchmark)
+public class MatchingBenchmark {
+    
+    @Param({"1000", "100000", "1000000"})
+    public int faqs;
+    
+    @Param({"exact", "bitvector", "minhash"})
+    public String engine;
+    
+    private Path directory;
+    private FAQStorage storage;
+    private FAQTrainer trainer;
+    private String[] queries;
+    
+    /**
+     * Position of each thread in the queries
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+    
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = BenchmarkData.corpus();
+        List<FAQ> generated = corpus.faqs(faqs);
+        directory = BenchmarkData.createDirectory();
+        storage = BenchmarkData.createStorage(directory, generated);
+        trainer = new FAQTrainer(storage, MatchEngine.parse(engine));
+        queries = corpus.queries(generated, BenchmarkData.QUERIES).toArray(new String[0]);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        storage.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+    
+    @Benchmark
+    public FAQ findBestMatch(Cursor cursor) {
+        cursor.next = (cursor.next + 1) & (BenchmarkData.QUERIES - 1);
+        return trainer.findBestMatch(queries[cursor.next]);
+    }
+}
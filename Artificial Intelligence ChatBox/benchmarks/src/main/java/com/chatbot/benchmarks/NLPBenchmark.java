@@ -0,0 +1,58 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.nlp.NLPProcessor;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of tokenizing, comparing and classifying a single input.
+ * Independent of the corpus size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NLPBenchmark {
+    
+    private NLPProcessor nlpProcessor;
+    private String[] queries;
+    private String[] questions;
+    private int next;
+    
+    @Setup
+    public void setUp() {
+        SyntheticCorpus corpus = BenchmarkData.corpus();
+        List<FAQ> faqs = corpus.faqs(BenchmarkData.QUERIES);
+        nlpProcessor = new NLPProcessor();
+        queries = corpus.queries(faqs, BenchmarkData.QUERIES).toArray(new String[0]);
+        questions = new String[faqs.size()];
+        for (int i = 0; i < questions.length; i++) {
+            questions[i] = faqs.get(i).getQuestion();
+        }
+    }
+    
+    private int next() {
+        next = (next + 1) & (BenchmarkData.QUERIES - 1);
+        return next;
+    }
+    
+    @Benchmark
+    public List<String> tokenize() {
+        return nlpProcessor.tokenize(queries[next()]);
+    }
+    
+    @Benchmark
+    public double calculateSimilarity() {
+        int i = next();
+        return nlpProcessor.calculateSimilarity(queries[i], questions[i]);
+    }
+    
+    @Benchmark
+    public String detectIntent() {
+        return nlpProcessor.detectIntent(queries[next()]);
+    }
+}
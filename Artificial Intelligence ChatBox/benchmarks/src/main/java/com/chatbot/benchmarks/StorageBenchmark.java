@@ -0,0 +1,63 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.storage.FAQStorage;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Cost of saving an open FAQ store: making a batch of usage counts durable,
+ * and exporting the whole corpus as JSON
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StorageBenchmark {
+    
+    // Usage counts recorded before each save
+    private static final int USAGES_PER_SAVE = 100;
+    
+    @Param({"1000", "100000", "1000000"})
+    public int faqs;
+    
+    private Path directory;
+    private FAQStorage storage;
+    private List<FAQ> stored;
+    private Random random;
+    
+    @Setup
+    public void setUp() {
+        directory = BenchmarkData.createDirectory();
+        storage = BenchmarkData.createStorage(directory, BenchmarkData.corpus().faqs(faqs));
+        stored = storage.getAllFAQs();
+        random = new Random(BenchmarkData.SEED);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        storage.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void saveFAQs() {
+        for (int i = 0; i < USAGES_PER_SAVE; i++) {
+            storage.recordUsage(stored.get(random.nextInt(stored.size())));
+        }
+        storage.saveFAQs();
+    }
+    
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void exportJSON() {
+        storage.exportJSON(directory.resolve("export.json"));
+    }
+}
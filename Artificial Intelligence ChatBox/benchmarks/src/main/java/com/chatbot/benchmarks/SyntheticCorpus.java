@@ -0,0 +1,126 @@
+package com.chatbot.benchmarks;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.nlp.NLPProcessor;
+import java.util.*;
+
+/**
+ * Deterministic generator of FAQs and user queries for benchmarks.
+ *
+ * Words are made up from syllables and drawn from a Zipf distribution, so
+ * a few words are very common and most are rare, as in real questions.
+ * The same seed always yields the same corpus and queries, so results of
+ * different builds can be compared.
+ */
+public final class SyntheticCorpus {
+    
+    private static final String[] SYLLABLES = {
+        "ba", "ce", "di", "fo", "gu", "ha", "je", "ki", "lo", "mu", "na", "pe", "qui", "ro", "su",
+        "ta", "ve", "wi", "xo", "yu", "za", "bro", "cla", "dre", "fli", "gro", "pla", "stu", "tri", "vel"
+    };
+    
+    private static final String[] OPENINGS = {
+        "how do i", "what is", "why does", "can i", "where is", "when should i", "who can", "is there"
+    };
+    
+    private static final String[] SMALL_TALK = {
+        "hi", "hello there", "thanks", "thank you so much", "bye", "goodbye", "help", "can you help me"
+    };
+    
+    private final long seed;
+    private final String[] words;
+    private final double[] cumulative;
+    private final NLPProcessor nlpProcessor;
+    
+    /**
+     * @param vocabulary number of distinct made-up words
+     */
+    public SyntheticCorpus(long seed, int vocabulary) {
+        this.seed = seed;
+        this.words = new String[vocabulary];
+        this.cumulative = new double[vocabulary];
+        this.nlpProcessor = new NLPProcessor();
+        Random random = new Random(seed);
+        Set<String> seen = new HashSet<>();
+        double total = 0;
+        for (int i = 0; i < vocabulary; i++) {
+            String word;
+            do {
+                StringBuilder builder = new StringBuilder();
+                int syllables = 2 + random.nextInt(3);
+                for (int j = 0; j < syllables; j++) {
+                    builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+                }
+                word = builder.toString();
+            } while (!seen.add(word));
+            words[i] = word;
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+    }
+    
+    /**
+     * Generate FAQs with distinct questions, keyworded the way training does
+     */
+    public List<FAQ> faqs(int count) {
+        Random random = new Random(seed + 1);
+        Set<String> questions = new HashSet<>();
+        List<FAQ> faqs = new ArrayList<>(count);
+        while (faqs.size() < count) {
+            String question = OPENINGS[random.nextInt(OPENINGS.length)] + " " + phrase(random, 2 + random.nextInt(9)) + "?";
+            if (questions.add(question)) {
+                String answer = phrase(random, 10 + random.nextInt(20)) + ".";
+                faqs.add(new FAQ(question, answer, new ArrayList<>(nlpProcessor.extractKeywords(question))));
+            }
+        }
+        return faqs;
+    }
+    
+    /**
+     * Generate queries: mostly FAQ questions reworded by replacing or
+     * dropping a word, plus small talk and questions about nothing in the
+     * corpus
+     */
+    public List<String> queries(List<FAQ> faqs, int count) {
+        Random random = new Random(seed + 2);
+        List<String> queries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 70 && !faqs.isEmpty()) {
+                String question = faqs.get(random.nextInt(faqs.size())).getQuestion();
+                List<String> tokens = new ArrayList<>(Arrays.asList(question.split(" ")));
+                int position = random.nextInt(tokens.size());
+                if (random.nextBoolean() && tokens.size() > 1) {
+                    tokens.remove(position);
+                } else {
+                    tokens.set(position, word(random));
+                }
+                queries.add(String.join(" ", tokens));
+            } else if (kind < 85) {
+                queries.add(SMALL_TALK[random.nextInt(SMALL_TALK.length)]);
+            } else {
+                queries.add(OPENINGS[random.nextInt(OPENINGS.length)] + " " + phrase(random, 2 + random.nextInt(6)));
+            }
+        }
+        return queries;
+    }
+    
+    private String phrase(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                builder.append(' ');
+            }
+            builder.append(word(random));
+        }
+        return builder.toString();
+    }
+    
+    private String word(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return words[Math.min(index, words.length - 1)];
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatbot.training;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Counts shared bits of several rows at once with the incubating Vector API.
+ *
+ * Each lane holds one row, so a row's count is accumulated in its lane and
+ * no horizontal reduction is needed. The Vector API of Java 17 has no bit
+ * count operation, so lanes are counted with the SWAR method. Only usable
+ * when the JVM runs with {@code --add-modules jdk.incubator.vector};
+ * loading this class fails otherwise.
+ */
+final class VectorBitCounter implements BitCounter {
+    
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    
+    @Override
+    public void countShared(long[] words, int rows, int from, int to, long[] query, int[] counts) {
+        int lanes = SPECIES.length();
+        long[] sums = new long[lanes];
+        int row = from;
+        for (; row + lanes <= to; row += lanes) {
+            LongVector shared = LongVector.zero(SPECIES);
+            for (int word = 0; word < query.length; word++) {
+                LongVector bits = LongVector.fromArray(SPECIES, words, word * rows + row).and(query[word]);
+                shared = shared.add(bitCount(bits));
+            }
+            shared.intoArray(sums, 0);
+            for (int lane = 0; lane < lanes; lane++) {
+                counts[row - from + lane] = (int) sums[lane];
+            }
+        }
+        // Rows that do not fill a whole vector
+        for (; row < to; row++) {
+            int shared = 0;
+            for (int word = 0; word < query.length; word++) {
+                shared += Long.bitCount(words[word * rows + row] & query[word]);
+            }
+            counts[row - from] = shared;
+        }
+    }
+    
+    private static LongVector bitCount(LongVector x) {
+        x = x.sub(x.lanewise(VectorOperators.LSHR, 1).and(0x5555555555555555L));
+        x = x.and(0x3333333333333333L).add(x.lanewise(VectorOperators.LSHR, 2).and(0x3333333333333333L));
+        x = x.add(x.lanewise(VectorOperators.LSHR, 4)).and(0x0F0F0F0F0F0F0F0FL);
+        return x.mul(0x0101010101010101L).lanewise(VectorOperators.LSHR, 56);
+    }
+}
@@ -11,10 +11,13 @@ import javafx.stage.Stage;
  */
 public class ChatBotApplication extends Application {
     
+    private ChatBotController controller;
+    
     @Override
     public void start(Stage primaryStage) throws Exception {
         FXMLLoader loader = new FXMLLoader(getClass().getResource("/com/chatbot/ui/chatbot.fxml"));
         Scene scene = new Scene(loader.load(), 800, 600);
+        controller = loader.getController();
         
         primaryStage.setTitle("AI Chatbot - Interactive Communication");
         primaryStage.setScene(scene);
@@ -23,6 +26,13 @@ public class ChatBotApplication extends Application {
         primaryStage.show();
     }
     
+    @Override
+    public void stop() {
+        if (controller != null) {
+            controller.shutdown();
+        }
+    }
+    
     public static void main(String[] args) {
         launch(args);
     }
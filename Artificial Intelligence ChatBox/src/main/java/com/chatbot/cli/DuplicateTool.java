@@ -0,0 +1,117 @@
+package com.chatbot.cli;
+
+import com.chatbot.model.DuplicatePair;
+import com.chatbot.model.FAQ;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.DuplicateDetector;
+import com.google.gson.Gson;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Reports, and optionally merges, FAQs whose questions are near duplicates.
+ *
+ * Writes one JSON line per pair of FAQs whose question similarity reaches
+ * the threshold. With {@code --merge}, every FAQ that duplicates a kept FAQ
+ * is removed: FAQs are kept in order of usage, most used first, and in
+ * corpus order for equal usage. Removed FAQs take their usage counts with
+ * them, and are removed with a single write to the log.
+ *
+ * <pre>
+ * DuplicateTool [--data dir] [--threshold t] [--merge] [output]
+ * </pre>
+ */
+public class DuplicateTool {
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        double threshold = 0.9;
+        boolean merge = false;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--threshold") && i + 1 < args.length) {
+                threshold = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--merge")) {
+                merge = true;
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() > 1) {
+            System.err.println("Usage: DuplicateTool [--data dir] [--threshold t] [--merge] [output]");
+            System.exit(2);
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try (Writer out = openOutput(files.isEmpty() ? null : files.get(0))) {
+            List<FAQ> faqs = storage.getAllFAQs();
+            long started = System.nanoTime();
+            List<DuplicatePair> duplicates = new DuplicateDetector(threshold).findDuplicates(faqs);
+            System.err.printf("Found %d duplicate pairs among %d FAQs in %.2f s%n",
+                duplicates.size(), faqs.size(), (System.nanoTime() - started) / 1e9);
+            
+            Gson gson = new Gson();
+            for (DuplicatePair duplicate : duplicates) {
+                Map<String, Object> result = new LinkedHashMap<>();
+                result.put("question", duplicate.getFirst().getQuestion());
+                result.put("duplicate", duplicate.getSecond().getQuestion());
+                result.put("score", duplicate.getScore());
+                out.write(gson.toJson(result));
+                out.write('\n');
+            }
+            out.flush();
+            
+            if (merge) {
+                List<String> redundant = new ArrayList<>();
+                for (FAQ faq : redundantFAQs(faqs, duplicates)) {
+                    redundant.add(faq.getQuestion());
+                }
+                System.err.printf("Removed %d duplicate FAQs%n", storage.removeFAQs(redundant).size());
+            }
+        } finally {
+            storage.close();
+        }
+    }
+    
+    /**
+     * Choose the FAQs to remove so that every removed FAQ duplicates one
+     * that is kept and no two kept FAQs duplicate each other
+     */
+    private static List<FAQ> redundantFAQs(List<FAQ> faqs, List<DuplicatePair> duplicates) {
+        Map<FAQ, List<FAQ>> partners = new IdentityHashMap<>();
+        for (DuplicatePair duplicate : duplicates) {
+            partners.computeIfAbsent(duplicate.getFirst(), faq -> new ArrayList<>()).add(duplicate.getSecond());
+            partners.computeIfAbsent(duplicate.getSecond(), faq -> new ArrayList<>()).add(duplicate.getFirst());
+        }
+        
+        // Stable, so equally used FAQs stay in corpus order
+        List<FAQ> byUsage = new ArrayList<>(faqs);
+        byUsage.sort(Comparator.comparingInt(FAQ::getUsageCount).reversed());
+        
+        Set<FAQ> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<FAQ> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<FAQ> redundant = new ArrayList<>();
+        for (FAQ faq : byUsage) {
+            List<FAQ> similar = partners.get(faq);
+            if (similar == null || removed.contains(faq)) {
+                continue;
+            }
+            kept.add(faq);
+            for (FAQ partner : similar) {
+                if (!kept.contains(partner) && removed.add(partner)) {
+                    redundant.add(partner);
+                }
+            }
+        }
+        return redundant;
+    }
+    
+    private static Writer openOutput(String name) throws IOException {
+        OutputStream out = name == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(name);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,52 @@
+package com.chatbot.cli;
+
+import com.chatbot.storage.CorpusFormat;
+import com.chatbot.storage.FAQStorage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Exports every FAQ to a CSV, JSON Lines or JSON file.
+ *
+ * FAQs are written one at a time, with answers read from the snapshot as
+ * they are written, so the heap stays constant however large the corpus
+ * is. The file appears complete or not at all. The format follows the
+ * file extension unless given.
+ *
+ * <pre>
+ * ExportTool [--data dir] [--format csv|jsonl|json] output
+ * </pre>
+ */
+public class ExportTool {
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        CorpusFormat format = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = CorpusFormat.parse(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 1) {
+            System.err.println("Usage: ExportTool [--data dir] [--format csv|jsonl|json] output");
+            System.exit(2);
+        }
+        Path output = Paths.get(files.get(0));
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try {
+            long started = System.nanoTime();
+            int written = storage.export(output, format != null ? format : CorpusFormat.of(output));
+            System.err.printf("Exported %,d FAQs in %.1f s%n", written, (System.nanoTime() - started) / 1e9);
+        } finally {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.chatbot.cli;
+
+import com.chatbot.storage.CorpusFormat;
+import com.chatbot.storage.CorpusReader;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQImporter;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.ImportResult;
+import com.google.gson.Gson;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Imports FAQs in bulk from a CSV, JSON Lines or JSON file.
+ *
+ * The file is streamed, keywords are extracted in parallel for rows that
+ * have none, and the FAQs are added with a single commit. FAQs replace
+ * stored FAQs with the same question. Progress goes to standard error, as
+ * do the first rejected rows; {@code --rejects} writes every rejected row
+ * as a JSON line instead. The format follows the file extension unless
+ * given.
+ *
+ * <pre>
+ * ImportTool [--data dir] [--format csv|jsonl|json] [--rejects file] input|-
+ * </pre>
+ */
+public class ImportTool {
+    
+    private static final int REPORTED_REJECTS = 20;
+    
+    /**
+     * Reports progress and rejected rows of an import
+     */
+    private static final class Progress implements FAQImporter.Listener {
+        private final Writer rejects;
+        private final Gson gson = new Gson();
+        private int reported;
+        
+        /**
+         * @param rejects where to write every rejected row, or null to report the first few
+         */
+        Progress(Writer rejects) {
+            this.rejects = rejects;
+        }
+        
+        @Override
+        public void progress(long rows, long rejected) {
+            System.err.printf("%,d rows read, %,d rejected%n", rows, rejected);
+        }
+        
+        @Override
+        public void rejected(long row, String reason) {
+            if (rejects == null) {
+                if (reported++ < REPORTED_REJECTS) {
+                    System.err.printf("Row %d rejected: %s%n", row, reason);
+                }
+                return;
+            }
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("row", row);
+            result.put("reason", reason);
+            try {
+                rejects.write(gson.toJson(result));
+                rejects.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        CorpusFormat format = null;
+        String rejects = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = CorpusFormat.parse(args[++i]);
+            } else if (args[i].equals("--rejects") && i + 1 < args.length) {
+                rejects = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 1) {
+            System.err.println("Usage: ImportTool [--data dir] [--format csv|jsonl|json] [--rejects file] input|-");
+            System.exit(2);
+        }
+        String input = files.get(0);
+        if (format == null) {
+            format = CorpusFormat.of(Paths.get(input));
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try (CorpusReader reader = new CorpusReader(ReplayTool.openInput(input), format);
+             Writer rejectOut = rejects == null ? null : new BufferedWriter(
+                 new OutputStreamWriter(new FileOutputStream(rejects), StandardCharsets.UTF_8))) {
+            ImportResult result = new FAQImporter(new FAQTrainer(storage)).importFAQs(reader, new Progress(rejectOut));
+            System.err.println(result);
+        } finally {
+            storage.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.chatbot.cli;
+
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.MatchEngine;
+import com.chatbot.training.MatchEvaluation;
+import com.google.gson.Gson;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Measures the recall of approximate MinHash matching against exact
+ * matching on a sample of logged questions.
+ *
+ * Reads questions in the same formats as {@link ReplayTool}, picks a uniform
+ * random sample of them and matches each both ways. The MinHash bands and
+ * rows are taken from the {@code chatbot.minhash.*} system properties, so
+ * the recall/latency trade-off can be tuned by rerunning the tool.
+ *
+ * <pre>
+ * RecallTool [--data dir] [--sample n] input|-
+ * </pre>
+ */
+public class RecallTool {
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        int sampleSize = 1000;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--sample") && i + 1 < args.length) {
+                sampleSize = Integer.parseInt(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 1) {
+            System.err.println("Usage: RecallTool [--data dir] [--sample n] input|-");
+            System.exit(2);
+        }
+        
+        List<String> sample;
+        try (BufferedReader in = ReplayTool.openInput(files.get(0))) {
+            sample = sample(in, Math.max(1, sampleSize));
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try {
+            FAQTrainer trainer = new FAQTrainer(storage, MatchEngine.MINHASH);
+            System.out.printf("%d FAQs, %s bands x %s rows%n", storage.size(),
+                Integer.getInteger(FAQTrainer.MINHASH_BANDS_PROPERTY, 16),
+                Integer.getInteger(FAQTrainer.MINHASH_ROWS_PROPERTY, 2));
+            MatchEvaluation evaluation = trainer.evaluateApproximateMatching(sample);
+            System.out.println(evaluation);
+        } finally {
+            storage.close();
+        }
+    }
+    
+    /**
+     * Pick a uniform random sample of the questions read, however many
+     * there are, with a fixed seed so runs can be compared
+     */
+    private static List<String> sample(BufferedReader in, int size) throws IOException {
+        Gson gson = new Gson();
+        Random random = new Random(42);
+        List<String> sample = new ArrayList<>(size);
+        long seen = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String question = ReplayTool.parseQuestion(gson, line);
+            if (question == null) {
+                continue;
+            }
+            seen++;
+            if (sample.size() < size) {
+                sample.add(question);
+            } else {
+                long slot = (long) (random.nextDouble() * seen);
+                if (slot < size) {
+                    sample.set((int) slot, question);
+                }
+            }
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,190 @@
+package com.chatbot.cli;
+
+import com.chatbot.model.FAQMatch;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Re-scores logged user questions against the current FAQ set.
+ *
+ * Reads questions one per line, either as plain text or as JSON objects
+ * with a {@code question}, {@code message} or {@code input} field, and
+ * writes one JSON line per question with the matched FAQ, its score and
+ * the matching latency. Input is processed in batches scored in parallel,
+ * so memory stays bounded by the batch size however large the input is.
+ * Replayed matches are not counted as FAQ usage.
+ *
+ * <pre>
+ * ReplayTool [--data dir] [--batch n] input|- [output]
+ * </pre>
+ */
+public class ReplayTool {
+    
+    private static final String[] QUESTION_FIELDS = { "question", "message", "input" };
+    
+    private final FAQTrainer trainer;
+    private final Gson gson;
+    private final int batchSize;
+    
+    public ReplayTool(FAQTrainer trainer, int batchSize) {
+        this.trainer = trainer;
+        this.gson = new Gson();
+        this.batchSize = Math.max(1, batchSize);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        int batch = 1024;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batch = Integer.parseInt(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty() || files.size() > 2) {
+            System.err.println("Usage: ReplayTool [--data dir] [--batch n] input|- [output]");
+            System.exit(2);
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try (BufferedReader in = openInput(files.get(0));
+             Writer out = openOutput(files.size() > 1 ? files.get(1) : null)) {
+            new ReplayTool(new FAQTrainer(storage), batch).replay(in, out);
+        } finally {
+            storage.close();
+        }
+    }
+    
+    /**
+     * Score every question read from the input and write the results
+     */
+    public void replay(BufferedReader in, Writer out) throws IOException {
+        long started = System.nanoTime();
+        long total = 0;
+        long matched = 0;
+        List<String> questions = new ArrayList<>(batchSize);
+        List<Long> lineNumbers = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+        
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String question = parseQuestion(gson, line);
+            if (question == null) {
+                writeLine(out, error(lineNumber, "No question found"));
+                continue;
+            }
+            questions.add(question);
+            lineNumbers.add(lineNumber);
+            if (questions.size() == batchSize) {
+                matched += scoreBatch(questions, lineNumbers, out);
+                total += questions.size();
+                questions.clear();
+                lineNumbers.clear();
+            }
+        }
+        if (!questions.isEmpty()) {
+            matched += scoreBatch(questions, lineNumbers, out);
+            total += questions.size();
+        }
+        out.flush();
+        
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.err.printf("Replayed %d questions, %d matched, in %.2f s (%.0f/s)%n",
+            total, matched, seconds, total / Math.max(seconds, 1e-9));
+    }
+    
+    /**
+     * Score one batch in parallel and write its results in input order
+     *
+     * @return the number of questions that matched an FAQ
+     */
+    private int scoreBatch(List<String> questions, List<Long> lineNumbers, Writer out) throws IOException {
+        FAQMatch[] matches = new FAQMatch[questions.size()];
+        long[] latencies = new long[questions.size()];
+        // Parallel streams run on the common fork/join pool
+        IntStream.range(0, questions.size()).parallel().forEach(i -> {
+            long start = System.nanoTime();
+            matches[i] = trainer.scoreBestMatch(questions.get(i));
+            latencies[i] = System.nanoTime() - start;
+        });
+        
+        int matched = 0;
+        for (int i = 0; i < matches.length; i++) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("line", lineNumbers.get(i));
+            result.put("input", questions.get(i));
+            if (matches[i] != null) {
+                matched++;
+                result.put("question", matches[i].getFaq().getQuestion());
+                result.put("score", matches[i].getScore());
+            }
+            result.put("latencyMicros", latencies[i] / 1000.0);
+            writeLine(out, result);
+        }
+        return matched;
+    }
+    
+    /**
+     * Read the question of a log line: the line itself, or a question field
+     * of a JSON object
+     *
+     * @return the question, or null for a JSON line without one
+     */
+    static String parseQuestion(Gson gson, String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) {
+            return trimmed;
+        }
+        try {
+            JsonObject object = gson.fromJson(trimmed, JsonObject.class);
+            for (String field : QUESTION_FIELDS) {
+                JsonElement value = object.get(field);
+                if (value != null && value.isJsonPrimitive()) {
+                    return value.getAsString();
+                }
+            }
+            return null;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+    
+    private void writeLine(Writer out, Object value) throws IOException {
+        out.write(gson.toJson(value));
+        out.write('\n');
+    }
+    
+    private static Map<String, Object> error(long lineNumber, String message) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("line", lineNumber);
+        result.put("error", message);
+        return result;
+    }
+    
+    static BufferedReader openInput(String name) throws IOException {
+        InputStream in = name.equals("-") ? System.in : new FileInputStream(name);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+    
+    private static Writer openOutput(String name) throws IOException {
+        OutputStream out = name == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(name);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+}
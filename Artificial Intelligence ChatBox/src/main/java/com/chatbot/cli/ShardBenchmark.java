@@ -0,0 +1,205 @@
+package com.chatbot.cli;
+
+import com.chatbot.model.FAQMatch;
+import com.chatbot.server.ShardWorker;
+import com.chatbot.storage.CorpusFormat;
+import com.chatbot.storage.CorpusReader;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.MatchEngine;
+import com.chatbot.training.ShardCoordinator;
+import com.chatbot.training.ShardedMatches;
+import com.google.gson.Gson;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Checks sharded matching against matching in one process, with every
+ * shard worker running on this machine.
+ *
+ * Partitions the FAQs of a data directory into a temporary directory,
+ * starts one {@link ShardWorker} process per shard on the loopback
+ * address, and matches every question both locally and through a
+ * {@link ShardCoordinator}. Reports the latency of each and how many best
+ * matches differ in score; FAQs with equal scores on different shards may
+ * be picked differently, which is reported apart. Then stops the first
+ * worker and matches again, to show the partial results of the others.
+ * System properties starting with {@code chatbot.} are passed on to the
+ * workers.
+ *
+ * <pre>
+ * ShardBenchmark [--data dir] [--shards n] [--rounds n] input|-
+ * </pre>
+ */
+public class ShardBenchmark {
+    
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String data = ".";
+        int shardCount = 4;
+        int rounds = 3;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--shards") && i + 1 < args.length) {
+                shardCount = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--rounds") && i + 1 < args.length) {
+                rounds = Integer.parseInt(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 1 || shardCount < 1) {
+            System.err.println("Usage: ShardBenchmark [--data dir] [--shards n] [--rounds n] input|-");
+            System.exit(2);
+        }
+        
+        List<String> questions = new ArrayList<>();
+        Gson gson = new Gson();
+        try (BufferedReader in = ReplayTool.openInput(files.get(0))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String question = line.trim().isEmpty() ? null : ReplayTool.parseQuestion(gson, line);
+                if (question != null) {
+                    questions.add(question);
+                }
+            }
+        }
+        
+        Path directory = Files.createTempDirectory("chatbot-shards");
+        List<Process> workers = new ArrayList<>();
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        try {
+            Path corpus = directory.resolve("corpus.jsonl");
+            storage.export(corpus, CorpusFormat.JSONL);
+            int[] counts;
+            try (CorpusReader reader = FAQStorage.openReader(corpus, CorpusFormat.JSONL)) {
+                counts = ShardTool.partition(reader, directory, shardCount);
+            }
+            System.out.printf("%d FAQs in %d shards %s, %d questions, %d rounds%n",
+                storage.size(), shardCount, Arrays.toString(counts), questions.size(), rounds);
+            
+            List<InetSocketAddress> addresses = new ArrayList<>();
+            for (int shard = 0; shard < shardCount; shard++) {
+                Process worker = startWorker(directory.resolve("shard-" + shard));
+                workers.add(worker);
+                addresses.add(new InetSocketAddress(InetAddress.getLoopbackAddress(), readPort(worker)));
+            }
+            
+            FAQTrainer local = new FAQTrainer(storage, MatchEngine.EXACT);
+            List<FAQMatch> expected = new ArrayList<>(questions.size());
+            double localMicros = time(questions, rounds, question -> local.scoreBestMatch(question), expected);
+            System.out.printf("one process: %.1f us per question%n", localMicros);
+            
+            try (ShardCoordinator coordinator = new ShardCoordinator(addresses,
+                    Long.getLong(FAQTrainer.SHARD_TIMEOUT_PROPERTY, 500))) {
+                List<ShardedMatches> sharded = new ArrayList<>(questions.size());
+                double shardedMicros = time(questions, rounds, coordinator::match, sharded);
+                System.out.printf("%d shards: %.1f us per question, %s%n", shardCount, shardedMicros,
+                    compare(expected, sharded));
+                
+                workers.get(0).destroy();
+                workers.get(0).waitFor();
+                List<ShardedMatches> partial = new ArrayList<>(questions.size());
+                double partialMicros = time(questions, 0, coordinator::match, partial);
+                System.out.printf("shard 0 stopped: %.1f us per question, %s%n", partialMicros,
+                    compare(expected, partial));
+            }
+        } finally {
+            for (Process worker : workers) {
+                worker.destroy();
+            }
+            storage.close();
+            deleteRecursively(directory);
+        }
+    }
+    
+    private interface Matcher<T> {
+        T match(String question);
+    }
+    
+    /**
+     * Match every question once into results, then time the given number
+     * of further rounds, or the first pass without any
+     */
+    private static <T> double time(List<String> questions, int rounds, Matcher<T> matcher, List<T> results) {
+        long started = System.nanoTime();
+        for (String question : questions) {
+            results.add(matcher.match(question));
+        }
+        if (rounds == 0) {
+            return (System.nanoTime() - started) / 1000.0 / Math.max(1, questions.size());
+        }
+        started = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (String question : questions) {
+                matcher.match(question);
+            }
+        }
+        return (System.nanoTime() - started) / 1000.0 / Math.max(1, rounds * questions.size());
+    }
+    
+    private static String compare(List<FAQMatch> expected, List<ShardedMatches> sharded) {
+        int differences = 0;
+        int ties = 0;
+        int partial = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            FAQMatch reference = expected.get(i);
+            FAQMatch match = sharded.get(i).getBestMatch();
+            if (sharded.get(i).isPartial()) {
+                partial++;
+            }
+            if ((match == null) != (reference == null)
+                    || (match != null && match.getScore() != reference.getScore())) {
+                differences++;
+            } else if (match != null && !match.getFaq().getQuestion().equals(reference.getFaq().getQuestion())) {
+                ties++;
+            }
+        }
+        return String.format("%d differences from one process, %d ties picked differently, %d partial results",
+            differences, ties, partial);
+    }
+    
+    private static Process startWorker(Path directory) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("chatbot.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add("--data");
+        command.add(directory.toString());
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+    
+    /**
+     * Wait for a worker to report the port it listens on
+     */
+    private static int readPort(Process worker) throws IOException {
+        BufferedReader out = new BufferedReader(new InputStreamReader(worker.getInputStream(), StandardCharsets.UTF_8));
+        String line = out.readLine();
+        if (line == null) {
+            throw new IOException("Shard worker exited before listening");
+        }
+        return Integer.parseInt(line.substring(line.lastIndexOf(' ') + 1).trim());
+    }
+    
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
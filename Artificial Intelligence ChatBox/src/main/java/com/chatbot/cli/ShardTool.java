@@ -0,0 +1,119 @@
+package com.chatbot.cli;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.nlp.NLPProcessor;
+import com.chatbot.storage.CorpusFormat;
+import com.chatbot.storage.CorpusReader;
+import com.chatbot.storage.CorpusWriter;
+import com.chatbot.storage.FAQStorage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Partitions a CSV, JSON Lines or JSON corpus into data directories for
+ * shard workers.
+ *
+ * Each FAQ goes to the shard {@link FAQStorage#shardOf} picks for its
+ * question and is written to {@code shard-<n>/faqs.json} under the output
+ * directory, which a {@code ShardWorker} started there loads on its first
+ * start. The corpus is streamed, so it may be larger than the heap. FAQs
+ * without keywords get those of their question, as training gives them.
+ *
+ * <pre>
+ * ShardTool --shards n [--format csv|jsonl|json] input|- output-dir
+ * </pre>
+ */
+public class ShardTool {
+    
+    private static final int REPORTED_REJECTS = 20;
+    
+    public static void main(String[] args) throws IOException {
+        int shards = 0;
+        CorpusFormat format = null;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--shards") && i + 1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = CorpusFormat.parse(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.size() != 2 || shards < 1) {
+            System.err.println("Usage: ShardTool --shards n [--format csv|jsonl|json] input|- output-dir");
+            System.exit(2);
+        }
+        String input = files.get(0);
+        if (format == null) {
+            format = CorpusFormat.of(Paths.get(input));
+        }
+        
+        long started = System.nanoTime();
+        int[] counts;
+        try (CorpusReader reader = new CorpusReader(ReplayTool.openInput(input), format)) {
+            counts = partition(reader, Paths.get(files.get(1)), shards);
+        }
+        System.err.printf("Partitioned %,d FAQs in %.1f s: %s%n", Arrays.stream(counts).sum(),
+            (System.nanoTime() - started) / 1e9, Arrays.toString(counts));
+    }
+    
+    /**
+     * Write the FAQs of a corpus to one data directory per shard, reporting
+     * rejected rows to standard error
+     *
+     * @return the number of FAQs written to each shard
+     */
+    static int[] partition(CorpusReader reader, Path directory, int shards) throws IOException {
+        NLPProcessor nlpProcessor = new NLPProcessor();
+        CorpusWriter[] writers = new CorpusWriter[shards];
+        int[] counts = new int[shards];
+        long rejected = 0;
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                Path shardDirectory = directory.resolve("shard-" + shard);
+                Files.createDirectories(shardDirectory);
+                try (Stream<Path> existing = Files.list(shardDirectory)) {
+                    // A worker would keep its stored FAQs and ignore the new file
+                    if (existing.findAny().isPresent()) {
+                        throw new IOException(shardDirectory + " is not empty");
+                    }
+                }
+                writers[shard] = new CorpusWriter(
+                    Files.newBufferedWriter(shardDirectory.resolve("faqs.json"), StandardCharsets.UTF_8),
+                    CorpusFormat.JSON);
+            }
+            CorpusReader.Row row;
+            while ((row = reader.next()) != null) {
+                FAQ faq = row.getFaq();
+                if (faq == null) {
+                    if (rejected++ < REPORTED_REJECTS) {
+                        System.err.printf("Row %d rejected: %s%n", row.getNumber(), row.getError());
+                    }
+                    continue;
+                }
+                if (faq.getKeywords() == null) {
+                    faq.setKeywords(new ArrayList<>(nlpProcessor.extractKeywords(faq.getQuestion())));
+                }
+                int shard = FAQStorage.shardOf(faq.getQuestion(), shards);
+                writers[shard].write(faq);
+                counts[shard]++;
+            }
+        } finally {
+            for (CorpusWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        if (rejected > 0) {
+            System.err.printf("%,d rows rejected%n", rejected);
+        }
+        return counts;
+    }
+}
@@ -1,5 +1,9 @@
 package com.chatbot.core;
 
+import com.chatbot.metrics.ChatBotMetrics;
+import com.chatbot.model.ConversationTurn;
+import com.chatbot.model.FAQMatch;
+import com.chatbot.model.FAQPage;
 import com.chatbot.response.ResponseHandler;
 import com.chatbot.storage.FAQStorage;
 import com.chatbot.training.FAQTrainer;
@@ -7,19 +11,36 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Main chatbot engine that coordinates all components
+ * Main chatbot engine that coordinates all components.
+ *
+ * A single engine may be shared by any number of threads, each conversation
+ * identified by a session id. Methods without a session id use
+ * {@link #DEFAULT_SESSION}.
+ *
+ * Each engine publishes its {@link ChatBotMetrics} over JMX and logs them
+ * periodically until it is shut down.
  */
 public class ChatBotEngine {
     
+    /**
+     * Session used by the single-conversation methods
+     */
+    public static final String DEFAULT_SESSION = "default";
+    
+    private final FAQStorage storage;
     private final ResponseHandler responseHandler;
     private final FAQTrainer faqTrainer;
-    private final List<String> conversationHistory;
+    private final SessionManager sessions;
+    private final ChatBotMetrics metrics;
     
     public ChatBotEngine() {
-        FAQStorage storage = new FAQStorage();
+        this.storage = new FAQStorage();
         this.faqTrainer = new FAQTrainer(storage);
-        this.responseHandler = new ResponseHandler(faqTrainer);
-        this.conversationHistory = new ArrayList<>();
+        this.metrics = new ChatBotMetrics(storage, faqTrainer::getCorpusSize);
+        this.responseHandler = new ResponseHandler(faqTrainer, metrics);
+        this.sessions = new SessionManager();
+        metrics.register();
+        metrics.startLogging();
         
         // Initialize with default FAQs
         faqTrainer.initializeDefaultFAQs();
@@ -29,41 +50,81 @@ public class ChatBotEngine {
      * Process user input and generate response
      */
     public String processInput(String userInput) {
+        return processInput(DEFAULT_SESSION, userInput);
+    }
+    
+    /**
+     * Process user input within a session and generate response
+     */
+    public String processInput(String sessionId, String userInput) {
         if (userInput == null || userInput.trim().isEmpty()) {
             return "Please enter a message.";
         }
         
-        // Add to conversation history
-        conversationHistory.add("User: " + userInput);
-        
         // Generate response
         String response = responseHandler.generateResponse(userInput);
         
-        // Add response to history
-        conversationHistory.add("Bot: " + response);
+        // Add the exchange to the session's history
+        sessions.record(sessionId, userInput, response);
         
         return response;
     }
     
+    /**
+     * Generate responses for many inputs at once. The inputs are matched in
+     * parallel and are not recorded in any session's history.
+     */
+    public List<String> processBatch(List<String> userInputs) {
+        List<String> responses = responseHandler.generateResponses(userInputs);
+        for (int i = 0; i < responses.size(); i++) {
+            String userInput = userInputs.get(i);
+            if (userInput == null || userInput.trim().isEmpty()) {
+                responses.set(i, "Please enter a message.");
+            }
+        }
+        return responses;
+    }
+    
     /**
      * Train the bot with a new FAQ
+     *
+     * @return the FAQs whose questions were near duplicates of the new one,
+     *         most similar first
      */
-    public void trainBot(String question, String answer) {
-        responseHandler.trainBot(question, answer);
+    public List<FAQMatch> trainBot(String question, String answer) {
+        return responseHandler.trainBot(question, answer);
     }
     
     /**
      * Get conversation history
      */
     public List<String> getConversationHistory() {
-        return new ArrayList<>(conversationHistory);
+        List<String> lines = new ArrayList<>();
+        for (ConversationTurn turn : sessions.getHistory(DEFAULT_SESSION)) {
+            lines.add(turn.toString());
+        }
+        return lines;
+    }
+    
+    /**
+     * Get the recent turns of a session, oldest first
+     */
+    public List<ConversationTurn> getConversationHistory(String sessionId) {
+        return sessions.getHistory(sessionId);
     }
     
     /**
      * Clear conversation history
      */
     public void clearHistory() {
-        conversationHistory.clear();
+        sessions.clear(DEFAULT_SESSION);
+    }
+    
+    /**
+     * End a session and release its history
+     */
+    public void endSession(String sessionId) {
+        sessions.remove(sessionId);
     }
     
     /**
@@ -73,11 +134,49 @@ public class ChatBotEngine {
         return faqTrainer.getAllFAQs();
     }
     
+    /**
+     * Get one page of the FAQs matching a filter
+     *
+     * @see FAQTrainer#searchFAQs(String, int, int)
+     */
+    public FAQPage searchFAQs(String filter, int offset, int limit) {
+        return faqTrainer.searchFAQs(filter, offset, limit);
+    }
+    
     /**
      * Remove an FAQ
+     *
+     * @return whether there was an FAQ with the question
+     */
+    public boolean removeFAQ(String question) {
+        return faqTrainer.removeFAQ(question);
+    }
+    
+    /**
+     * Be notified of every FAQ trained or removed
+     */
+    public void addFAQChangeListener(FAQTrainer.ChangeListener listener) {
+        faqTrainer.addChangeListener(listener);
+    }
+    
+    public void removeFAQChangeListener(FAQTrainer.ChangeListener listener) {
+        faqTrainer.removeChangeListener(listener);
+    }
+    
+    /**
+     * Metrics of the inputs answered so far
      */
-    public void removeFAQ(String question) {
-        faqTrainer.removeFAQ(question);
+    public ChatBotMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Save pending changes and release background resources
+     */
+    public void shutdown() {
+        metrics.close();
+        sessions.close();
+        faqTrainer.close();
+        storage.close();
     }
 }
-
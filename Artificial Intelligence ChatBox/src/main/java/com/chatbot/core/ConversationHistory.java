@@ -0,0 +1,93 @@
+package com.chatbot.core;
+
+import com.chatbot.model.ConversationTurn;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Most recent turns of one conversation, kept in a ring buffer.
+ *
+ * Once the buffer is full each new turn overwrites the oldest one. The
+ * buffer starts small and grows up to its capacity, so short conversations
+ * stay cheap. Not thread-safe; {@link SessionManager} guards each history
+ * with its session.
+ */
+class ConversationHistory {
+    
+    private static final int INITIAL_SIZE = 8;
+    
+    // Rough heap cost of a turn besides its characters: turn object and String
+    private static final int TURN_OVERHEAD = 64;
+    
+    private final int capacity;
+    private ConversationTurn[] turns;
+    private int start;
+    private int count;
+    private long bytes;
+    
+    ConversationHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.turns = new ConversationTurn[Math.min(this.capacity, INITIAL_SIZE)];
+    }
+    
+    /**
+     * Append a turn, dropping the oldest if the buffer is full
+     *
+     * @return the change in estimated memory use, in bytes
+     */
+    long add(ConversationTurn turn) {
+        long before = bytes;
+        if (count == turns.length && count < capacity) {
+            grow();
+        }
+        if (count == turns.length) {
+            bytes -= estimate(turns[start]);
+            turns[start] = turn;
+            start = (start + 1) % turns.length;
+        } else {
+            turns[(start + count) % turns.length] = turn;
+            count++;
+        }
+        bytes += estimate(turn);
+        return bytes - before;
+    }
+    
+    /**
+     * Turns from oldest to newest
+     */
+    List<ConversationTurn> getTurns() {
+        List<ConversationTurn> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(turns[(start + i) % turns.length]);
+        }
+        return result;
+    }
+    
+    /**
+     * Remove all turns
+     *
+     * @return the change in estimated memory use, in bytes
+     */
+    long clear() {
+        long released = bytes;
+        Arrays.fill(turns, null);
+        start = 0;
+        count = 0;
+        bytes = 0;
+        return -released;
+    }
+    
+    private void grow() {
+        ConversationTurn[] grown = new ConversationTurn[Math.min(capacity, turns.length * 2)];
+        for (int i = 0; i < count; i++) {
+            grown[i] = turns[(start + i) % turns.length];
+        }
+        turns = grown;
+        start = 0;
+    }
+    
+    private static long estimate(ConversationTurn turn) {
+        return TURN_OVERHEAD + 2L * turn.getText().length();
+    }
+}
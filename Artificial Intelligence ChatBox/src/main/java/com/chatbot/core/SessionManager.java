@@ -0,0 +1,230 @@
+package com.chatbot.core;
+
+import com.chatbot.model.ConversationTurn;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the conversation history of many concurrent sessions.
+ *
+ * Each session holds its most recent turns in a fixed-capacity ring buffer.
+ * Sessions idle for longer than the time-to-live are evicted by a background
+ * sweep. The estimated memory of all sessions is also capped: when a new
+ * turn pushes it over the budget, the least recently used sessions are
+ * evicted until usage drops below 90% of the budget, so the cost of an
+ * eviction pass is spread over many turns.
+ */
+public class SessionManager implements AutoCloseable {
+    
+    /**
+     * System property: number of turns kept per session
+     */
+    public static final String CAPACITY_PROPERTY = "chatbot.session.capacity";
+    
+    /**
+     * System property: time, in milliseconds, after which an idle session is evicted
+     */
+    public static final String TTL_MILLIS_PROPERTY = "chatbot.session.ttlMillis";
+    
+    /**
+     * System property: estimated memory, in bytes, all sessions together may use
+     */
+    public static final String MAX_BYTES_PROPERTY = "chatbot.session.maxBytes";
+    
+    // Rough heap cost of an empty session: map entry, id, session and buffer
+    private static final long SESSION_OVERHEAD = 256;
+    
+    private static final class Session {
+        final String id;
+        final ConversationHistory history;
+        volatile long lastAccess;
+        boolean evicted;
+        
+        Session(String id, int capacity, long now) {
+            this.id = id;
+            this.history = new ConversationHistory(capacity);
+            this.lastAccess = now;
+        }
+    }
+    
+    private final int capacity;
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final ConcurrentHashMap<String, Session> sessions;
+    private final AtomicLong usedBytes;
+    private final AtomicBoolean trimming;
+    private final ScheduledExecutorService sweeper;
+    
+    /**
+     * Create a session manager configured from system properties
+     */
+    public SessionManager() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, 50),
+            Long.getLong(TTL_MILLIS_PROPERTY, 30 * 60 * 1000L),
+            Long.getLong(MAX_BYTES_PROPERTY, 64L * 1024 * 1024));
+    }
+    
+    /**
+     * @param capacity number of turns kept per session
+     * @param ttlMillis idle time after which a session is evicted; 0 keeps idle sessions
+     * @param maxBytes estimated memory all sessions together may use
+     */
+    public SessionManager(int capacity, long ttlMillis, long maxBytes) {
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+        this.sessions = new ConcurrentHashMap<>();
+        this.usedBytes = new AtomicLong();
+        this.trimming = new AtomicBoolean();
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (ttlMillis > 0) {
+            long period = Math.max(1000, ttlMillis / 4);
+            sweeper.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Record one exchange of a session, creating the session if needed
+     */
+    public void record(String sessionId, String input, String response) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Session session = sessions.computeIfAbsent(sessionId, id -> {
+                usedBytes.addAndGet(SESSION_OVERHEAD);
+                return new Session(id, capacity, now);
+            });
+            synchronized (session) {
+                if (session.evicted) {
+                    // Evicted after the lookup; start a fresh session
+                    continue;
+                }
+                long delta = session.history.add(new ConversationTurn(ConversationTurn.Speaker.USER, input, now));
+                delta += session.history.add(new ConversationTurn(ConversationTurn.Speaker.BOT, response, now));
+                session.lastAccess = now;
+                usedBytes.addAndGet(delta);
+            }
+            break;
+        }
+        if (usedBytes.get() > maxBytes) {
+            trimToBudget();
+        }
+    }
+    
+    /**
+     * Turns of a session from oldest to newest; empty for an unknown session
+     */
+    public List<ConversationTurn> getHistory(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session == null) {
+            return Collections.emptyList();
+        }
+        synchronized (session) {
+            session.lastAccess = System.currentTimeMillis();
+            return session.history.getTurns();
+        }
+    }
+    
+    /**
+     * Forget the turns of a session but keep it open
+     */
+    public void clear(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            synchronized (session) {
+                usedBytes.addAndGet(session.history.clear());
+            }
+        }
+    }
+    
+    /**
+     * Close a session and release its history
+     */
+    public void remove(String sessionId) {
+        Session session = sessions.get(sessionId);
+        if (session != null) {
+            evict(session, Long.MAX_VALUE);
+        }
+    }
+    
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Estimated memory held by all sessions, in bytes
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+    
+    /**
+     * Evict every session idle for longer than the time-to-live
+     */
+    public void evictIdle() {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        for (Session session : sessions.values()) {
+            if (session.lastAccess < cutoff) {
+                evict(session, cutoff);
+            }
+        }
+    }
+    
+    /**
+     * Stop the background sweep
+     */
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+    
+    /**
+     * Evict the least recently used sessions until usage is below 90% of
+     * the budget. Only one thread trims at a time; others carry on.
+     */
+    private void trimToBudget() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            List<Session> candidates = new ArrayList<>(sessions.values());
+            long[] accessed = new long[candidates.size()];
+            Integer[] order = new Integer[candidates.size()];
+            for (int i = 0; i < order.length; i++) {
+                // Read once: the sort needs stable keys
+                accessed[i] = candidates.get(i).lastAccess;
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> accessed[i]));
+            
+            long target = maxBytes / 10 * 9;
+            for (int i = 0; i < order.length && usedBytes.get() > target; i++) {
+                evict(candidates.get(order[i]), accessed[order[i]] + 1);
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+    
+    /**
+     * Evict a session unless it was used at or after the given time
+     */
+    private void evict(Session session, long usedBefore) {
+        synchronized (session) {
+            if (session.evicted || session.lastAccess >= usedBefore) {
+                return;
+            }
+            session.evicted = true;
+            sessions.remove(session.id, session);
+            usedBytes.addAndGet(session.history.clear() - SESSION_OVERHEAD);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.chatbot.metrics;
+
+import com.chatbot.storage.FAQStorage;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and per-stage latency histograms of one chatbot engine.
+ *
+ * Recording only touches striped counters and atomic histogram buckets, so
+ * it is cheap enough to do on every request. The metrics can be published
+ * as the MXBean {@code com.chatbot:type=ChatBotMetrics} and logged
+ * periodically.
+ */
+public class ChatBotMetrics implements ChatBotMetricsMXBean {
+    
+    /**
+     * System property: interval, in seconds, between metrics log lines; 0 disables them
+     */
+    public static final String LOG_SECONDS_PROPERTY = "chatbot.metrics.logSeconds";
+    
+    /**
+     * How a request was answered
+     */
+    public enum Outcome {
+        FAQ, RULE, DEFAULT
+    }
+    
+    private static final String OBJECT_NAME = "com.chatbot:type=ChatBotMetrics";
+    
+    // Instance keys handed out to further engines
+    private static final AtomicInteger INSTANCES = new AtomicInteger(1);
+    
+    private final FAQStorage storage;
+    private final IntSupplier corpusSize;
+    private final LatencyHistogram responseLatency;
+    private final LatencyHistogram matchLatency;
+    private final LatencyHistogram intentLatency;
+    private final LongAdder faqHits;
+    private final LongAdder ruleHits;
+    private final LongAdder defaultResponses;
+    private final LongAdder cacheHits;
+    private final LongAdder cacheMisses;
+    private ObjectName name;
+    private ScheduledExecutorService logger;
+    
+    /**
+     * Metrics without a corpus size or save latencies
+     */
+    public ChatBotMetrics() {
+        this(null, () -> 0);
+    }
+    
+    /**
+     * @param storage store whose save latencies are reported, or null
+     * @param corpusSize number of FAQs matched against, read when reported
+     */
+    public ChatBotMetrics(FAQStorage storage, IntSupplier corpusSize) {
+        this.storage = storage;
+        this.corpusSize = corpusSize;
+        this.responseLatency = new LatencyHistogram();
+        this.matchLatency = new LatencyHistogram();
+        this.intentLatency = new LatencyHistogram();
+        this.faqHits = new LongAdder();
+        this.ruleHits = new LongAdder();
+        this.defaultResponses = new LongAdder();
+        this.cacheHits = new LongAdder();
+        this.cacheMisses = new LongAdder();
+    }
+    
+    public void recordResponse(long nanos) {
+        responseLatency.record(nanos);
+    }
+    
+    public void recordMatch(long nanos) {
+        matchLatency.record(nanos);
+    }
+    
+    public void recordIntent(long nanos) {
+        intentLatency.record(nanos);
+    }
+    
+    public void recordOutcome(Outcome outcome) {
+        switch (outcome) {
+            case FAQ:
+                faqHits.increment();
+                break;
+            case RULE:
+                ruleHits.increment();
+                break;
+            default:
+                defaultResponses.increment();
+                break;
+        }
+    }
+    
+    public void recordCacheLookup(boolean hit) {
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+    
+    @Override
+    public long getRequests() {
+        return faqHits.sum() + ruleHits.sum() + defaultResponses.sum();
+    }
+    
+    @Override
+    public long getFaqHits() {
+        return faqHits.sum();
+    }
+    
+    @Override
+    public long getRuleHits() {
+        return ruleHits.sum();
+    }
+    
+    @Override
+    public long getDefaultResponses() {
+        return defaultResponses.sum();
+    }
+    
+    @Override
+    public double getFaqHitRate() {
+        return rate(faqHits.sum(), getRequests());
+    }
+    
+    @Override
+    public double getDefaultRate() {
+        return rate(defaultResponses.sum(), getRequests());
+    }
+    
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+    
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+    
+    @Override
+    public double getCacheHitRate() {
+        long hits = cacheHits.sum();
+        return rate(hits, hits + cacheMisses.sum());
+    }
+    
+    @Override
+    public int getCorpusSize() {
+        return corpusSize.getAsInt();
+    }
+    
+    @Override
+    public LatencySnapshot getResponseLatency() {
+        return responseLatency.snapshot();
+    }
+    
+    @Override
+    public LatencySnapshot getMatchLatency() {
+        return matchLatency.snapshot();
+    }
+    
+    @Override
+    public LatencySnapshot getIntentLatency() {
+        return intentLatency.snapshot();
+    }
+    
+    @Override
+    public LatencySnapshot getSaveLatency() {
+        return storage != null ? storage.getSaveLatency().snapshot() : new LatencyHistogram().snapshot();
+    }
+    
+    private static double rate(long part, long total) {
+        return total == 0 ? 0.0 : (double) part / total;
+    }
+    
+    /**
+     * Register with the platform MBean server. Further engines in the same
+     * JVM are told apart by an instance key.
+     */
+    public synchronized void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName candidate = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(candidate)) {
+                candidate = new ObjectName(OBJECT_NAME + ",instance=" + INSTANCES.incrementAndGet());
+            }
+            server.registerMBean(this, candidate);
+            name = candidate;
+        } catch (JMException e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Print a summary line at the interval configured by system properties,
+     * skipping intervals without requests
+     */
+    public synchronized void startLogging() {
+        long seconds = Long.getLong(LOG_SECONDS_PROPERTY, 60);
+        if (seconds <= 0 || logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-logger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] logged = {0};
+        logger.scheduleAtFixedRate(() -> {
+            long requests = getRequests();
+            if (requests != logged[0]) {
+                logged[0] = requests;
+                System.out.println(summary());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * One line with every metric
+     */
+    public String summary() {
+        return String.format("Metrics: %d requests (FAQ %.1f%%, rule %.1f%%, default %.1f%%), cache hits %.1f%%,"
+                + " %d FAQs; response %s; match %s; intent %s; save %s",
+            getRequests(), 100 * getFaqHitRate(), 100 * rate(ruleHits.sum(), getRequests()), 100 * getDefaultRate(),
+            100 * getCacheHitRate(), getCorpusSize(),
+            getResponseLatency(), getMatchLatency(), getIntentLatency(), getSaveLatency());
+    }
+    
+    /**
+     * Stop logging and unregister the MBean
+     */
+    public synchronized void close() {
+        if (logger != null) {
+            logger.shutdownNow();
+            logger = null;
+        }
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                System.err.println("Error unregistering metrics MBean: " + e.getMessage());
+            }
+            name = null;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.chatbot.metrics;
+
+/**
+ * Management interface of {@link ChatBotMetrics}. Counts and latencies are
+ * cumulative since the engine started; latencies are in microseconds.
+ */
+public interface ChatBotMetricsMXBean {
+    
+    /**
+     * Inputs answered, alone or in batches
+     */
+    long getRequests();
+    
+    long getFaqHits();
+    
+    long getRuleHits();
+    
+    long getDefaultResponses();
+    
+    /**
+     * Fraction of requests answered with an FAQ
+     */
+    double getFaqHitRate();
+    
+    /**
+     * Fraction of requests that fell through to a default response
+     */
+    double getDefaultRate();
+    
+    long getCacheHits();
+    
+    long getCacheMisses();
+    
+    double getCacheHitRate();
+    
+    int getCorpusSize();
+    
+    /**
+     * Whole single-input requests
+     */
+    LatencySnapshot getResponseLatency();
+    
+    /**
+     * Finding the best FAQ, including the response cache
+     */
+    LatencySnapshot getMatchLatency();
+    
+    /**
+     * Detecting the intent of inputs no FAQ matched
+     */
+    LatencySnapshot getIntentLatency();
+    
+    /**
+     * Writes to the FAQ log: training, removals and usage counts
+     */
+    LatencySnapshot getSaveLatency();
+}
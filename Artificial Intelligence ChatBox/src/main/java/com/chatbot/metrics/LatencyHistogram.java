@@ -0,0 +1,98 @@
+package com.chatbot.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds.
+ *
+ * Like an HdrHistogram, every power of two is split into 32 linear buckets,
+ * so a recorded value is known within about 3% whatever its magnitude, and
+ * recording is a single atomic increment. Values above 2^41 ns (about 36
+ * minutes) are counted as that. Counts are cumulative.
+ */
+public final class LatencyHistogram {
+    
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    
+    private final AtomicLongArray counts;
+    private final LongAdder total;
+    private final LongAccumulator max;
+    
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray((MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT);
+        this.total = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+    
+    /**
+     * Record one latency
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+        counts.incrementAndGet(bucket(value));
+        total.add(value);
+        max.accumulate(value);
+    }
+    
+    /**
+     * Summarize the values recorded so far. Values recorded meanwhile may
+     * or may not be included.
+     */
+    public LatencySnapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        long maxValue = max.get();
+        return new LatencySnapshot(count,
+            count == 0 ? 0 : total.sum() / (double) count,
+            percentile(copy, count, 0.50, maxValue),
+            percentile(copy, count, 0.90, maxValue),
+            percentile(copy, count, 0.99, maxValue),
+            percentile(copy, count, 0.999, maxValue),
+            maxValue);
+    }
+    
+    /**
+     * Highest value of the bucket holding the given fraction of the
+     * recorded values
+     */
+    private static long percentile(long[] counts, long count, double fraction, long maxValue) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+    
+    private static int bucket(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+    
+    private static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
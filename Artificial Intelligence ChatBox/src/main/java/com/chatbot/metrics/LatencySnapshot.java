@@ -0,0 +1,59 @@
+package com.chatbot.metrics;
+
+/**
+ * Summary of a {@link LatencyHistogram}, in microseconds
+ */
+public final class LatencySnapshot {
+    
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+    
+    LatencySnapshot(long count, double mean, long p50, long p90, long p99, long p999, long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+    
+    public long getCount() {
+        return count;
+    }
+    
+    public double getMeanMicros() {
+        return mean / 1000.0;
+    }
+    
+    public double getP50Micros() {
+        return p50 / 1000.0;
+    }
+    
+    public double getP90Micros() {
+        return p90 / 1000.0;
+    }
+    
+    public double getP99Micros() {
+        return p99 / 1000.0;
+    }
+    
+    public double getP999Micros() {
+        return p999 / 1000.0;
+    }
+    
+    public double getMaxMicros() {
+        return max / 1000.0;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("n=%d p50=%.0fus p99=%.0fus max=%.0fus",
+            count, getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
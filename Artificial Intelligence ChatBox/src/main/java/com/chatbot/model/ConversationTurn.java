@@ -0,0 +1,55 @@
+package com.chatbot.model;
+
+/**
+ * A single message in a conversation
+ */
+public class ConversationTurn {
+    
+    /**
+     * Who sent a message
+     */
+    public enum Speaker {
+        USER("User"),
+        BOT("Bot");
+        
+        private final String label;
+        
+        Speaker(String label) {
+            this.label = label;
+        }
+        
+        public String getLabel() {
+            return label;
+        }
+    }
+    
+    private final Speaker speaker;
+    private final String text;
+    private final long timestamp;
+    
+    public ConversationTurn(Speaker speaker, String text, long timestamp) {
+        this.speaker = speaker;
+        this.text = text;
+        this.timestamp = timestamp;
+    }
+    
+    public Speaker getSpeaker() {
+        return speaker;
+    }
+    
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * Time the message was recorded, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    @Override
+    public String toString() {
+        return speaker.getLabel() + ": " + text;
+    }
+}
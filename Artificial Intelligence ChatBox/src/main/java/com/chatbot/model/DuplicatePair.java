@@ -0,0 +1,35 @@
+package com.chatbot.model;
+
+/**
+ * Two FAQs whose questions are near duplicates, with their similarity
+ */
+public class DuplicatePair {
+    
+    private final FAQ first;
+    private final FAQ second;
+    private final double score;
+    
+    public DuplicatePair(FAQ first, FAQ second, double score) {
+        this.first = first;
+        this.second = second;
+        this.score = score;
+    }
+    
+    /**
+     * The FAQ that comes first in the corpus
+     */
+    public FAQ getFirst() {
+        return first;
+    }
+    
+    public FAQ getSecond() {
+        return second;
+    }
+    
+    /**
+     * Jaccard similarity of the two questions, between 0 and 1
+     */
+    public double getScore() {
+        return score;
+    }
+}
@@ -1,6 +1,8 @@
 package com.chatbot.model;
 
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 /**
  * FAQ model for storing question-answer pairs
@@ -11,6 +13,17 @@ public class FAQ {
     private List<String> keywords;
     private int usageCount;
     
+    // Uses counted since creation; striped so concurrent queries do not contend
+    private final transient LongAdder usageIncrements = new LongAdder();
+    
+    // Answer and keywords of an FAQ loaded from a mapped snapshot, decoded on demand
+    private transient Supplier<String> answerSource;
+    private transient Supplier<List<String>> keywordSource;
+    
+    // Term ids assigned by the storage's dictionary; not part of the JSON format
+    private transient int[] questionTerms;
+    private transient int[] keywordTerms;
+    
     public FAQ() {
         this.usageCount = 0;
     }
@@ -22,6 +35,23 @@ public class FAQ {
         this.usageCount = 0;
     }
     
+    public FAQ(String question, String answer, List<String> keywords, int usageCount) {
+        this.question = question;
+        this.answer = answer;
+        this.keywords = keywords;
+        this.usageCount = usageCount;
+    }
+    
+    /**
+     * Create an FAQ whose answer and keywords are only read when requested
+     */
+    public FAQ(String question, Supplier<String> answerSource, Supplier<List<String>> keywordSource, int usageCount) {
+        this.question = question;
+        this.answerSource = answerSource;
+        this.keywordSource = keywordSource;
+        this.usageCount = usageCount;
+    }
+    
     public String getQuestion() {
         return question;
     }
@@ -31,27 +61,56 @@ public class FAQ {
     }
     
     public String getAnswer() {
-        return answer;
+        // Decoded on every call so that unused answers never occupy the heap
+        return answerSource != null ? answerSource.get() : answer;
     }
     
     public void setAnswer(String answer) {
         this.answer = answer;
+        this.answerSource = null;
     }
     
     public List<String> getKeywords() {
-        return keywords;
+        return keywordSource != null ? keywordSource.get() : keywords;
     }
     
     public void setKeywords(List<String> keywords) {
         this.keywords = keywords;
+        this.keywordSource = null;
+    }
+    
+    /**
+     * Sorted term ids of the question, or null if the FAQ has not been stored yet
+     */
+    public int[] getQuestionTerms() {
+        return questionTerms;
+    }
+    
+    /**
+     * Sorted term ids of the keywords, or null if the FAQ has no keywords
+     */
+    public int[] getKeywordTerms() {
+        return keywordTerms;
+    }
+    
+    public void setTerms(int[] questionTerms, int[] keywordTerms) {
+        this.questionTerms = questionTerms;
+        this.keywordTerms = keywordTerms;
     }
     
     public int getUsageCount() {
-        return usageCount;
+        return usageCount + usageIncrements.intValue();
     }
     
+    /**
+     * Count one use; safe to call from any number of threads
+     */
     public void incrementUsageCount() {
-        this.usageCount++;
+        usageIncrements.increment();
+    }
+    
+    public void addUsageCount(int delta) {
+        usageIncrements.add(delta);
     }
 }
 
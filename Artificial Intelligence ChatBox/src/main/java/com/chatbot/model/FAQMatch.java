@@ -0,0 +1,26 @@
+package com.chatbot.model;
+
+/**
+ * An FAQ matched to user input, with its similarity score
+ */
+public class FAQMatch {
+    
+    private final FAQ faq;
+    private final double score;
+    
+    public FAQMatch(FAQ faq, double score) {
+        this.faq = faq;
+        this.score = score;
+    }
+    
+    public FAQ getFaq() {
+        return faq;
+    }
+    
+    /**
+     * Combined question and keyword similarity, between 0 and 1
+     */
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,37 @@
+package com.chatbot.model;
+
+import java.util.List;
+
+/**
+ * One page of the FAQs matching a search, in corpus order
+ */
+public class FAQPage {
+    
+    private final List<FAQ> faqs;
+    private final int offset;
+    private final int total;
+    
+    public FAQPage(List<FAQ> faqs, int offset, int total) {
+        this.faqs = faqs;
+        this.offset = offset;
+        this.total = total;
+    }
+    
+    public List<FAQ> getFaqs() {
+        return faqs;
+    }
+    
+    /**
+     * Position of the first FAQ of the page among all matching FAQs
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Number of matching FAQs on all pages
+     */
+    public int getTotal() {
+        return total;
+    }
+}
@@ -0,0 +1,264 @@
+package com.chatbot.nlp;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import java.io.*;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Classifies input into intents with a single pass over its characters.
+ *
+ * All intent phrases are compiled into one character trie. Matching starts
+ * a trie walk at every word boundary of the lower-cased input and accepts a
+ * phrase only if it also ends on a word boundary, mirroring a
+ * {@code \b(phrase|...)\b} regular expression. When phrases of several
+ * intents occur, the intent listed first in the configuration wins.
+ */
+public class IntentMatcher {
+    
+    /**
+     * Intent returned when no phrase matches
+     */
+    public static final String GENERAL = "GENERAL";
+    
+    /**
+     * Classpath location of the default intent table
+     */
+    public static final String DEFAULT_RESOURCE = "/com/chatbot/nlp/intents.json";
+    
+    /**
+     * System property naming a JSON file that replaces the default intent table
+     */
+    public static final String CONFIG_PROPERTY = "chatbot.intents";
+    
+    /**
+     * One intent and the phrases that signal it, as stored in the configuration
+     */
+    public static class IntentDefinition {
+        private String intent;
+        private List<String> phrases;
+        
+        public IntentDefinition() {
+        }
+        
+        public IntentDefinition(String intent, List<String> phrases) {
+            this.intent = intent;
+            this.phrases = phrases;
+        }
+        
+        public String getIntent() {
+            return intent;
+        }
+        
+        public List<String> getPhrases() {
+            return phrases;
+        }
+    }
+    
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        int priority = Integer.MAX_VALUE;
+        
+        Node child(char c) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+        
+        Node addChild(char c) {
+            Node existing = child(c);
+            if (existing != null) {
+                return existing;
+            }
+            Node node = new Node();
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            labels[labels.length - 1] = c;
+            children[children.length - 1] = node;
+            return node;
+        }
+    }
+    
+    private static final ThreadLocal<char[][]> LOWER_BUFFERS = ThreadLocal.withInitial(() -> new char[][] { new char[256] });
+    
+    /**
+     * Lower-case form of each ASCII character under the default locale
+     */
+    private static final char[] ASCII_LOWER = new char[128];
+    
+    static {
+        for (char c = 0; c < 128; c++) {
+            ASCII_LOWER[c] = String.valueOf(c).toLowerCase().charAt(0);
+        }
+    }
+    
+    private final Node root;
+    private final String[] intents;
+    
+    public IntentMatcher(List<IntentDefinition> definitions) {
+        this.root = new Node();
+        this.intents = new String[definitions.size()];
+        
+        for (int priority = 0; priority < definitions.size(); priority++) {
+            IntentDefinition definition = definitions.get(priority);
+            if (definition.getIntent() == null || definition.getPhrases() == null) {
+                throw new IllegalArgumentException("Intent definition needs an intent and phrases");
+            }
+            intents[priority] = definition.getIntent();
+            
+            for (String phrase : definition.getPhrases()) {
+                String lower = phrase.toLowerCase();
+                if (lower.isEmpty()) {
+                    continue;
+                }
+                Node node = root;
+                for (int i = 0; i < lower.length(); i++) {
+                    node = node.addChild(lower.charAt(i));
+                }
+                node.priority = Math.min(node.priority, priority);
+            }
+        }
+    }
+    
+    /**
+     * Load the intent table from the file named by {@value #CONFIG_PROPERTY},
+     * falling back to the bundled {@value #DEFAULT_RESOURCE}
+     */
+    public static IntentMatcher loadDefault() {
+        String configFile = System.getProperty(CONFIG_PROPERTY);
+        try (Reader reader = configFile != null
+                ? new InputStreamReader(new FileInputStream(configFile), StandardCharsets.UTF_8)
+                : openResource(DEFAULT_RESOURCE)) {
+            return load(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error loading intents: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Load an intent table from JSON: an array of {"intent", "phrases"}
+     * objects in priority order
+     */
+    public static IntentMatcher load(Reader reader) throws IOException {
+        Type listType = new TypeToken<List<IntentDefinition>>(){}.getType();
+        try {
+            List<IntentDefinition> definitions = new Gson().fromJson(reader, listType);
+            if (definitions == null) {
+                throw new IOException("Intent table is empty");
+            }
+            return new IntentMatcher(definitions);
+        } catch (JsonParseException e) {
+            throw new IOException("Malformed intent table: " + e.getMessage(), e);
+        }
+    }
+    
+    private static Reader openResource(String name) throws IOException {
+        InputStream in = IntentMatcher.class.getResourceAsStream(name);
+        if (in == null) {
+            throw new FileNotFoundException(name);
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Detect the highest-priority intent whose phrase occurs in the input
+     */
+    public String detect(String input) {
+        char[][] holder = LOWER_BUFFERS.get();
+        int length = lowerCase(input, holder);
+        char[] text = holder[0];
+        
+        int best = Integer.MAX_VALUE;
+        for (int start = 0; start < length && best > 0; start++) {
+            if (!isBoundary(text, length, start)) {
+                continue;
+            }
+            Node node = root;
+            for (int i = start; i < length; i++) {
+                node = node.child(text[i]);
+                if (node == null) {
+                    break;
+                }
+                if (node.priority < best && isBoundary(text, length, i + 1)) {
+                    best = node.priority;
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? GENERAL : intents[best];
+    }
+    
+    /**
+     * Names of the configured intents in priority order
+     */
+    public List<String> getIntents() {
+        return List.of(intents);
+    }
+    
+    /**
+     * Lower-case the input into the thread's buffer, as String.toLowerCase would
+     *
+     * @return the number of characters written
+     */
+    private static int lowerCase(String input, char[][] holder) {
+        char[] text = holder[0];
+        int length = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            String expansion = c < 128 ? null : NLPProcessor.foldExpansion(c);
+            int needed = expansion != null ? expansion.length() : 1;
+            if (length + needed > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, length + needed));
+                holder[0] = text;
+            }
+            if (c < 128) {
+                text[length++] = ASCII_LOWER[c];
+            } else if (expansion != null) {
+                expansion.getChars(0, expansion.length(), text, length);
+                length += expansion.length();
+            } else {
+                text[length++] = Character.toLowerCase(c);
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * Word boundary test matching java.util.regex {@code \b}: a boundary lies
+     * between a word and a non-word character
+     */
+    private static boolean isBoundary(char[] text, int length, int position) {
+        boolean left = position > 0 && isWordAt(text, length, position - 1, true);
+        boolean right = position < length && isWordAt(text, length, position, false);
+        return left != right;
+    }
+    
+    private static boolean isWordAt(char[] text, int length, int index, boolean before) {
+        int ch = before
+            ? Character.codePointBefore(text, index + 1, 0)
+            : Character.codePointAt(text, index, length);
+        if (ch == '_' || Character.isLetterOrDigit(ch)) {
+            return true;
+        }
+        if (Character.getType(ch) != Character.NON_SPACING_MARK) {
+            return false;
+        }
+        // A combining mark counts as part of the word it is attached to
+        for (int i = index - 1; i >= 0; i--) {
+            char base = text[i];
+            if (Character.isLetterOrDigit(base)) {
+                return true;
+            }
+            if (Character.getType(base) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
@@ -1,8 +1,6 @@
 package com.chatbot.nlp;
 
 import java.util.*;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * Natural Language Processing processor for text analysis
@@ -16,30 +14,161 @@ public class NLPProcessor {
         "i", "you", "he", "she", "it", "we", "they", "me", "him", "her", "us", "them"
     );
     
+    /**
+     * Stop words packed with {@link TokenBuffer#key}, sorted for binary search
+     */
+    private static final long[] STOP_WORD_KEYS = STOP_WORDS.stream()
+        .mapToLong(TokenBuffer::key)
+        .sorted()
+        .toArray();
+    
+    /**
+     * Lower-case form of each ASCII character if it is a token character
+     * ([a-z0-9]), or 0 if it separates tokens
+     */
+    private static final char[] ASCII_FOLD = new char[128];
+    
+    /**
+     * Non-ASCII characters whose lower-case form contains token characters,
+     * e.g. the Kelvin sign, with that lower-case form
+     */
+    private static final char[] FOLD_CHARS;
+    private static final String[] FOLD_EXPANSIONS;
+    
+    /**
+     * Intent phrase automaton, compiled once from the intent configuration
+     */
+    private static final IntentMatcher INTENTS = IntentMatcher.loadDefault();
+    
+    private static final ThreadLocal<TokenBuffer> BUFFERS = ThreadLocal.withInitial(TokenBuffer::new);
+    
+    static {
+        // Derive the tables from String.toLowerCase so the scanner normalizes
+        // exactly like the original toLowerCase/replaceAll/split pipeline
+        for (char c = 0; c < 128; c++) {
+            String lower = String.valueOf(c).toLowerCase();
+            if (lower.length() == 1 && isTokenChar(lower.charAt(0))) {
+                ASCII_FOLD[c] = lower.charAt(0);
+            }
+        }
+        
+        StringBuilder foldChars = new StringBuilder();
+        List<String> foldExpansions = new ArrayList<>();
+        for (char c = 128; c < Character.MAX_VALUE; c++) {
+            if (Character.isSurrogate(c)) {
+                continue;
+            }
+            String lower = String.valueOf(c).toLowerCase();
+            if (lower.chars().anyMatch(ch -> isTokenChar((char) ch))) {
+                foldChars.append(c);
+                foldExpansions.add(lower);
+            }
+        }
+        FOLD_CHARS = foldChars.toString().toCharArray();
+        FOLD_EXPANSIONS = foldExpansions.toArray(new String[0]);
+    }
+    
     /**
      * Tokenize and normalize text
      */
     public List<String> tokenize(String text) {
-        if (text == null || text.trim().isEmpty()) {
-            return new ArrayList<>();
+        TokenBuffer buffer = scan(text);
+        List<String> tokens = new ArrayList<>(buffer.size());
+        for (int i = 0; i < buffer.size(); i++) {
+            tokens.add(buffer.token(i));
         }
-        
-        // Convert to lowercase and remove special characters
-        String normalized = text.toLowerCase()
-            .replaceAll("[^a-z0-9\\s]", " ")
-            .trim();
-        
-        // Split by whitespace and filter out empty strings and stop words
-        return Arrays.stream(normalized.split("\\s+"))
-            .filter(word -> !word.isEmpty() && !STOP_WORDS.contains(word))
-            .collect(Collectors.toList());
+        return tokens;
     }
     
     /**
      * Extract keywords from text
      */
     public Set<String> extractKeywords(String text) {
-        return new HashSet<>(tokenize(text));
+        TokenBuffer buffer = scan(text);
+        Set<String> keywords = new HashSet<>();
+        for (int i = 0; i < buffer.size(); i++) {
+            keywords.add(buffer.token(i));
+        }
+        return keywords;
+    }
+    
+    /**
+     * Tokenize text into this thread's reusable buffer. The result is only
+     * valid until the next scan on the same thread.
+     */
+    public TokenBuffer scan(CharSequence text) {
+        TokenBuffer buffer = BUFFERS.get();
+        scan(text, buffer);
+        return buffer;
+    }
+    
+    /**
+     * Tokenize text into the given buffer in a single pass over its
+     * characters: lower-case letters and digits form tokens, every other
+     * character separates them, and stop words are dropped.
+     *
+     * @return the number of tokens written
+     */
+    public int scan(CharSequence text, TokenBuffer buffer) {
+        buffer.clear();
+        if (text == null) {
+            return 0;
+        }
+        
+        for (int i = 0, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 128) {
+                char folded = ASCII_FOLD[c];
+                if (folded != 0) {
+                    buffer.append(folded);
+                } else {
+                    endToken(buffer);
+                }
+                continue;
+            }
+            
+            String expansion = foldExpansion(c);
+            if (expansion == null) {
+                endToken(buffer);
+                continue;
+            }
+            for (int j = 0; j < expansion.length(); j++) {
+                char e = expansion.charAt(j);
+                if (isTokenChar(e)) {
+                    buffer.append(e);
+                } else {
+                    endToken(buffer);
+                }
+            }
+        }
+        endToken(buffer);
+        return buffer.size();
+    }
+    
+    private static void endToken(TokenBuffer buffer) {
+        int length = buffer.pendingLength();
+        if (length == 0) {
+            return;
+        }
+        if (length <= TokenBuffer.MAX_KEY_LENGTH
+                && Arrays.binarySearch(STOP_WORD_KEYS, buffer.pendingKey()) >= 0) {
+            buffer.discardPending();
+        } else {
+            buffer.commitPending();
+        }
+    }
+    
+    /**
+     * Lower-case form of a non-ASCII character when it contains token
+     * characters, or null otherwise
+     */
+    static String foldExpansion(char c) {
+        int fold = Arrays.binarySearch(FOLD_CHARS, c);
+        return fold >= 0 ? FOLD_EXPANSIONS[fold] : null;
+    }
+    
+    private static boolean isTokenChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9');
     }
     
     /**
@@ -66,42 +195,42 @@ public class NLPProcessor {
     }
     
     /**
-     * Detect intent from user input
+     * Calculate Jaccard similarity between two pre-tokenized term sets.
+     * Both arrays must be sorted and free of duplicates, as produced by
+     * {@link TermDictionary}; the intersection is found by merging them.
      */
-    public String detectIntent(String input) {
-        String lowerInput = input.toLowerCase();
-        
-        // Greeting patterns
-        if (Pattern.compile("\\b(hi|hello|hey|greetings|good morning|good afternoon|good evening)\\b")
-            .matcher(lowerInput).find()) {
-            return "GREETING";
-        }
-        
-        // Question patterns
-        if (Pattern.compile("\\b(what|who|where|when|why|how|which|can|could|would|should)\\b")
-            .matcher(lowerInput).find()) {
-            return "QUESTION";
-        }
-        
-        // Farewell patterns
-        if (Pattern.compile("\\b(bye|goodbye|see you|farewell|exit|quit)\\b")
-            .matcher(lowerInput).find()) {
-            return "FAREWELL";
+    public double calculateSimilarity(int[] terms1, int[] terms2) {
+        if (terms1.length == 0 && terms2.length == 0) {
+            return 1.0;
         }
-        
-        // Help patterns
-        if (Pattern.compile("\\b(help|assist|support|guide)\\b")
-            .matcher(lowerInput).find()) {
-            return "HELP";
+        if (terms1.length == 0 || terms2.length == 0) {
+            return 0.0;
         }
         
-        // Thank you patterns
-        if (Pattern.compile("\\b(thank|thanks|appreciate|grateful)\\b")
-            .matcher(lowerInput).find()) {
-            return "THANKS";
+        int intersection = 0;
+        int i = 0;
+        int j = 0;
+        while (i < terms1.length && j < terms2.length) {
+            if (terms1[i] < terms2[j]) {
+                i++;
+            } else if (terms1[i] > terms2[j]) {
+                j++;
+            } else {
+                intersection++;
+                i++;
+                j++;
+            }
         }
         
-        return "GENERAL";
+        int union = terms1.length + terms2.length - intersection;
+        return (double) intersection / union;
+    }
+    
+    /**
+     * Detect intent from user input
+     */
+    public String detectIntent(String input) {
+        return INTENTS.detect(input);
     }
     
     /**
@@ -0,0 +1,223 @@
+package com.chatbot.nlp;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * Dictionary assigning a stable integer id to every token seen in the corpus.
+ *
+ * Token sets are represented as sorted arrays of distinct ids so that set
+ * similarity can be computed by merging two arrays instead of hashing strings.
+ * Terms live in an open-addressing table keyed by {@link String#hashCode()},
+ * which lets tokens from a {@link TokenBuffer} be looked up without creating
+ * a String for them.
+ *
+ * Interning must be done by one thread at a time, but lookups need no lock
+ * and may run concurrently with it: a term is fully written before its slot
+ * is published, and a grown table is only published once it is complete.
+ * A concurrent lookup may miss a term that is being added.
+ */
+public class TermDictionary {
+    
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(int[].class);
+    
+    private volatile String[] terms;
+    private volatile int[] termHashes;
+    private volatile int[] slots;
+    private volatile int size;
+    
+    public TermDictionary() {
+        this.terms = new String[64];
+        this.termHashes = new int[64];
+        this.slots = new int[128];
+    }
+    
+    /**
+     * Get the id of a term, assigning a new one if it has not been seen yet
+     */
+    public int intern(String term) {
+        int hash = term.hashCode();
+        int[] table = slots;
+        int slot = findSlot(table, hash, term, null, 0);
+        return table[slot] != 0 ? table[slot] - 1 : insert(slot, hash, term);
+    }
+    
+    /**
+     * Get the id of a buffered token, assigning a new one if needed
+     */
+    public int intern(TokenBuffer buffer, int index) {
+        int hash = buffer.hash(index);
+        int[] table = slots;
+        int slot = findSlot(table, hash, null, buffer, index);
+        return table[slot] != 0 ? table[slot] - 1 : insert(slot, hash, buffer.token(index));
+    }
+    
+    /**
+     * Get the id of a term, or -1 if it is not in the dictionary
+     */
+    public int lookup(String term) {
+        int[] table = slots;
+        return (int) SLOT.getAcquire(table, findSlot(table, term.hashCode(), term, null, 0)) - 1;
+    }
+    
+    /**
+     * Get the id of a buffered token, or -1 if it is not in the dictionary
+     */
+    public int lookup(TokenBuffer buffer, int index) {
+        int[] table = slots;
+        return (int) SLOT.getAcquire(table, findSlot(table, buffer.hash(index), null, buffer, index)) - 1;
+    }
+    
+    /**
+     * Get the term for an id
+     */
+    public String term(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown term id: " + id);
+        }
+        // Read after size, which is written after the term
+        return terms[id];
+    }
+    
+    /**
+     * Number of distinct terms in the dictionary
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Intern a set of tokens as a sorted array of distinct ids
+     */
+    public int[] internAll(Collection<String> tokens) {
+        int[] result = new int[tokens.size()];
+        int count = 0;
+        for (String token : tokens) {
+            result[count++] = intern(token);
+        }
+        return sortDistinct(result, count);
+    }
+    
+    /**
+     * Intern the tokens of a buffer as a sorted array of distinct ids
+     */
+    public int[] internAll(TokenBuffer buffer) {
+        int[] result = new int[buffer.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = intern(buffer, i);
+        }
+        return sortDistinct(result, result.length);
+    }
+    
+    /**
+     * Map a set of query tokens to a sorted array of distinct ids without
+     * growing the dictionary. Unknown tokens get distinct negative ids so
+     * they still count towards the size of the set but never intersect
+     * with corpus terms.
+     */
+    public int[] lookupAll(Collection<String> tokens) {
+        int[] result = new int[tokens.size()];
+        int count = 0;
+        int unknown = 0;
+        for (String token : tokens) {
+            int id = lookup(token);
+            result[count++] = id >= 0 ? id : -(++unknown);
+        }
+        return sortDistinct(result, count);
+    }
+    
+    /**
+     * Map the tokens of a buffer to a sorted array of distinct ids without
+     * growing the dictionary; see {@link #lookupAll(Collection)}. Repeated
+     * unknown tokens share the same negative id.
+     */
+    public int[] lookupAll(TokenBuffer buffer) {
+        int[] result = new int[buffer.size()];
+        for (int i = 0; i < result.length; i++) {
+            int id = lookup(buffer, i);
+            if (id < 0) {
+                // Identify an unknown token by its first occurrence
+                id = -(i + 1);
+                for (int j = 0; j < i; j++) {
+                    if (result[j] < 0 && buffer.sameToken(i, j)) {
+                        id = result[j];
+                        break;
+                    }
+                }
+            }
+            result[i] = id;
+        }
+        return sortDistinct(result, result.length);
+    }
+    
+    /**
+     * Find the slot holding the given term, or the empty slot where it
+     * would be inserted. The term is given either as a String or as a
+     * token in a buffer.
+     */
+    private int findSlot(int[] table, int hash, String term, TokenBuffer buffer, int index) {
+        int mask = table.length - 1;
+        int slot = mix(hash) & mask;
+        while (true) {
+            int entry = (int) SLOT.getAcquire(table, slot);
+            if (entry == 0) {
+                return slot;
+            }
+            // The acquire above makes the term arrays current up to this id
+            int id = entry - 1;
+            String[] currentTerms = terms;
+            if (termHashes[id] == hash
+                    && (term != null ? currentTerms[id].equals(term) : buffer.contentEquals(index, currentTerms[id]))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+    
+    private int insert(int slot, int hash, String term) {
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, size * 2);
+            termHashes = Arrays.copyOf(termHashes, size * 2);
+        }
+        int id = size;
+        terms[id] = term;
+        termHashes[id] = hash;
+        SLOT.setRelease(slots, slot, id + 1);
+        size = id + 1;
+        
+        // Keep the table at most half full
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+    
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(termHashes[id]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+    
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+    
+    private static int[] sortDistinct(int[] values, int count) {
+        Arrays.sort(values, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || values[distinct - 1] != values[i]) {
+                values[distinct++] = values[i];
+            }
+        }
+        return distinct == values.length ? values : Arrays.copyOf(values, distinct);
+    }
+}
@@ -0,0 +1,185 @@
+package com.chatbot.nlp;
+
+import java.util.Arrays;
+
+/**
+ * Reusable output buffer for {@link NLPProcessor#scan}.
+ *
+ * Holds the normalized characters of every token back to back, plus the
+ * offset, length and hash of each token. The hash is the same value
+ * {@link String#hashCode()} would return for the token, so tokens can be
+ * looked up in string-keyed tables without creating a String first.
+ * A buffer is not thread-safe and its contents are only valid until the
+ * next scan into it.
+ */
+public final class TokenBuffer {
+    
+    static final int MAX_KEY_LENGTH = 10;
+    
+    private char[] chars;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] hashes;
+    private int size;
+    private int charCount;
+    private int tokenStart;
+    private int pendingHash;
+    private long pendingKey;
+    
+    public TokenBuffer() {
+        this.chars = new char[256];
+        this.offsets = new int[32];
+        this.lengths = new int[32];
+        this.hashes = new int[32];
+    }
+    
+    /**
+     * Number of tokens in the buffer
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Backing character array; token i occupies [offset(i), offset(i) + length(i))
+     */
+    public char[] chars() {
+        return chars;
+    }
+    
+    public int offset(int index) {
+        return offsets[index];
+    }
+    
+    public int length(int index) {
+        return lengths[index];
+    }
+    
+    /**
+     * String-compatible hash code of a token
+     */
+    public int hash(int index) {
+        return hashes[index];
+    }
+    
+    /**
+     * Materialize a token as a String
+     */
+    public String token(int index) {
+        return new String(chars, offsets[index], lengths[index]);
+    }
+    
+    /**
+     * Whether a token has the same characters as the given term
+     */
+    public boolean contentEquals(int index, String term) {
+        int length = lengths[index];
+        if (term.length() != length) {
+            return false;
+        }
+        int offset = offsets[index];
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != term.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Whether two tokens in this buffer have the same characters
+     */
+    public boolean sameToken(int first, int second) {
+        if (hashes[first] != hashes[second] || lengths[first] != lengths[second]) {
+            return false;
+        }
+        return Arrays.equals(chars, offsets[first], offsets[first] + lengths[first],
+            chars, offsets[second], offsets[second] + lengths[second]);
+    }
+    
+    void clear() {
+        size = 0;
+        charCount = 0;
+        tokenStart = 0;
+        pendingHash = 0;
+        pendingKey = 0;
+    }
+    
+    /**
+     * Append a normalized character to the token being scanned
+     */
+    void append(char c) {
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        chars[charCount++] = c;
+        pendingHash = 31 * pendingHash + c;
+        int length = charCount - tokenStart;
+        if (length <= MAX_KEY_LENGTH) {
+            pendingKey = (pendingKey << 6) | keyCode(c);
+        }
+    }
+    
+    /**
+     * Length of the token being scanned
+     */
+    int pendingLength() {
+        return charCount - tokenStart;
+    }
+    
+    /**
+     * Compact key of the token being scanned, see {@link #key(String)};
+     * only meaningful for tokens of at most {@value #MAX_KEY_LENGTH} characters
+     */
+    long pendingKey() {
+        return pendingKey;
+    }
+    
+    /**
+     * Record the token being scanned
+     */
+    void commitPending() {
+        if (size == offsets.length) {
+            int capacity = size * 2;
+            offsets = Arrays.copyOf(offsets, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        offsets[size] = tokenStart;
+        lengths[size] = charCount - tokenStart;
+        hashes[size] = pendingHash;
+        size++;
+        startToken();
+    }
+    
+    /**
+     * Drop the token being scanned
+     */
+    void discardPending() {
+        charCount = tokenStart;
+        startToken();
+    }
+    
+    private void startToken() {
+        tokenStart = charCount;
+        pendingHash = 0;
+        pendingKey = 0;
+    }
+    
+    /**
+     * Pack a short token of [a-z0-9] characters into a long, six bits per
+     * character, so it can be compared against a fixed word list without
+     * allocating
+     */
+    static long key(String token) {
+        long key = 0;
+        for (int i = 0; i < token.length(); i++) {
+            key = (key << 6) | keyCode(token.charAt(i));
+        }
+        return key;
+    }
+    
+    private static int keyCode(char c) {
+        return c >= 'a' ? c - 'a' + 1 : c - '0' + 27;
+    }
+}
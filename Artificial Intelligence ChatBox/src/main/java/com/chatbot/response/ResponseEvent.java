@@ -0,0 +1,43 @@
+package com.chatbot.response;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for one answered input, so slow responses can be
+ * lined up with GC pauses and other JVM events
+ */
+@Name("com.chatbot.Response")
+@Label("Chatbot Response")
+@Category("Chatbot")
+@Description("An input answered by the response handler")
+class ResponseEvent extends Event {
+    
+    @Label("Outcome")
+    @Description("FAQ, RULE or DEFAULT")
+    String outcome;
+    
+    @Label("Intent")
+    String intent;
+    
+    @Label("Cache Hit")
+    boolean cacheHit;
+    
+    @Label("Batch")
+    boolean batch;
+    
+    @Label("Match Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long matchTime;
+    
+    @Label("Intent Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long intentTime;
+    
+    @Label("Input Length")
+    int inputLength;
+}
@@ -1,23 +1,81 @@
 package com.chatbot.response;
 
+import com.chatbot.metrics.ChatBotMetrics;
 import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
 import com.chatbot.nlp.NLPProcessor;
 import com.chatbot.training.FAQTrainer;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Handles response generation using rule-based and ML-based approaches
+ * Handles response generation using rule-based and ML-based approaches.
+ *
+ * The FAQ match of an input only depends on its set of normalized tokens
+ * and on the corpus, so matches are cached by token set and tagged with the
+ * corpus version; training or removing an FAQ makes them all stale. Intents
+ * depend on word order and never change, so they are cached separately by
+ * the input itself. Replies are still picked on every call, and FAQs found
+ * in the cache are still counted as used.
+ *
+ * Every answer is counted by outcome in {@link ChatBotMetrics}, with the
+ * time spent matching and detecting the intent, and reported to the flight
+ * recorder as a {@link ResponseEvent}.
  */
 public class ResponseHandler {
     
+    /**
+     * System property: number of inputs whose FAQ match, and separately
+     * whose intent, are cached; 0 disables caching
+     */
+    public static final String CACHE_SIZE_PROPERTY = "chatbot.response.cacheSize";
+    
+    private static final class CachedMatch {
+        final long version;
+        final FAQ faq;
+        
+        CachedMatch(long version, FAQ faq) {
+            this.version = version;
+            this.faq = faq;
+        }
+    }
+    
     private final NLPProcessor nlpProcessor;
     private final FAQTrainer faqTrainer;
     private final Map<String, List<String>> ruleBasedResponses;
+    private final boolean caching;
+    private final SegmentedLruCache<String, CachedMatch> matchCache;
+    private final SegmentedLruCache<String, String> intentCache;
+    private final ChatBotMetrics metrics;
+    private volatile long cachedVersion;
     
+    /**
+     * Create a handler with the cache size configured by system properties
+     */
     public ResponseHandler(FAQTrainer faqTrainer) {
+        this(faqTrainer, new ChatBotMetrics());
+    }
+    
+    /**
+     * Create a handler with the cache size configured by system properties
+     * that records into the given metrics
+     */
+    public ResponseHandler(FAQTrainer faqTrainer, ChatBotMetrics metrics) {
+        this(faqTrainer, Integer.getInteger(CACHE_SIZE_PROPERTY, 10000), metrics);
+    }
+    
+    /**
+     * @param cacheSize number of inputs whose match, and whose intent, are cached; 0 for none
+     */
+    public ResponseHandler(FAQTrainer faqTrainer, int cacheSize, ChatBotMetrics metrics) {
+        this.metrics = metrics;
         this.nlpProcessor = new NLPProcessor();
         this.faqTrainer = faqTrainer;
         this.ruleBasedResponses = initializeRuleBasedResponses();
+        this.caching = cacheSize > 0;
+        this.matchCache = new SegmentedLruCache<>(Math.max(0, cacheSize));
+        this.intentCache = new SegmentedLruCache<>(Math.max(0, cacheSize));
+        this.cachedVersion = faqTrainer.getCorpusVersion();
     }
     
     /**
@@ -28,21 +86,126 @@ public class ResponseHandler {
             return "I'm here to help! Please ask me something.";
         }
         
+        ResponseEvent event = new ResponseEvent();
+        event.begin();
+        event.inputLength = userInput.length();
+        long started = System.nanoTime();
+        
         // First, try ML-based FAQ matching
-        FAQ matchedFAQ = faqTrainer.findBestMatch(userInput);
+        FAQ matchedFAQ = findBestMatch(userInput, event);
+        event.matchTime = System.nanoTime() - started;
+        metrics.recordMatch(event.matchTime);
+        
+        String response = respond(userInput, matchedFAQ, event);
+        metrics.recordResponse(System.nanoTime() - started);
+        event.commit();
+        return response;
+    }
+    
+    /**
+     * Find the best matching FAQ and count it as used, reusing the match
+     * cached for the same tokens if the corpus has not changed since
+     */
+    private FAQ findBestMatch(String userInput, ResponseEvent event) {
+        if (!caching) {
+            return faqTrainer.findBestMatch(userInput);
+        }
+        long version = faqTrainer.getCorpusVersion();
+        if (version != cachedVersion) {
+            // Matches against an older corpus are never used again
+            cachedVersion = version;
+            matchCache.clear();
+        }
+        
+        String key = String.join(" ", new TreeSet<>(nlpProcessor.tokenize(userInput)));
+        CachedMatch cached = matchCache.get(key);
+        FAQ faq;
+        event.cacheHit = cached != null && cached.version == version;
+        metrics.recordCacheLookup(event.cacheHit);
+        if (event.cacheHit) {
+            faq = cached.faq;
+        } else {
+            FAQMatch match = faqTrainer.scoreBestMatch(userInput);
+            faq = match != null ? match.getFaq() : null;
+            // The match may come from a newer corpus if it changed meanwhile
+            if (faqTrainer.getCorpusVersion() == version) {
+                matchCache.put(key, new CachedMatch(version, faq));
+            }
+        }
+        if (faq != null) {
+            faqTrainer.recordUsage(faq);
+        }
+        return faq;
+    }
+    
+    /**
+     * Generate responses for many inputs, matching them against the FAQs
+     * in parallel
+     */
+    public List<String> generateResponses(List<String> userInputs) {
+        List<String> questions = new ArrayList<>(userInputs.size());
+        for (String userInput : userInputs) {
+            if (userInput != null && !userInput.trim().isEmpty()) {
+                questions.add(userInput);
+            }
+        }
+        Iterator<FAQ> matches = faqTrainer.findBestMatches(questions).iterator();
+        
+        List<String> responses = new ArrayList<>(userInputs.size());
+        for (String userInput : userInputs) {
+            if (userInput == null || userInput.trim().isEmpty()) {
+                responses.add("I'm here to help! Please ask me something.");
+            } else {
+                ResponseEvent event = new ResponseEvent();
+                event.begin();
+                event.batch = true;
+                event.inputLength = userInput.length();
+                responses.add(respond(userInput, matches.next(), event));
+                event.commit();
+            }
+        }
+        return responses;
+    }
+    
+    /**
+     * Answer with the matched FAQ, falling back to rules and defaults
+     */
+    private String respond(String userInput, FAQ matchedFAQ, ResponseEvent event) {
         if (matchedFAQ != null) {
-            return matchedFAQ.getAnswer();
+            return answered(ChatBotMetrics.Outcome.FAQ, event, matchedFAQ.getAnswer());
         }
         
         // Then, try rule-based responses
-        String intent = nlpProcessor.detectIntent(userInput);
+        long started = System.nanoTime();
+        String intent = detectIntent(userInput);
+        event.intentTime = System.nanoTime() - started;
+        event.intent = intent;
+        metrics.recordIntent(event.intentTime);
         String ruleBasedResponse = getRuleBasedResponse(intent, userInput);
         if (ruleBasedResponse != null) {
-            return ruleBasedResponse;
+            return answered(ChatBotMetrics.Outcome.RULE, event, ruleBasedResponse);
         }
         
         // Default response
-        return generateDefaultResponse(userInput);
+        return answered(ChatBotMetrics.Outcome.DEFAULT, event, generateDefaultResponse(userInput));
+    }
+    
+    private String answered(ChatBotMetrics.Outcome outcome, ResponseEvent event, String response) {
+        metrics.recordOutcome(outcome);
+        event.outcome = outcome.name();
+        return response;
+    }
+    
+    private String detectIntent(String userInput) {
+        if (!caching) {
+            return nlpProcessor.detectIntent(userInput);
+        }
+        String intent = intentCache.get(userInput);
+        if (intent == null) {
+            intent = nlpProcessor.detectIntent(userInput);
+            intentCache.put(userInput, intent);
+        }
+        return intent;
     }
     
     /**
@@ -51,8 +214,7 @@ public class ResponseHandler {
     private String getRuleBasedResponse(String intent, String userInput) {
         List<String> responses = ruleBasedResponses.get(intent);
         if (responses != null && !responses.isEmpty()) {
-            Random random = new Random();
-            return responses.get(random.nextInt(responses.size()));
+            return responses.get(ThreadLocalRandom.current().nextInt(responses.size()));
         }
         return null;
     }
@@ -69,8 +231,7 @@ public class ResponseHandler {
             "I'm processing that... Could you provide more details or try rephrasing your question?"
         );
         
-        Random random = new Random();
-        return defaultResponses.get(random.nextInt(defaultResponses.size()));
+        return defaultResponses.get(ThreadLocalRandom.current().nextInt(defaultResponses.size()));
     }
     
     /**
@@ -118,9 +279,11 @@ public class ResponseHandler {
     
     /**
      * Train the bot with a new FAQ
+     *
+     * @return the FAQs whose questions were near duplicates of the new one
      */
-    public void trainBot(String question, String answer) {
-        faqTrainer.trainFAQ(question, answer);
+    public List<FAQMatch> trainBot(String question, String answer) {
+        return faqTrainer.trainFAQ(question, answer);
     }
 }
 
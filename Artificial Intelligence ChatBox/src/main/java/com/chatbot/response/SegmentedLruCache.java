@@ -0,0 +1,138 @@
+package com.chatbot.response;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread-safe segmented LRU cache.
+ *
+ * New entries go into a probation segment. An entry read again is promoted
+ * to the protected segment, which holds most of the capacity, so a burst of
+ * one-off keys only churns probation and does not flush the entries that
+ * are read over and over. When protected is full, its least recently used
+ * entry is moved back to probation rather than dropped.
+ *
+ * Keys are spread by hash over independently locked stripes, each an LRU
+ * of its share of the capacity, so threads serving different inputs rarely
+ * wait for each other. Recency is therefore kept per stripe rather than
+ * across the whole cache.
+ */
+final class SegmentedLruCache<K, V> {
+    
+    /**
+     * Fewest entries a stripe is given, so small caches keep a useful
+     * protected segment instead of being split into tiny ones
+     */
+    private static final int MIN_STRIPE_CAPACITY = 64;
+    
+    private final Stripe<K, V>[] stripes;
+    private final int mask;
+    
+    /**
+     * @param capacity maximum number of entries; 0 caches nothing
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    SegmentedLruCache(int capacity) {
+        int count = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4),
+            Integer.highestOneBit(Math.max(1, capacity / MIN_STRIPE_CAPACITY)));
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            // Spread the remainder so the stripes add up to the capacity
+            stripes[i] = new Stripe<>(capacity / count + (i < capacity % count ? 1 : 0));
+        }
+        this.mask = count - 1;
+    }
+    
+    /**
+     * Get a cached value, or null if there is none
+     */
+    V get(K key) {
+        return stripe(key).get(key);
+    }
+    
+    void put(K key, V value) {
+        stripe(key).put(key, value);
+    }
+    
+    void clear() {
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.clear();
+        }
+    }
+    
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return stripes[(hash ^ (hash >>> 16)) & mask];
+    }
+    
+    /**
+     * One independently locked segmented LRU
+     */
+    private static final class Stripe<K, V> {
+        private final int probationCapacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, V> probation;
+        private final LinkedHashMap<K, V> protectedSegment;
+        
+        Stripe(int capacity) {
+            this.protectedCapacity = capacity * 4 / 5;
+            this.probationCapacity = capacity - protectedCapacity;
+            this.probation = new LinkedHashMap<>(16, 0.75f, true);
+            this.protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        }
+        
+        synchronized V get(K key) {
+            V value = protectedSegment.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.remove(key);
+            if (value != null) {
+                promote(key, value);
+            }
+            return value;
+        }
+        
+        synchronized void put(K key, V value) {
+            if (protectedSegment.containsKey(key)) {
+                protectedSegment.put(key, value);
+                return;
+            }
+            if (probationCapacity == 0) {
+                return;
+            }
+            probation.put(key, value);
+            evictOverflow(probation, probationCapacity);
+        }
+        
+        synchronized void clear() {
+            probation.clear();
+            protectedSegment.clear();
+        }
+        
+        private void promote(K key, V value) {
+            if (protectedCapacity == 0) {
+                probation.put(key, value);
+                return;
+            }
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedCapacity) {
+                // Demote the least recently used protected entry
+                Iterator<Map.Entry<K, V>> eldest = protectedSegment.entrySet().iterator();
+                Map.Entry<K, V> demoted = eldest.next();
+                eldest.remove();
+                probation.put(demoted.getKey(), demoted.getValue());
+                evictOverflow(probation, probationCapacity);
+            }
+        }
+        
+        private static <K, V> void evictOverflow(LinkedHashMap<K, V> segment, int capacity) {
+            Iterator<K> eldest = segment.keySet().iterator();
+            while (segment.size() > capacity) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+}
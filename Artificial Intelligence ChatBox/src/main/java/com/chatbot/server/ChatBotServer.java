@@ -0,0 +1,323 @@
+package com.chatbot.server;
+
+import com.chatbot.core.ChatBotEngine;
+import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Headless HTTP front end for {@link ChatBotEngine}.
+ *
+ * Uses the JDK's built-in HTTP server, so it needs neither JavaFX nor any
+ * other dependency besides Gson at runtime. Each request runs on its own
+ * virtual thread when the JVM supports them (Java 21 and later) and on a
+ * pooled platform thread otherwise. Connections are kept alive between
+ * requests. Requests beyond the in-flight limit are rejected with 503
+ * right away instead of queueing, and stopping the server lets requests
+ * in progress finish before the engine is shut down.
+ *
+ * Endpoints, all exchanging JSON:
+ * <ul>
+ *   <li>{@code POST /chat} with {@code {"sessionId", "message"}}</li>
+ *   <li>{@code GET /faqs} lists all FAQs</li>
+ *   <li>{@code POST /faqs} with {@code {"question", "answer"}} trains an FAQ
+ *       and lists the FAQs it is a near duplicate of</li>
+ *   <li>{@code DELETE /faqs?question=...} removes an FAQ, or answers 404 if there is none</li>
+ *   <li>{@code GET /health}</li>
+ * </ul>
+ */
+public class ChatBotServer {
+    
+    /**
+     * System property: port to listen on
+     */
+    public static final String PORT_PROPERTY = "chatbot.server.port";
+    
+    /**
+     * System property: number of requests processed at once before new ones are rejected
+     */
+    public static final String MAX_IN_FLIGHT_PROPERTY = "chatbot.server.maxInFlight";
+    
+    /**
+     * System property: seconds to wait for requests in progress when stopping
+     */
+    public static final String DRAIN_SECONDS_PROPERTY = "chatbot.server.drainSeconds";
+    
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+    
+    /**
+     * A request that cannot be served, answered with the given status
+     */
+    private static final class RequestException extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        final int status;
+        
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+    
+    private interface Endpoint {
+        Object handle(HttpExchange exchange) throws IOException, RequestException;
+    }
+    
+    private final ChatBotEngine engine;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final int drainSeconds;
+    private final Gson gson;
+    private volatile boolean draining;
+    
+    /**
+     * @param maxInFlight number of requests processed at once
+     * @param drainSeconds seconds to wait for requests in progress when stopping
+     */
+    public ChatBotServer(ChatBotEngine engine, InetSocketAddress address, int maxInFlight, int drainSeconds)
+            throws IOException {
+        this.engine = engine;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.permits = new Semaphore(this.maxInFlight);
+        this.drainSeconds = drainSeconds;
+        this.gson = new Gson();
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/chat", guarded(Map.of("POST", this::chat)));
+        server.createContext("/faqs", guarded(Map.of(
+            "GET", this::listFAQs,
+            "POST", this::trainFAQ,
+            "DELETE", this::removeFAQ)));
+        server.createContext("/health", guarded(Map.of("GET", this::health)));
+    }
+    
+    /**
+     * Start the server with settings from system properties and stop it
+     * gracefully when the JVM exits
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer.getInteger(PORT_PROPERTY, 8080);
+        ChatBotServer server = new ChatBotServer(new ChatBotEngine(), new InetSocketAddress(port),
+            Integer.getInteger(MAX_IN_FLIGHT_PROPERTY, 256),
+            Integer.getInteger(DRAIN_SECONDS_PROPERTY, 10));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "chatbot-server-shutdown"));
+        server.start();
+        System.out.println("ChatBot server listening on port " + server.getPort());
+    }
+    
+    public void start() {
+        server.start();
+    }
+    
+    /**
+     * Port the server is bound to
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+    
+    /**
+     * Reject new requests, wait for the ones in progress and shut the
+     * engine down
+     */
+    public void stop() {
+        draining = true;
+        try {
+            // Every permit is back once the last request in progress is done
+            if (permits.tryAcquire(maxInFlight, drainSeconds, TimeUnit.SECONDS)) {
+                permits.release(maxInFlight);
+            } else {
+                System.err.println("Requests still in progress after " + drainSeconds + " seconds");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        server.stop(0);
+        executor.shutdown();
+        engine.shutdown();
+    }
+    
+    /**
+     * One virtual thread per request when available, otherwise a pool of
+     * platform threads. The pool is unbounded so that requests over the
+     * limit reach the handler and are rejected instead of queueing.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "chatbot-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+    
+    private HttpHandler guarded(Map<String, Endpoint> endpoints) {
+        return exchange -> {
+            try {
+                if (draining || !permits.tryAcquire()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, error(draining ? "Server is shutting down" : "Server is busy"));
+                    return;
+                }
+                try {
+                    Endpoint endpoint = endpoints.get(exchange.getRequestMethod());
+                    if (endpoint == null) {
+                        exchange.getResponseHeaders().set("Allow", String.join(", ", endpoints.keySet()));
+                        throw new RequestException(405, "Method not allowed");
+                    }
+                    send(exchange, 200, endpoint.handle(exchange));
+                } catch (RequestException e) {
+                    send(exchange, e.status, error(e.getMessage()));
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling " + exchange.getRequestURI() + ": " + e.getMessage());
+                    send(exchange, 500, error("Internal error"));
+                } finally {
+                    permits.release();
+                }
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+    
+    private Object chat(HttpExchange exchange) throws IOException, RequestException {
+        JsonObject request = readJson(exchange);
+        String message = string(request, "message", true);
+        String sessionId = string(request, "sessionId", false);
+        if (sessionId == null) {
+            sessionId = ChatBotEngine.DEFAULT_SESSION;
+        }
+        
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sessionId", sessionId);
+        response.put("response", engine.processInput(sessionId, message));
+        return response;
+    }
+    
+    private Object listFAQs(HttpExchange exchange) {
+        List<Map<String, Object>> faqs = new ArrayList<>();
+        for (FAQ faq : engine.getAllFAQs()) {
+            // Through the getters: answers may still be stored in a snapshot
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("question", faq.getQuestion());
+            entry.put("answer", faq.getAnswer());
+            entry.put("keywords", faq.getKeywords());
+            entry.put("usageCount", faq.getUsageCount());
+            faqs.add(entry);
+        }
+        return faqs;
+    }
+    
+    private Object trainFAQ(HttpExchange exchange) throws IOException, RequestException {
+        JsonObject request = readJson(exchange);
+        List<Map<String, Object>> duplicates = new ArrayList<>();
+        for (FAQMatch duplicate : engine.trainBot(string(request, "question", true), string(request, "answer", true))) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("question", duplicate.getFaq().getQuestion());
+            entry.put("similarity", duplicate.getScore());
+            duplicates.add(entry);
+        }
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "trained");
+        response.put("duplicates", duplicates);
+        return response;
+    }
+    
+    private Object removeFAQ(HttpExchange exchange) throws RequestException {
+        String question = queryParameters(exchange).get("question");
+        if (question == null || question.isEmpty()) {
+            throw new RequestException(400, "Missing query parameter: question");
+        }
+        if (!engine.removeFAQ(question)) {
+            throw new RequestException(404, "No FAQ with question: " + question);
+        }
+        return status("removed");
+    }
+    
+    private Object health(HttpExchange exchange) {
+        return status("ok");
+    }
+    
+    private JsonObject readJson(HttpExchange exchange) throws IOException, RequestException {
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            throw new RequestException(413, "Request body too large");
+        }
+        try {
+            JsonElement json = gson.fromJson(new String(body, StandardCharsets.UTF_8), JsonElement.class);
+            if (json == null || !json.isJsonObject()) {
+                throw new RequestException(400, "Expected a JSON object");
+            }
+            return json.getAsJsonObject();
+        } catch (JsonParseException e) {
+            throw new RequestException(400, "Malformed JSON: " + e.getMessage());
+        }
+    }
+    
+    private static String string(JsonObject request, String name, boolean required) throws RequestException {
+        JsonElement value = request.get(name);
+        if (value == null || value.isJsonNull()) {
+            if (required) {
+                throw new RequestException(400, "Missing field: " + name);
+            }
+            return null;
+        }
+        if (!value.isJsonPrimitive() || !value.getAsJsonPrimitive().isString()) {
+            throw new RequestException(400, "Field must be a string: " + name);
+        }
+        return value.getAsString();
+    }
+    
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+    
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        // A fixed length keeps the connection reusable
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+    
+    private static Map<String, String> status(String status) {
+        return Map.of("status", status);
+    }
+    
+    private static Map<String, String> error(String message) {
+        return Map.of("error", message);
+    }
+}
@@ -0,0 +1,289 @@
+package com.chatbot.server;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
+import com.chatbot.storage.FAQStorage;
+import com.chatbot.training.FAQTrainer;
+import com.chatbot.training.MatchEngine;
+import com.chatbot.training.ShardCoordinator;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serves one shard of a partitioned corpus to a {@link ShardCoordinator}.
+ *
+ * The shard is an ordinary data directory, such as one written by
+ * {@code ShardTool}. Clients send one JSON request per line and get one
+ * JSON line back with the same {@code id}. Requests run in parallel, so
+ * replies come in any order:
+ * <ul>
+ *   <li>{@code {"id", "op": "match", "input", "k", "minScore"}} returns the
+ *       best matches as {@code {"id", "matches": [{"question", "answer",
+ *       "keywords", "usageCount", "score"}]}}</li>
+ *   <li>{@code {"id", "op": "train", "question", "answer"}} returns the near
+ *       duplicates as {@code {"id", "duplicates"}}, in the form of matches</li>
+ *   <li>{@code {"id", "op": "trainAll", "faqs": [{"question", "answer",
+ *       "keywords", "usageCount"}]}} trains a batch with one commit and
+ *       returns {@code {"id", "replaced", "superseded"}}: the FAQs of the
+ *       shard it replaced, and the positions of those of the batch replaced
+ *       by a later one</li>
+ *   <li>{@code {"id", "op": "remove", "question"}} returns {@code {"id", "removed"}}</li>
+ *   <li>{@code {"id", "op": "use", "question"}} counts an FAQ as used</li>
+ * </ul>
+ * A request that cannot be served is answered with {@code {"id", "error"}}.
+ *
+ * <pre>
+ * ShardWorker [--data dir] [--host address] [--port n] [--threads n]
+ * </pre>
+ * The worker listens on the loopback address unless another host is given,
+ * and on a free port unless one is given; it prints the port once ready.
+ */
+public class ShardWorker implements Closeable {
+    
+    private final FAQStorage storage;
+    private final FAQTrainer trainer;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+    
+    /**
+     * @param threads number of requests processed at once
+     */
+    public ShardWorker(FAQStorage storage, FAQTrainer trainer, InetSocketAddress address, int threads)
+            throws IOException {
+        this.storage = storage;
+        this.trainer = trainer;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public static void main(String[] args) throws IOException {
+        String data = ".";
+        String host = InetAddress.getLoopbackAddress().getHostAddress();
+        int port = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--data") && i + 1 < args.length) {
+                data = args[++i];
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Usage: ShardWorker [--data dir] [--host address] [--port n] [--threads n]");
+                System.exit(2);
+            }
+        }
+        
+        FAQStorage storage = new FAQStorage(Paths.get(data));
+        FAQTrainer trainer = new FAQTrainer(storage,
+            MatchEngine.parse(System.getProperty(FAQTrainer.MATCH_ENGINE_PROPERTY, "exact")));
+        ShardWorker worker = new ShardWorker(storage, trainer, new InetSocketAddress(host, port), threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            worker.close();
+            storage.close();
+        }, "shard-worker-shutdown"));
+        worker.start();
+        System.out.printf("Shard worker with %d FAQs listening on port %d%n", trainer.getCorpusSize(),
+            worker.getPort());
+    }
+    
+    public void start() {
+        // Keeps the JVM running until the worker is closed
+        new Thread(this::accept, "shard-worker-accept").start();
+    }
+    
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+    
+    private void accept() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread reader = new Thread(() -> serve(socket), "shard-worker-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error accepting shard connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Read the requests of one connection and answer each on the pool
+     */
+    private void serve(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String request = line;
+                executor.execute(() -> reply(out, handle(request)));
+            }
+        } catch (IOException | RejectedExecutionException e) {
+            // The coordinator went away or the worker is closing
+        } finally {
+            connections.remove(socket);
+        }
+    }
+    
+    private static void reply(Writer out, JsonObject reply) {
+        // Replies of one connection are written whole, one at a time
+        synchronized (out) {
+            try {
+                out.write(reply.toString());
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                // The coordinator went away; its reader ends the connection
+            }
+        }
+    }
+    
+    private JsonObject handle(String line) {
+        JsonObject reply = new JsonObject();
+        try {
+            JsonObject request = JsonParser.parseString(line).getAsJsonObject();
+            reply.add("id", request.get("id"));
+            String op = string(request, "op");
+            switch (op) {
+                case "match":
+                    reply.add("matches", match(string(request, "input"),
+                        request.has("k") ? request.get("k").getAsInt() : 1,
+                        request.has("minScore") ? request.get("minScore").getAsDouble() : FAQTrainer.DEFAULT_THRESHOLD));
+                    break;
+                case "train":
+                    reply.add("duplicates", toJson(trainer.trainFAQ(string(request, "question"),
+                        string(request, "answer"))));
+                    break;
+                case "trainAll":
+                    trainAll(request, reply);
+                    break;
+                case "remove":
+                    reply.addProperty("removed", trainer.removeFAQ(string(request, "question")));
+                    break;
+                case "use":
+                    FAQ faq = storage.getFAQ(string(request, "question"));
+                    if (faq != null) {
+                        trainer.recordUsage(faq);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown op: " + op);
+            }
+        } catch (RuntimeException e) {
+            reply.remove("matches");
+            reply.addProperty("error", String.valueOf(e.getMessage()));
+        }
+        return reply;
+    }
+    
+    private JsonArray match(String input, int k, double minScore) {
+        List<FAQMatch> matches;
+        if (k == 1 && minScore >= FAQTrainer.DEFAULT_THRESHOLD) {
+            // The best match alone takes the trainer's shortcuts
+            FAQMatch best = trainer.scoreBestMatch(input);
+            matches = best != null && best.getScore() >= minScore
+                ? Collections.singletonList(best) : Collections.emptyList();
+        } else {
+            matches = trainer.findTopMatches(input, k, minScore);
+        }
+        return toJson(matches);
+    }
+    
+    private void trainAll(JsonObject request, JsonObject reply) {
+        JsonElement faqs = request.get("faqs");
+        if (faqs == null || !faqs.isJsonArray()) {
+            throw new IllegalArgumentException("Missing faqs");
+        }
+        List<FAQ> batch = new ArrayList<>();
+        Map<FAQ, Integer> positions = new IdentityHashMap<>();
+        for (JsonElement faq : faqs.getAsJsonArray()) {
+            FAQ parsed = ShardCoordinator.parseFAQ(faq.getAsJsonObject());
+            positions.put(parsed, batch.size());
+            batch.add(parsed);
+        }
+        JsonArray replaced = new JsonArray();
+        JsonArray superseded = new JsonArray();
+        for (FAQ faq : trainer.trainFAQs(batch)) {
+            Integer position = positions.get(faq);
+            if (position != null) {
+                superseded.add(position);
+            } else {
+                replaced.add(ShardCoordinator.toJson(faq));
+            }
+        }
+        reply.add("replaced", replaced);
+        reply.add("superseded", superseded);
+    }
+    
+    private static JsonArray toJson(List<FAQMatch> matches) {
+        JsonArray array = new JsonArray();
+        for (FAQMatch match : matches) {
+            JsonObject object = ShardCoordinator.toJson(match.getFaq());
+            object.addProperty("score", match.getScore());
+            array.add(object);
+        }
+        return array;
+    }
+    
+    private static String string(JsonObject request, String name) {
+        JsonElement value = request.get(name);
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new IllegalArgumentException("Missing " + name);
+        }
+        return value.getAsString();
+    }
+    
+    /**
+     * Stop accepting requests and wait briefly for those in progress
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing anyway
+            }
+        }
+    }
+}
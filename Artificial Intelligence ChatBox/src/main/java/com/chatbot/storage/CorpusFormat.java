@@ -0,0 +1,52 @@
+package com.chatbot.storage;
+
+import java.nio.file.Path;
+
+/**
+ * File formats FAQ corpora are imported from and exported to
+ */
+public enum CorpusFormat {
+    /**
+     * Comma-separated values with a header row, as RFC 4180 quotes them:
+     * question, answer, keywords separated by semicolons, usage count
+     */
+    CSV,
+    
+    /**
+     * One JSON object per line, with the fields of the JSON format
+     */
+    JSONL,
+    
+    /**
+     * A JSON array of objects with question, answer, keywords and
+     * usageCount fields, as in faqs.json
+     */
+    JSON;
+    
+    /**
+     * Parse a format name, ignoring case
+     */
+    public static CorpusFormat parse(String name) {
+        for (CorpusFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown corpus format: " + name);
+    }
+    
+    /**
+     * The format a file name's extension stands for, or JSON if it has
+     * none of them
+     */
+    public static CorpusFormat of(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return JSONL;
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,313 @@
+package com.chatbot.storage;
+
+import com.chatbot.model.FAQ;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams the FAQs of a corpus file one row at a time, so a file of any
+ * size is read within a constant heap.
+ *
+ * A row that cannot become an FAQ, such as one without a question or
+ * answer, is returned with the reason instead and reading goes on. A CSV
+ * or JSONL row that is not even well-formed is rejected the same way; in
+ * the JSON format it ends the read with an exception, since the rest of
+ * the array cannot be found reliably.
+ */
+public class CorpusReader implements Closeable {
+    
+    /**
+     * One row of a corpus: an FAQ, or the reason it was rejected
+     */
+    public static final class Row {
+        private final long number;
+        private final FAQ faq;
+        private final String error;
+        
+        private Row(long number, FAQ faq, String error) {
+            this.number = number;
+            this.faq = faq;
+            this.error = error;
+        }
+        
+        /**
+         * Position of the row in the file, from 1; the CSV header and blank
+         * JSONL lines are not counted
+         */
+        public long getNumber() {
+            return number;
+        }
+        
+        /**
+         * The FAQ, or null if the row was rejected. Its keywords are null
+         * when the row has none.
+         */
+        public FAQ getFaq() {
+            return faq;
+        }
+        
+        /**
+         * Why the row was rejected, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+    
+    private static final String[] CSV_COLUMNS = { "question", "answer", "keywords", "usagecount" };
+    
+    private final BufferedReader in;
+    private final CorpusFormat format;
+    private JsonReader json;
+    // Position of each CSV column in a row, or -1 if the file lacks it
+    private int[] columns;
+    private long rows;
+    
+    public CorpusReader(Reader in, CorpusFormat format) {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        this.format = format;
+    }
+    
+    /**
+     * Read the next row
+     *
+     * @return the row, or null at the end of the file
+     */
+    public Row next() throws IOException {
+        switch (format) {
+            case CSV:
+                return nextCsv();
+            case JSONL:
+                return nextJsonLine();
+            default:
+                return nextJson();
+        }
+    }
+    
+    private Row nextCsv() throws IOException {
+        if (columns == null) {
+            List<String> header = readCsvRecord();
+            if (header == null) {
+                return null;
+            }
+            columns = new int[CSV_COLUMNS.length];
+            Arrays.fill(columns, -1);
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).trim().replace("_", "").toLowerCase();
+                for (int column = 0; column < CSV_COLUMNS.length; column++) {
+                    if (CSV_COLUMNS[column].equals(name) && columns[column] < 0) {
+                        columns[column] = i;
+                    }
+                }
+            }
+            if (columns[0] < 0 || columns[1] < 0) {
+                throw new IOException("CSV header needs question and answer columns");
+            }
+        }
+        
+        List<String> fields;
+        try {
+            fields = readCsvRecord();
+        } catch (MalformedRowException e) {
+            return new Row(++rows, null, e.getMessage());
+        }
+        if (fields == null) {
+            return null;
+        }
+        long number = ++rows;
+        String keywords = field(fields, columns[2]);
+        List<String> keywordList = null;
+        if (keywords != null && !keywords.trim().isEmpty()) {
+            keywordList = new ArrayList<>();
+            for (String keyword : keywords.split(";")) {
+                if (!keyword.trim().isEmpty()) {
+                    keywordList.add(keyword.trim());
+                }
+            }
+        }
+        String usage = field(fields, columns[3]);
+        int usageCount;
+        try {
+            usageCount = usage == null || usage.trim().isEmpty() ? 0 : Integer.parseInt(usage.trim());
+        } catch (NumberFormatException e) {
+            return new Row(number, null, "invalid usage count: " + usage);
+        }
+        return row(number, field(fields, columns[0]), field(fields, columns[1]), keywordList, usageCount);
+    }
+    
+    private static String field(List<String> fields, int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column) : null;
+    }
+    
+    /**
+     * Read one CSV record, which may span lines inside quotes
+     *
+     * @return the fields, or null at the end of the file
+     */
+    private List<String> readCsvRecord() throws IOException {
+        String line = in.readLine();
+        // Blank lines between records carry no row
+        while (line != null && line.isEmpty()) {
+            line = in.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    fields.add(field.toString());
+                    return fields;
+                }
+                line = in.readLine();
+                if (line == null) {
+                    throw new MalformedRowException("unterminated quoted field");
+                }
+                field.append('\n');
+                i = 0;
+                continue;
+            }
+            char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+    }
+    
+    private Row nextJsonLine() throws IOException {
+        String line = in.readLine();
+        while (line != null && line.trim().isEmpty()) {
+            line = in.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        long number = ++rows;
+        try (JsonReader reader = new JsonReader(new StringReader(line))) {
+            Row row = readObject(reader, number);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                return new Row(number, null, "text after the JSON object");
+            }
+            return row;
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            return new Row(number, null, "malformed JSON: " + e.getMessage());
+        }
+    }
+    
+    private Row nextJson() throws IOException {
+        if (json == null) {
+            json = new JsonReader(in);
+            try {
+                json.beginArray();
+            } catch (EOFException e) {
+                // An empty file holds no FAQs
+                return null;
+            }
+        }
+        if (!json.hasNext()) {
+            return null;
+        }
+        try {
+            return readObject(json, ++rows);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed FAQ " + rows + ": " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Read one FAQ object; fields other than the FAQ's are skipped
+     */
+    private static Row readObject(JsonReader reader, long number) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return new Row(number, null, "not a JSON object");
+        }
+        String question = null;
+        String answer = null;
+        List<String> keywords = null;
+        int usageCount = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "question":
+                    question = reader.nextString();
+                    break;
+                case "answer":
+                    answer = reader.nextString();
+                    break;
+                case "keywords":
+                    keywords = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        keywords.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                case "usageCount":
+                    usageCount = reader.nextInt();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return row(number, question, answer, keywords, usageCount);
+    }
+    
+    private static Row row(long number, String question, String answer, List<String> keywords, int usageCount) {
+        if (question == null || question.trim().isEmpty()) {
+            return new Row(number, null, "missing question");
+        }
+        if (answer == null || answer.trim().isEmpty()) {
+            return new Row(number, null, "missing answer");
+        }
+        if (usageCount < 0) {
+            return new Row(number, null, "negative usage count");
+        }
+        return new Row(number, new FAQ(question, answer, keywords, usageCount), null);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    /**
+     * A CSV row that cannot be split into fields
+     */
+    private static final class MalformedRowException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        MalformedRowException(String message) {
+            super(message);
+        }
+    }
+}
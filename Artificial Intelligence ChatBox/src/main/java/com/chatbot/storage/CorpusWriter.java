@@ -0,0 +1,115 @@
+package com.chatbot.storage;
+
+import com.chatbot.model.FAQ;
+import com.google.gson.stream.JsonWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes FAQs to a corpus file one at a time, so a corpus of any size is
+ * written within a constant heap. Files written in any format read back
+ * with {@link CorpusReader} as the same FAQs.
+ */
+public class CorpusWriter implements Closeable {
+    
+    private final Writer out;
+    private final CorpusFormat format;
+    private JsonWriter json;
+    private boolean started;
+    
+    public CorpusWriter(Writer out, CorpusFormat format) {
+        this.out = out;
+        this.format = format;
+    }
+    
+    public void write(FAQ faq) throws IOException {
+        if (!started) {
+            start();
+        }
+        switch (format) {
+            case CSV:
+                writeCsvField(faq.getQuestion());
+                out.write(',');
+                writeCsvField(faq.getAnswer());
+                out.write(',');
+                List<String> keywords = faq.getKeywords();
+                writeCsvField(keywords == null ? "" : String.join(";", keywords));
+                out.write(',');
+                out.write(Integer.toString(faq.getUsageCount()));
+                out.write("\r\n");
+                break;
+            case JSONL:
+                JsonWriter line = new JsonWriter(out);
+                line.setSerializeNulls(false);
+                writeObject(line, faq);
+                line.flush();
+                out.write('\n');
+                break;
+            default:
+                writeObject(json, faq);
+                break;
+        }
+    }
+    
+    private void start() throws IOException {
+        started = true;
+        if (format == CorpusFormat.CSV) {
+            out.write("question,answer,keywords,usageCount\r\n");
+        } else if (format == CorpusFormat.JSON) {
+            json = new JsonWriter(out);
+            json.setIndent("  ");
+            json.setSerializeNulls(false);
+            json.beginArray();
+        }
+    }
+    
+    private void writeCsvField(String value) throws IOException {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        out.write(value.replace("\"", "\"\""));
+        out.write('"');
+    }
+    
+    private static void writeObject(JsonWriter writer, FAQ faq) throws IOException {
+        // Written through the getters, which decode answers still in a snapshot
+        writer.beginObject();
+        writer.name("question").value(faq.getQuestion());
+        writer.name("answer").value(faq.getAnswer());
+        writer.name("keywords");
+        if (faq.getKeywords() == null) {
+            writer.nullValue();
+        } else {
+            writer.beginArray();
+            for (String keyword : faq.getKeywords()) {
+                writer.value(keyword);
+            }
+            writer.endArray();
+        }
+        writer.name("usageCount").value(faq.getUsageCount());
+        writer.endObject();
+    }
+    
+    /**
+     * Finish the file and close the underlying writer
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!started) {
+                start();
+            }
+            if (json != null) {
+                json.endArray();
+                json.flush();
+            }
+        } finally {
+            out.close();
+        }
+    }
+}
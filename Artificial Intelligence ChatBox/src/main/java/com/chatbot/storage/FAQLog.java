@@ -0,0 +1,317 @@
+package com.chatbot.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of FAQ changes.
+ *
+ * The log is split into numbered segment files. Each record is framed as
+ * its payload length, a CRC32 of the payload, and the payload itself, so a
+ * record torn by a crash is detected on replay and cut off instead of
+ * corrupting the corpus.
+ */
+class FAQLog implements Closeable {
+    
+    static final byte ADD = 1;
+    static final byte REMOVE = 2;
+    static final byte USAGE = 3;
+    
+    private static final String SEGMENT_PREFIX = "faqs.log.";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+    private static final int WRITE_CHUNK = 1024 * 1024;
+    
+    /**
+     * A single logged change
+     */
+    static final class Record {
+        final byte type;
+        final String question;
+        final String answer;
+        final List<String> keywords;
+        final int usage;
+        
+        private Record(byte type, String question, String answer, List<String> keywords, int usage) {
+            this.type = type;
+            this.question = question;
+            this.answer = answer;
+            this.keywords = keywords;
+            this.usage = usage;
+        }
+        
+        static Record add(String question, String answer, List<String> keywords, int usageCount) {
+            return new Record(ADD, question, answer, keywords, usageCount);
+        }
+        
+        static Record remove(String question) {
+            return new Record(REMOVE, question, null, null, 0);
+        }
+        
+        static Record usage(String question, int delta) {
+            return new Record(USAGE, question, null, null, delta);
+        }
+    }
+    
+    private final Path directory;
+    private long segment;
+    private FileChannel channel;
+    private long bytesWritten;
+    
+    /**
+     * Open the log for appending to the given segment
+     *
+     * @param existingBytes log bytes already on disk since the last snapshot
+     */
+    FAQLog(Path directory, long segment, long existingBytes) throws IOException {
+        this.directory = directory;
+        this.bytesWritten = existingBytes;
+        openSegment(segment);
+    }
+    
+    /**
+     * Numbers of the segments present in a directory, in ascending order
+     */
+    static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*")) {
+            for (Path path : stream) {
+                String suffix = path.getFileName().toString().substring(SEGMENT_PREFIX.length());
+                try {
+                    segments.add(Long.parseLong(suffix));
+                } catch (NumberFormatException e) {
+                    // Not a segment file
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    static Path segmentPath(Path directory, long segment) {
+        return directory.resolve(SEGMENT_PREFIX + segment);
+    }
+    
+    /**
+     * Read every intact record of a segment. A torn or corrupt tail is
+     * truncated when {@code truncateTail} is set; otherwise it is an error.
+     */
+    static List<Record> replay(Path path, boolean truncateTail) throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            long position = 0;
+            long size = in.size();
+            while (position < size) {
+                header.clear();
+                if (!readFully(in, header, position)) {
+                    break;
+                }
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || length > MAX_RECORD_SIZE || position + HEADER_SIZE + length > size) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                if (!readFully(in, payload, position + HEADER_SIZE) || checksum(payload.array()) != checksum) {
+                    break;
+                }
+                records.add(decode(payload.array()));
+                position += HEADER_SIZE + length;
+            }
+            
+            if (position < size) {
+                if (!truncateTail) {
+                    throw new IOException("Corrupt record in " + path + " at offset " + position);
+                }
+                System.err.println("Discarding torn log tail in " + path + " at offset " + position);
+                in.truncate(position);
+                in.force(true);
+            }
+        }
+        return records;
+    }
+    
+    /**
+     * Append records, written in large chunks, and force them to disk once.
+     * If any of it fails, the segment is truncated back to where the batch
+     * started, so a torn batch does not hide the records appended after it
+     * from replay.
+     */
+    void append(List<Record> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        long start = channel.size();
+        long bytesBefore = bytesWritten;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (Record record : records) {
+                byte[] payload = encode(record);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(payload.length).putInt(checksum(payload));
+                bytes.write(header.array());
+                bytes.write(payload);
+                // Large batches go out in chunks, so the buffer stays small
+                if (bytes.size() >= WRITE_CHUNK) {
+                    write(bytes);
+                }
+            }
+            write(bytes);
+            sync();
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                bytesWritten = bytesBefore;
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Force the records written so far to disk
+     */
+    void sync() throws IOException {
+        channel.force(false);
+    }
+    
+    private void write(ByteArrayOutputStream bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        bytesWritten += bytes.size();
+        bytes.reset();
+    }
+    
+    /**
+     * Close the current segment and continue in the next one
+     *
+     * @return the number of the segment that was closed
+     */
+    long roll() throws IOException {
+        long closed = segment;
+        channel.close();
+        openSegment(closed + 1);
+        bytesWritten = 0;
+        return closed;
+    }
+    
+    /**
+     * Bytes in the log since the last snapshot
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    private void openSegment(long number) throws IOException {
+        this.segment = number;
+        this.channel = FileChannel.open(segmentPath(directory, number),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    private static boolean readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+    
+    private static byte[] encode(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(record.type);
+        writeString(out, record.question);
+        if (record.type == ADD) {
+            writeString(out, record.answer);
+            writeStrings(out, record.keywords);
+        }
+        if (record.type == ADD || record.type == USAGE) {
+            out.writeInt(record.usage);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String question = readString(in);
+        switch (type) {
+            case ADD:
+                String answer = readString(in);
+                List<String> keywords = readStrings(in);
+                return Record.add(question, answer, keywords, in.readInt());
+            case REMOVE:
+                return Record.remove(question);
+            case USAGE:
+                return Record.usage(question, in.readInt());
+            default:
+                throw new IOException("Unknown log record type: " + type);
+        }
+    }
+    
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    static void writeStrings(DataOutput out, List<String> values) throws IOException {
+        if (values == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+    
+    static List<String> readStrings(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
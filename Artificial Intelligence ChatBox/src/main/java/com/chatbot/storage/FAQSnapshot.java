@@ -0,0 +1,543 @@
+package com.chatbot.storage;
+
+import com.chatbot.model.FAQ;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Binary snapshot of the whole FAQ corpus, written by log compaction.
+ *
+ * A snapshot records the last log segment it covers; on startup it is
+ * loaded first and only later segments are replayed on top of it. Besides
+ * the FAQs it holds the term dictionary, every FAQ's term id arrays and the
+ * tables an index needs, so nothing has to be tokenized or indexed again.
+ * The file is memory-mapped when opened and read through a
+ * {@link SnapshotCorpus}: only the header and the dictionary are read up
+ * front, and each FAQ is decoded when it is first used.
+ *
+ * Each snapshot is named after the segment it covers. A new one never
+ * overwrites a file that may still be mapped, and the newest is the one
+ * loaded. Snapshots of version 2, which held the FAQs alone, are still
+ * read, by decoding every FAQ.
+ */
+class FAQSnapshot {
+    
+    static final String FILE_PREFIX = "faqs.snapshot.";
+    
+    private static final int MAGIC = 0x46415153; // "FAQS"
+    private static final int VERSION = 3;
+    private static final int LEGACY_VERSION = 2;
+    private static final int LEGACY_HEADER_SIZE = 32;
+    private static final int LENGTH_OFFSET = 16;
+    
+    /** Offset of the section offsets in the header */
+    static final int SECTIONS_OFFSET = 32;
+    /** Record table, usage counts, key hashes, key table, postings, signature table, empty query list */
+    static final int SECTION_COUNT = 7;
+    static final int HEADER_SIZE = SECTIONS_OFFSET + 8 * SECTION_COUNT;
+    
+    final long lastSegment;
+    final List<String> terms;
+    final SnapshotCorpus base;
+    final int[] removed;
+    final Map<Integer, Integer> baseUsage;
+    final List<FAQ> faqs;
+    final int[] usageCounts;
+    
+    /**
+     * @param terms the dictionary terms, in id order
+     * @param base FAQs of an earlier snapshot to carry over, or null
+     * @param removed positions in the base not to carry over, ascending
+     * @param baseUsage usage count to record for base FAQs whose count changed, by position
+     * @param faqs FAQs to record after those of the base
+     * @param usageCounts usage count to record for each of the FAQs
+     */
+    FAQSnapshot(long lastSegment, List<String> terms, SnapshotCorpus base, int[] removed,
+                Map<Integer, Integer> baseUsage, List<FAQ> faqs, int[] usageCounts) {
+        this.lastSegment = lastSegment;
+        this.terms = terms;
+        this.base = base;
+        this.removed = removed;
+        this.baseUsage = baseUsage;
+        this.faqs = faqs;
+        this.usageCounts = usageCounts;
+    }
+    
+    static Path snapshotPath(Path directory, long segment) {
+        return directory.resolve(FILE_PREFIX + segment);
+    }
+    
+    /**
+     * Size of the open-addressing tables of a snapshot: a power of two at
+     * least twice the number of FAQs, so probe runs stay short
+     */
+    static int tableCapacity(int size) {
+        return Integer.highestOneBit(Math.max(4, 2 * size - 1)) << 1;
+    }
+    
+    static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+    
+    /**
+     * Write a snapshot to a temporary file and atomically move it into place.
+     *
+     * Layout, all integers big-endian: a header (magic, version, last
+     * segment, file length, term count, FAQ count and the offset of each
+     * table), the terms, then per FAQ its question, answer, keyword block,
+     * question term ids and keyword term ids. Strings are a byte length
+     * followed by UTF-8, with -1 for null. The keyword block is prefixed with
+     * its byte length so that it can be skipped without decoding.
+     *
+     * The tables follow: the offset of every record plus the end of the
+     * last, the usage counts, the hash of every case-folded question, a
+     * table of (hash, position + 1) pairs by that hash, the start of every
+     * term's postings followed by the postings themselves, a table of
+     * (hash, position + 1) pairs by the hash of the question term ids, and
+     * the FAQs a query without terms matches. Base FAQs are copied record by
+     * record without decoding them.
+     */
+    void write(Path directory) throws IOException {
+        Path target = snapshotPath(directory, lastSegment);
+        Path temp = directory.resolve(FILE_PREFIX + "tmp");
+        
+        int[] basePositions = livePositions();
+        int count = basePositions.length + faqs.size();
+        long[] sections = new long[SECTION_COUNT];
+        long[] recordOffsets = new long[count + 1];
+        int[] usage = new int[count];
+        int[] keyHashes = new int[count];
+        int[] signatures = new int[count];
+        long[] postingStarts = new long[terms.size() + 1];
+        int[] lastPosting = new int[terms.size()];
+        int[] emptyQuery = new int[16];
+        int emptyQueryCount = 0;
+        
+        try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+            CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(file));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.write(new byte[HEADER_SIZE]); // Filled in once known
+            for (String term : terms) {
+                FAQLog.writeString(out, term);
+            }
+            
+            ByteArrayOutputStream keywordBytes = new ByteArrayOutputStream();
+            Arrays.fill(lastPosting, -1);
+            for (int i = 0; i < count; i++) {
+                recordOffsets[i] = counter.count;
+                int[] questionTerms;
+                int[] keywordTerms;
+                if (i < basePositions.length) {
+                    int position = basePositions[i];
+                    out.write(base.record(position));
+                    usage[i] = baseUsage.getOrDefault(position, base.usageCount(position));
+                    keyHashes[i] = base.keyHash(position);
+                    questionTerms = base.questionTerms(position);
+                    keywordTerms = base.keywordTerms(position);
+                } else {
+                    FAQ faq = faqs.get(i - basePositions.length);
+                    FAQLog.writeString(out, faq.getQuestion());
+                    FAQLog.writeString(out, faq.getAnswer());
+                    
+                    keywordBytes.reset();
+                    FAQLog.writeStrings(new DataOutputStream(keywordBytes), faq.getKeywords());
+                    out.writeInt(keywordBytes.size());
+                    keywordBytes.writeTo(out);
+                    
+                    questionTerms = faq.getQuestionTerms();
+                    keywordTerms = faq.getKeywordTerms();
+                    writeTerms(out, questionTerms);
+                    writeTerms(out, keywordTerms);
+                    usage[i] = usageCounts[i - basePositions.length];
+                    keyHashes[i] = FAQStorage.questionKey(faq.getQuestion()).hashCode();
+                }
+                signatures[i] = Arrays.hashCode(questionTerms);
+                countPostings(questionTerms, i, lastPosting, postingStarts);
+                countPostings(keywordTerms, i, lastPosting, postingStarts);
+                if (questionTerms.length == 0 || (keywordTerms != null && keywordTerms.length == 0)) {
+                    if (emptyQueryCount == emptyQuery.length) {
+                        emptyQuery = Arrays.copyOf(emptyQuery, emptyQueryCount * 2);
+                    }
+                    emptyQuery[emptyQueryCount++] = i;
+                }
+            }
+            recordOffsets[count] = counter.count;
+            
+            sections[0] = counter.count;
+            for (long offset : recordOffsets) {
+                out.writeLong(offset);
+            }
+            sections[1] = counter.count;
+            writeInts(out, usage, count);
+            sections[2] = counter.count;
+            writeInts(out, keyHashes, count);
+            sections[3] = counter.count;
+            writeInts(out, hashTable(keyHashes), -1);
+            
+            sections[4] = counter.count;
+            long total = 0;
+            for (int term = 0; term < terms.size(); term++) {
+                long termCount = postingStarts[term];
+                postingStarts[term] = total;
+                total += termCount;
+            }
+            postingStarts[terms.size()] = total;
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many postings for a snapshot: " + total);
+            }
+            for (long start : postingStarts) {
+                out.writeLong(start);
+            }
+            writeInts(out, fillPostings(basePositions, postingStarts, (int) total), -1);
+            
+            sections[5] = counter.count;
+            writeInts(out, hashTable(signatures), -1);
+            sections[6] = counter.count;
+            out.writeInt(emptyQueryCount);
+            writeInts(out, emptyQuery, emptyQueryCount);
+            out.flush();
+            
+            // A length matching the file marks a completely written snapshot
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putLong(lastSegment)
+                .putLong(counter.count)
+                .putInt(terms.size())
+                .putInt(count);
+            for (long section : sections) {
+                header.putLong(section);
+            }
+            header.flip();
+            file.getChannel().write(header, 0);
+            file.getFD().sync();
+        }
+        
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Positions of the base FAQs to carry over, ascending
+     */
+    private int[] livePositions() {
+        if (base == null) {
+            return new int[0];
+        }
+        int[] positions = new int[base.size() - removed.length];
+        int next = 0;
+        int skip = 0;
+        for (int position = 0; position < base.size(); position++) {
+            if (skip < removed.length && removed[skip] == position) {
+                skip++;
+            } else {
+                positions[next++] = position;
+            }
+        }
+        return positions;
+    }
+    
+    /**
+     * Count an FAQ once in the postings of each of its terms, whether it has
+     * the term in its question, its keywords or both
+     */
+    private static void countPostings(int[] terms, int faq, int[] lastPosting, long[] counts) {
+        if (terms == null) {
+            return;
+        }
+        for (int term : terms) {
+            if (lastPosting[term] != faq) {
+                lastPosting[term] = faq;
+                counts[term]++;
+            }
+        }
+    }
+    
+    /**
+     * Fill the postings of every term, decoding the term ids once more
+     */
+    private int[] fillPostings(int[] basePositions, long[] postingStarts, int total) throws IOException {
+        int[] postings = new int[total];
+        long[] next = Arrays.copyOf(postingStarts, postingStarts.length - 1);
+        int[] lastPosting = new int[next.length];
+        Arrays.fill(lastPosting, -1);
+        for (int i = 0; i < basePositions.length + faqs.size(); i++) {
+            int[] questionTerms;
+            int[] keywordTerms;
+            if (i < basePositions.length) {
+                questionTerms = base.questionTerms(basePositions[i]);
+                keywordTerms = base.keywordTerms(basePositions[i]);
+            } else {
+                questionTerms = faqs.get(i - basePositions.length).getQuestionTerms();
+                keywordTerms = faqs.get(i - basePositions.length).getKeywordTerms();
+            }
+            for (int[] terms : new int[][] { questionTerms, keywordTerms }) {
+                if (terms == null) {
+                    continue;
+                }
+                for (int term : terms) {
+                    if (lastPosting[term] != i) {
+                        lastPosting[term] = i;
+                        postings[(int) next[term]++] = i;
+                    }
+                }
+            }
+        }
+        return postings;
+    }
+    
+    /**
+     * Open-addressing table of (hash, position + 1) pairs, empty slots zero
+     */
+    private static int[] hashTable(int[] hashes) {
+        int capacity = tableCapacity(hashes.length);
+        int[] table = new int[2 * capacity];
+        for (int position = 0; position < hashes.length; position++) {
+            int slot = mix(hashes[position]) & (capacity - 1);
+            while (table[2 * slot + 1] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table[2 * slot] = hashes[position];
+            table[2 * slot + 1] = position + 1;
+        }
+        return table;
+    }
+    
+    /**
+     * Map the newest snapshot in a directory, or return null if there is none
+     */
+    static FAQSnapshot open(Path directory) throws IOException {
+        List<Long> segments = listSnapshots(directory);
+        if (segments.isEmpty()) {
+            return null;
+        }
+        return read(snapshotPath(directory, segments.get(segments.size() - 1)));
+    }
+    
+    /**
+     * Delete the snapshots older than the given one. A file that is still
+     * mapped cannot be deleted on some platforms; it is retried next time.
+     */
+    static void deleteOlder(Path directory, long segment) throws IOException {
+        for (long older : listSnapshots(directory)) {
+            if (older < segment) {
+                try {
+                    Files.deleteIfExists(snapshotPath(directory, older));
+                } catch (IOException e) {
+                    System.err.println("Could not delete old snapshot: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private static List<Long> listSnapshots(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+            for (Path path : stream) {
+                String suffix = path.getFileName().toString().substring(FILE_PREFIX.length());
+                try {
+                    segments.add(Long.parseLong(suffix));
+                } catch (NumberFormatException e) {
+                    // Temporary file of an unfinished snapshot
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    /**
+     * Read a snapshot: as a mapped base for the current version, or with
+     * every FAQ decoded for version 2
+     */
+    private static FAQSnapshot read(Path path) throws IOException {
+        MappedFile file = MappedFile.map(path);
+        if (file.size() < LEGACY_HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new IOException("Not an FAQ snapshot: " + path);
+        }
+        int version = file.getInt(4);
+        if (version != VERSION && version != LEGACY_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + ": " + path);
+        }
+        if (file.getLong(LENGTH_OFFSET) != file.size()) {
+            throw new IOException("Incomplete snapshot: " + path);
+        }
+        if (version == LEGACY_VERSION) {
+            return readLegacy(file, path);
+        }
+        if (file.size() < HEADER_SIZE) {
+            throw new IOException("Corrupt snapshot: " + path);
+        }
+        SnapshotCorpus corpus;
+        List<String> terms;
+        try {
+            corpus = SnapshotCorpus.open(file);
+            terms = corpus.readTerms();
+        } catch (IOException e) {
+            throw new IOException(e.getMessage() + ": " + path, e);
+        }
+        return new FAQSnapshot(corpus.lastSegment(), terms, corpus, new int[0], Collections.emptyMap(),
+            Collections.emptyList(), new int[0]);
+    }
+    
+    /**
+     * Decode a version 2 snapshot, which held each FAQ's usage count in its
+     * record and no tables
+     */
+    private static FAQSnapshot readLegacy(MappedFile file, Path path) throws IOException {
+        long lastSegment = file.getLong(8);
+        int termCount = file.getInt(24);
+        int faqCount = file.getInt(28);
+        if (termCount < 0 || faqCount < 0 || termCount + (long) faqCount > file.size()) {
+            throw new IOException("Corrupt snapshot: " + path);
+        }
+        
+        long position = LEGACY_HEADER_SIZE;
+        List<String> terms = new ArrayList<>(termCount);
+        for (int i = 0; i < termCount; i++) {
+            int length = file.getInt(position);
+            if (length < 0) {
+                throw new IOException("Corrupt snapshot: " + path);
+            }
+            terms.add(file.getString(position + 4, length));
+            position += 4 + length;
+        }
+        
+        List<FAQ> faqs = new ArrayList<>(faqCount);
+        int[] usageCounts = new int[faqCount];
+        for (int i = 0; i < faqCount; i++) {
+            usageCounts[i] = file.getInt(position);
+            position += 4;
+            
+            int questionLength = file.getInt(position);
+            String question = questionLength < 0 ? null : file.getString(position + 4, questionLength);
+            position += 4 + Math.max(questionLength, 0);
+            
+            long answerPosition = position + 4;
+            int answerLength = file.getInt(position);
+            position += 4 + Math.max(answerLength, 0);
+            
+            long keywordPosition = position + 4;
+            int keywordLength = file.getInt(position);
+            if (keywordLength < 4) {
+                throw new IOException("Corrupt snapshot: " + path);
+            }
+            position += 4 + keywordLength;
+            
+            int[] questionTerms = readTerms(file, position, termCount);
+            if (questionTerms == null) {
+                throw new IOException("Corrupt snapshot: " + path);
+            }
+            position += 4 + 4L * questionTerms.length;
+            int[] keywordTerms = readTerms(file, position, termCount);
+            position += 4 + (keywordTerms != null ? 4L * keywordTerms.length : 0);
+            
+            FAQ faq = new FAQ(question,
+                () -> answerLength < 0 ? null : decode(() -> file.getString(answerPosition, answerLength)),
+                () -> decode(() -> readStrings(file, keywordPosition)),
+                usageCounts[i]);
+            faq.setTerms(questionTerms, keywordTerms);
+            faqs.add(faq);
+        }
+        if (position != file.size()) {
+            throw new IOException("Corrupt snapshot: " + path);
+        }
+        return new FAQSnapshot(lastSegment, terms, null, new int[0], Collections.emptyMap(), faqs, usageCounts);
+    }
+    
+    private static void writeTerms(DataOutput out, int[] terms) throws IOException {
+        if (terms == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(terms.length);
+        for (int term : terms) {
+            out.writeInt(term);
+        }
+    }
+    
+    /**
+     * Write the first count values, or all of them for -1
+     */
+    private static void writeInts(DataOutput out, int[] values, int count) throws IOException {
+        for (int i = 0, n = count < 0 ? values.length : count; i < n; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+    
+    /**
+     * Read term ids written by {@link #writeTerms}, or null for none
+     */
+    static int[] readTerms(MappedFile file, long position, int termCount) throws IOException {
+        int count = file.getInt(position);
+        if (count < 0) {
+            return null;
+        }
+        int[] terms = file.getInts(position + 4, count);
+        for (int term : terms) {
+            if (term < 0 || term >= termCount) {
+                throw new IOException("Corrupt snapshot: unknown term id " + term);
+            }
+        }
+        return terms;
+    }
+    
+    /**
+     * Decode a string list written by {@link FAQLog#writeStrings}
+     */
+    static List<String> readStrings(MappedFile file, long position) throws IOException {
+        int count = file.getInt(position);
+        if (count < 0) {
+            return null;
+        }
+        List<String> values = new ArrayList<>(count);
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            int length = file.getInt(position);
+            values.add(length < 0 ? null : file.getString(position + 4, length));
+            position += 4 + Math.max(length, 0);
+        }
+        return values;
+    }
+    
+    interface MappedRead<T> {
+        T read() throws IOException;
+    }
+    
+    static <T> T decode(MappedRead<T> read) {
+        try {
+            return read.read();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading FAQ snapshot: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Counts the bytes written, for the offsets of records and tables
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long count;
+        
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -1,92 +1,748 @@
 package com.chatbot.storage;
 
+import com.chatbot.metrics.LatencyHistogram;
 import com.chatbot.model.FAQ;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
+import com.chatbot.nlp.NLPProcessor;
+import com.chatbot.nlp.TermDictionary;
 import java.io.*;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Handles persistence of FAQ data
+ * Handles persistence of FAQ data.
+ *
+ * Every change is appended to a write-ahead log ({@link FAQLog}) instead of
+ * rewriting the corpus, so a write costs the size of the change. Once the
+ * log grows past a threshold it is compacted in the background into a
+ * {@link FAQSnapshot}; on startup the snapshot is mapped and the log tail
+ * replayed on top of it. Snapshot FAQs are decoded one at a time, when they
+ * are first looked up, so startup does not grow with the corpus. The JSON file is kept as an import/export format:
+ * it is imported when no log exists yet and exported on close if the corpus
+ * changed since it was last written.
+ *
+ * The storage also tokenizes every FAQ once, when it is added, into term
+ * ids of a shared {@link TermDictionary}. Snapshots keep those ids, so a
+ * restart neither parses JSON nor tokenizes the corpus again.
+ *
+ * FAQs are kept in insertion order: those of the snapshot, found through
+ * its hash table of case-folded questions, then those added since, indexed
+ * the same way in memory. Adding, replacing, removing and looking up an FAQ
+ * take constant time however large the corpus is.
+ *
+ * Changes are serialized on the storage. Lookups and the size read
+ * concurrent structures, so they never wait for a writer, and usage counts
+ * are recorded without any lock. Matching and listing go through the
+ * immutable index versions of a trainer rather than the storage.
  */
 public class FAQStorage {
     
     private static final String FAQ_FILE = "faqs.json";
-    private final List<FAQ> faqs;
-    private final Gson gson;
+    
+    /**
+     * System property: longest time, in milliseconds, a usage count update
+     * may stay unsaved; 0 saves on every update
+     */
+    public static final String USAGE_FLUSH_MILLIS_PROPERTY = "chatbot.usage.flushMillis";
+    
+    /**
+     * System property: number of unsaved usage count updates that triggers a save
+     */
+    public static final String USAGE_MAX_PENDING_PROPERTY = "chatbot.usage.maxPending";
+    
+    /**
+     * System property: log size, in bytes, after which it is compacted into a snapshot
+     */
+    public static final String COMPACT_BYTES_PROPERTY = "chatbot.log.compactBytes";
+    
+    private final Path directory;
+    // Snapshot loaded on startup, or null, and the positions in it removed or replaced since
+    private volatile SnapshotCorpus base;
+    private final Set<Integer> removedBase;
+    // FAQs added since, keyed by case-folded question: in insertion order for writers, concurrent for lookups
+    private final Map<String, FAQ> faqs;
+    private final Map<String, FAQ> questions;
+    private final Map<FAQ, Integer> loggedUsage;
+    private final Set<FAQ> usageDirty;
+    private final NLPProcessor nlpProcessor;
+    private final TermDictionary dictionary;
+    private final long compactBytes;
+    private final ExecutorService compactor;
+    private final WriteBehindWriter usageWriter;
+    private final LatencyHistogram saveLatency;
+    private FAQLog log;
+    private boolean compacting;
     
     public FAQStorage() {
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
-        this.faqs = new ArrayList<>();
+        this(Paths.get(""));
+    }
+    
+    /**
+     * Open the FAQ store kept in the given directory
+     */
+    public FAQStorage(Path directory) {
+        this.directory = directory.toAbsolutePath();
+        this.nlpProcessor = new NLPProcessor();
+        this.dictionary = new TermDictionary();
+        this.removedBase = ConcurrentHashMap.newKeySet();
+        this.faqs = new LinkedHashMap<>();
+        this.questions = new ConcurrentHashMap<>();
+        this.loggedUsage = new IdentityHashMap<>();
+        this.usageDirty = ConcurrentHashMap.newKeySet();
+        this.compactBytes = Long.getLong(COMPACT_BYTES_PROPERTY, 4L * 1024 * 1024);
+        this.saveLatency = new LatencyHistogram();
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "faq-log-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.usageWriter = new WriteBehindWriter("faq-usage-writer", this::flushUsage,
+            Long.getLong(USAGE_FLUSH_MILLIS_PROPERTY, 5000),
+            Long.getLong(USAGE_MAX_PENDING_PROPERTY, 1000));
         loadFAQs();
     }
     
     /**
-     * Load FAQs from JSON file
+     * Rebuild the corpus from the snapshot and the log segments written
+     * after it, then open the log for appending
+     */
+    private synchronized void loadFAQs() {
+        try {
+            Files.createDirectories(directory);
+            FAQSnapshot snapshot = FAQSnapshot.open(directory);
+            long lastSegment = 0;
+            boolean upgrade = false;
+            if (snapshot != null) {
+                lastSegment = snapshot.lastSegment;
+                for (String term : snapshot.terms) {
+                    dictionary.intern(term);
+                }
+                base = snapshot.base;
+                // A snapshot of an older version comes decoded; those FAQs are
+                // already tokenized and have distinct questions
+                for (int i = 0; i < snapshot.faqs.size(); i++) {
+                    FAQ faq = snapshot.faqs.get(i);
+                    String key = questionKey(faq.getQuestion());
+                    faqs.put(key, faq);
+                    questions.put(key, faq);
+                    loggedUsage.put(faq, snapshot.usageCounts[i]);
+                }
+                upgrade = base == null;
+                FAQSnapshot.deleteOlder(directory, lastSegment);
+            }
+            
+            List<Long> segments = FAQLog.listSegments(directory);
+            if (snapshot == null && segments.isEmpty()) {
+                importLegacyFile();
+            }
+            
+            long replayedBytes = 0;
+            long appendSegment = lastSegment + 1;
+            for (int i = 0; i < segments.size(); i++) {
+                long segment = segments.get(i);
+                Path path = FAQLog.segmentPath(directory, segment);
+                if (segment <= lastSegment) {
+                    // Left behind by a compaction that stopped before cleaning up
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                boolean last = i == segments.size() - 1;
+                for (FAQLog.Record record : FAQLog.replay(path, last)) {
+                    apply(record);
+                }
+                replayedBytes += Files.size(path);
+                appendSegment = segment;
+            }
+            
+            log = openLog(appendSegment, replayedBytes);
+            if (upgrade) {
+                // Rewrite an older snapshot so the next start can map it lazily
+                compact();
+            } else {
+                maybeCompact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading FAQs: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Open the log for appending to a segment
      */
-    private void loadFAQs() {
-        File file = new File(FAQ_FILE);
-        if (!file.exists()) {
+    FAQLog openLog(long segment, long existingBytes) throws IOException {
+        return new FAQLog(directory, segment, existingBytes);
+    }
+    
+    /**
+     * Seed a new store from the JSON file used by earlier versions
+     */
+    private void importLegacyFile() throws IOException {
+        Path file = directory.resolve(FAQ_FILE);
+        if (!Files.exists(file)) {
             return;
         }
-        
-        try (FileReader reader = new FileReader(file)) {
-            Type listType = new TypeToken<List<FAQ>>(){}.getType();
-            List<FAQ> loaded = gson.fromJson(reader, listType);
-            if (loaded != null) {
-                faqs.clear();
-                faqs.addAll(loaded);
+        try (CorpusReader reader = openReader(file, CorpusFormat.JSON)) {
+            CorpusReader.Row row;
+            while ((row = reader.next()) != null) {
+                if (row.getFaq() == null) {
+                    System.err.printf("Skipping FAQ %d of %s: %s%n", row.getNumber(), file, row.getError());
+                    continue;
+                }
+                addInMemory(row.getFaq());
+                loggedUsage.put(row.getFaq(), row.getFaq().getUsageCount());
             }
-        } catch (IOException e) {
-            System.err.println("Error loading FAQs: " + e.getMessage());
+        }
+        snapshotLogged(0).write(directory);
+    }
+    
+    private void apply(FAQLog.Record record) {
+        switch (record.type) {
+            case FAQLog.ADD:
+                FAQ faq = new FAQ(record.question, record.answer, record.keywords, record.usage);
+                addInMemory(faq);
+                loggedUsage.put(faq, record.usage);
+                break;
+            case FAQLog.REMOVE:
+                removeInMemory(record.question);
+                break;
+            case FAQLog.USAGE:
+                FAQ match = lookup(questionKey(record.question));
+                if (match != null) {
+                    match.addUsageCount(record.usage);
+                    loggedUsage.put(match, loggedUsage(match) + record.usage);
+                }
+                break;
+            default:
+                break;
         }
     }
     
     /**
-     * Save FAQs to JSON file
+     * Make every change durable, including pending usage counts
      */
     public void saveFAQs() {
-        try (FileWriter writer = new FileWriter(FAQ_FILE)) {
-            gson.toJson(faqs, writer);
+        usageWriter.write();
+    }
+    
+    /**
+     * Count a use of an FAQ. The new count is saved in the background
+     * within the configured durability window.
+     */
+    public void recordUsage(FAQ faq) {
+        faq.incrementUsageCount();
+        usageDirty.add(faq);
+        usageWriter.markDirty();
+    }
+    
+    /**
+     * Save pending changes, export the JSON file if it is stale and close
+     * the log
+     */
+    public void close() {
+        usageWriter.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Path file = directory.resolve(FAQ_FILE);
+        if (isExportStale(file)) {
+            exportJSON(file);
+        }
+        synchronized (this) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing FAQ log: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Whether the JSON file misses changes: it is older than the last write
+     * to the log or a snapshot, or does not exist
+     */
+    private boolean isExportStale(Path file) {
+        try {
+            if (!Files.exists(file)) {
+                return true;
+            }
+            long exported = Files.getLastModifiedTime(file).toMillis();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "faqs.{log,snapshot}.*")) {
+                for (Path path : stream) {
+                    // Empty segments are opened by a roll or restart without any change
+                    if (Files.size(path) > 0 && Files.getLastModifiedTime(path).toMillis() >= exported) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * Append the usage counted since the last flush to the log. If the
+     * append fails, the FAQs stay dirty and are retried by the next flush.
+     *
+     * @return whether the usage was saved
+     */
+    private synchronized boolean flushUsage() {
+        List<FAQLog.Record> records = new ArrayList<>();
+        Map<FAQ, Integer> counted = new IdentityHashMap<>();
+        for (Iterator<FAQ> iterator = usageDirty.iterator(); iterator.hasNext();) {
+            FAQ faq = iterator.next();
+            // Remove before reading: a concurrent use marks the FAQ dirty again
+            iterator.remove();
+            Integer logged = loggedUsage(faq);
+            if (logged == null) {
+                continue;
+            }
+            int current = faq.getUsageCount();
+            if (current != logged) {
+                records.add(FAQLog.Record.usage(faq.getQuestion(), current - logged));
+                counted.put(faq, current);
+            }
+        }
+        try {
+            appendLog(records);
+        } catch (UncheckedIOException e) {
+            usageDirty.addAll(counted.keySet());
+            System.err.println(e.getMessage());
+            return false;
+        }
+        loggedUsage.putAll(counted);
+        maybeCompact();
+        return true;
+    }
+    
+    /**
+     * Append records to the log. Callers change the corpus in memory only
+     * once this returns, so memory never holds a change the log lacks.
+     *
+     * @throws UncheckedIOException if the records could not be saved; none
+     *         of them are left in the log
+     */
+    private void appendLog(List<FAQLog.Record> records) {
+        LogWriteEvent event = new LogWriteEvent();
+        event.begin();
+        long started = System.nanoTime();
+        try {
+            log.append(records);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error saving FAQs: " + e.getMessage(), e);
+        } finally {
+            saveLatency.record(System.nanoTime() - started);
+        }
+        event.records = records.size();
+        event.commit();
+    }
+    
+    /**
+     * Start a background compaction once enough log has accumulated. The log
+     * moves on to a new segment, and the snapshot covers everything before it.
+     */
+    private void maybeCompact() {
+        if (compacting || log.getBytesWritten() < compactBytes) {
+            return;
+        }
+        compact();
+    }
+    
+    private void compact() {
+        long covered;
+        try {
+            covered = log.roll();
+        } catch (IOException e) {
+            System.err.println("Error compacting FAQ log: " + e.getMessage());
+            return;
+        }
+        compacting = true;
+        FAQSnapshot snapshot = snapshotLogged(covered);
+        compactor.execute(() -> writeSnapshot(snapshot));
+    }
+    
+    private void writeSnapshot(FAQSnapshot snapshot) {
+        try {
+            snapshot.write(directory);
+            for (long segment : FAQLog.listSegments(directory)) {
+                if (segment <= snapshot.lastSegment) {
+                    Files.deleteIfExists(FAQLog.segmentPath(directory, segment));
+                }
+            }
+            FAQSnapshot.deleteOlder(directory, snapshot.lastSegment);
+        } catch (IOException e) {
+            System.err.println("Error compacting FAQ log: " + e.getMessage());
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+    
+    /**
+     * Capture the corpus with the usage counts the log has recorded so far,
+     * so a snapshot never includes increments that will be logged again later.
+     * FAQs of the loaded snapshot are only referred to, by position, and
+     * copied from it by the writer.
+     */
+    private FAQSnapshot snapshotLogged(long lastSegment) {
+        List<String> terms = new ArrayList<>(dictionary.size());
+        for (int id = 0; id < dictionary.size(); id++) {
+            terms.add(dictionary.term(id));
+        }
+        List<FAQ> corpus = new ArrayList<>(faqs.values());
+        int[] usageCounts = new int[corpus.size()];
+        for (int i = 0; i < corpus.size(); i++) {
+            usageCounts[i] = loggedUsage.getOrDefault(corpus.get(i), 0);
+        }
+        Map<Integer, Integer> baseUsage = new HashMap<>();
+        if (base != null) {
+            for (Map.Entry<FAQ, Integer> logged : loggedUsage.entrySet()) {
+                int position = base.position(logged.getKey());
+                if (position >= 0) {
+                    baseUsage.put(position, logged.getValue());
+                }
+            }
+        }
+        return new FAQSnapshot(lastSegment, terms, base, removedBasePositions(), baseUsage, corpus, usageCounts);
+    }
+    
+    private int[] removedBasePositions() {
+        int[] positions = new int[removedBase.size()];
+        int count = 0;
+        for (int position : removedBase) {
+            positions[count++] = position;
+        }
+        Arrays.sort(positions);
+        return positions;
+    }
+    
+    /**
+     * Usage count the log holds for a stored FAQ, or null if it is not stored
+     */
+    private Integer loggedUsage(FAQ faq) {
+        Integer logged = loggedUsage.get(faq);
+        if (logged != null || base == null) {
+            return logged;
+        }
+        int position = base.position(faq);
+        return position >= 0 && !removedBase.contains(position) ? base.usageCount(position) : null;
+    }
+    
+    /**
+     * Read FAQs from a JSON file. Rows that are not valid FAQs are skipped.
+     */
+    public List<FAQ> readJSON(Path file) throws IOException {
+        List<FAQ> loaded = new ArrayList<>();
+        try (CorpusReader reader = openReader(file, CorpusFormat.JSON)) {
+            CorpusReader.Row row;
+            while ((row = reader.next()) != null) {
+                if (row.getFaq() != null) {
+                    loaded.add(row.getFaq());
+                }
+            }
+        }
+        return loaded;
+    }
+    
+    /**
+     * Open a corpus file for streaming, in UTF-8
+     */
+    public static CorpusReader openReader(Path file, CorpusFormat format) throws IOException {
+        return new CorpusReader(new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), format);
+    }
+    
+    /**
+     * Export all FAQs to a JSON file; see {@link #export(Path, CorpusFormat)}
+     */
+    public void exportJSON(Path file) {
+        try {
+            export(file, CorpusFormat.JSON);
         } catch (IOException e) {
             System.err.println("Error saving FAQs: " + e.getMessage());
         }
     }
     
     /**
-     * Add a new FAQ
+     * Export all FAQs, streaming them one at a time. The file is written
+     * under a temporary name and atomically moved into place, so a failed
+     * export never leaves a truncated file behind.
+     *
+     * @return the number of FAQs written
      */
-    public void addFAQ(FAQ faq) {
-        // Check if FAQ with same question already exists
-        faqs.removeIf(f -> f.getQuestion().equalsIgnoreCase(faq.getQuestion()));
-        faqs.add(faq);
+    public int export(Path file, CorpusFormat format) throws IOException {
+        List<FAQ> snapshot = getAllFAQs();
+        Path target = file.toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        
+        try (CorpusWriter writer = new CorpusWriter(Files.newBufferedWriter(temp, StandardCharsets.UTF_8), format)) {
+            for (FAQ faq : snapshot) {
+                writer.write(faq);
+            }
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return snapshot.size();
+    }
+    
+    /**
+     * Add a new FAQ, replacing any FAQ with the same question
+     *
+     * @return the FAQs that were replaced
+     * @throws UncheckedIOException if the FAQ could not be saved; the
+     *         corpus is then unchanged
+     */
+    public synchronized List<FAQ> addFAQ(FAQ faq) {
+        return addFAQs(Collections.singletonList(faq));
+    }
+    
+    /**
+     * Add several FAQs with a single log write. A later FAQ replaces an
+     * earlier one of the same batch with the same question.
+     *
+     * @return the FAQs that were replaced, including any of the batch
+     * @throws UncheckedIOException if the FAQs could not be saved; the
+     *         corpus is then unchanged
+     */
+    public synchronized List<FAQ> addFAQs(Collection<FAQ> added) {
+        List<FAQLog.Record> records = new ArrayList<>(added.size());
+        for (FAQ faq : added) {
+            records.add(FAQLog.Record.add(faq.getQuestion(), faq.getAnswer(), faq.getKeywords(), faq.getUsageCount()));
+        }
+        appendLog(records);
+        
+        List<FAQ> replaced = new ArrayList<>();
+        for (FAQ faq : added) {
+            replaced.addAll(addInMemory(faq));
+            loggedUsage.put(faq, faq.getUsageCount());
+        }
+        maybeCompact();
+        return replaced;
     }
     
     /**
      * Remove an FAQ by question
+     *
+     * @return the FAQs that were removed
+     * @throws UncheckedIOException if the removal could not be saved; the
+     *         corpus is then unchanged
+     */
+    public synchronized List<FAQ> removeFAQ(String question) {
+        return removeFAQs(Collections.singletonList(question));
+    }
+    
+    /**
+     * Remove several FAQs by question with a single log write. Questions
+     * without an FAQ are skipped.
+     *
+     * @return the FAQs that were removed
+     * @throws UncheckedIOException if the removals could not be saved; the
+     *         corpus is then unchanged
+     */
+    public synchronized List<FAQ> removeFAQs(Collection<String> removedQuestions) {
+        List<FAQLog.Record> records = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        for (String question : removedQuestions) {
+            String key = questionKey(question);
+            if (keys.add(key) && lookup(key) != null) {
+                records.add(FAQLog.Record.remove(question));
+            }
+        }
+        if (records.isEmpty()) {
+            return Collections.emptyList();
+        }
+        appendLog(records);
+        
+        List<FAQ> removed = new ArrayList<>(records.size());
+        for (FAQLog.Record record : records) {
+            removed.addAll(removeInMemory(record.question));
+        }
+        maybeCompact();
+        return removed;
+    }
+    
+    private List<FAQ> addInMemory(FAQ faq) {
+        // Check if FAQ with same question already exists
+        List<FAQ> replaced = removeInMemory(faq.getQuestion());
+        tokenize(faq);
+        String key = questionKey(faq.getQuestion());
+        faqs.put(key, faq);
+        questions.put(key, faq);
+        return replaced;
+    }
+    
+    /**
+     * Assign the term ids of an FAQ's question and keywords
+     */
+    private void tokenize(FAQ faq) {
+        int[] questionTerms = dictionary.internAll(nlpProcessor.scan(faq.getQuestion()));
+        List<String> keywords = faq.getKeywords();
+        int[] keywordTerms = keywords != null && !keywords.isEmpty()
+            ? dictionary.internAll(nlpProcessor.scan(String.join(" ", keywords)))
+            : null;
+        faq.setTerms(questionTerms, keywordTerms);
+    }
+    
+    private List<FAQ> removeInMemory(String question) {
+        String key = questionKey(question);
+        FAQ faq = faqs.remove(key);
+        if (faq != null) {
+            questions.remove(key);
+        } else {
+            faq = baseFAQ(key);
+            if (faq == null) {
+                return Collections.emptyList();
+            }
+            removedBase.add(base.position(faq));
+        }
+        loggedUsage.remove(faq);
+        usageDirty.remove(faq);
+        return Collections.singletonList(faq);
+    }
+    
+    /**
+     * Fold a question so that two questions have the same key exactly when
+     * they are equal ignoring case, as {@link String#equalsIgnoreCase} compares
+     * them character by character
+     */
+    static String questionKey(String question) {
+        StringBuilder key = new StringBuilder(question.length());
+        question.codePoints().forEach(codePoint ->
+            key.appendCodePoint(Character.toLowerCase(Character.toUpperCase(codePoint))));
+        return key.toString();
+    }
+    
+    /**
+     * Shard, from 0 to shards - 1, that holds the FAQ with a question when
+     * a corpus is partitioned. Questions equal ignoring case, which replace
+     * each other, land on the same shard, in every JVM.
+     */
+    public static int shardOf(String question, int shards) {
+        // Spread the string hash, whose low bits vary little between similar questions
+        int hash = questionKey(question).hashCode() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shards);
+    }
+    
+    /**
+     * Latencies of the writes to the log, one per change or usage flush
      */
-    public void removeFAQ(String question) {
-        faqs.removeIf(f -> f.getQuestion().equalsIgnoreCase(question));
+    public LatencyHistogram getSaveLatency() {
+        return saveLatency;
     }
     
     /**
-     * Get all FAQs
+     * Dictionary of the term ids assigned to stored FAQs. It only grows, and
+     * only while the storage is locked.
+     */
+    public TermDictionary getTermDictionary() {
+        return dictionary;
+    }
+    
+    /**
+     * Copy all FAQs, in corpus order. Waits for a change being saved and
+     * decodes every FAQ of the snapshot, so it is meant for tools working
+     * on the whole corpus; see {@link #size()} for the count alone.
      */
     public List<FAQ> getAllFAQs() {
-        return new ArrayList<>(faqs);
+        return getStoredCorpus().getFAQs();
+    }
+    
+    /**
+     * Number of FAQs stored, without waiting for a writer
+     */
+    public int size() {
+        SnapshotCorpus snapshot = base;
+        return (snapshot != null ? snapshot.size() - removedBase.size() : 0) + questions.size();
+    }
+    
+    /**
+     * The stored FAQs as they are now, for building an index over the
+     * snapshot without decoding it
+     */
+    public synchronized StoredCorpus getStoredCorpus() {
+        return new StoredCorpus(base, removedBasePositions(), new ArrayList<>(faqs.values()));
+    }
+    
+    /**
+     * The stored FAQs that may rank among the given number with the highest
+     * usage counts, in corpus order. Reads the counts of the snapshot but
+     * decodes only its FAQs that may rank, and those whose counts changed.
+     */
+    public synchronized List<FAQ> getMostUsedFAQs(int limit) {
+        List<FAQ> candidates = new ArrayList<>();
+        if (base != null && limit > 0) {
+            BitSet positions = new BitSet(base.size());
+            // Counts changed since the snapshot are in the log or pending
+            for (FAQ faq : loggedUsage.keySet()) {
+                int position = base.position(faq);
+                if (position >= 0) {
+                    positions.set(position);
+                }
+            }
+            for (FAQ faq : usageDirty) {
+                int position = base.position(faq);
+                if (position >= 0 && !removedBase.contains(position)) {
+                    positions.set(position);
+                }
+            }
+            // Lowest count, then latest position, of the highest snapshot counts first
+            PriorityQueue<Long> highest = new PriorityQueue<>();
+            for (int position = 0; position < base.size(); position++) {
+                int count = base.usageCount(position);
+                if (count > 0 && !removedBase.contains(position)) {
+                    highest.add((long) count << 32 | (Integer.MAX_VALUE - position));
+                    if (highest.size() > limit) {
+                        highest.poll();
+                    }
+                }
+            }
+            for (long entry : highest) {
+                positions.set(Integer.MAX_VALUE - (int) entry);
+            }
+            for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+                candidates.add(base.faq(position));
+            }
+        }
+        candidates.addAll(faqs.values());
+        return candidates;
     }
     
     /**
      * Get FAQ by question
      */
     public FAQ getFAQ(String question) {
-        return faqs.stream()
-            .filter(f -> f.getQuestion().equalsIgnoreCase(question))
-            .findFirst()
-            .orElse(null);
+        return lookup(questionKey(question));
+    }
+    
+    private FAQ lookup(String key) {
+        FAQ faq = questions.get(key);
+        return faq != null ? faq : baseFAQ(key);
+    }
+    
+    /**
+     * The snapshot FAQ with a case-folded question, unless removed since
+     */
+    private FAQ baseFAQ(String key) {
+        SnapshotCorpus snapshot = base;
+        if (snapshot == null) {
+            return null;
+        }
+        int position = snapshot.find(key);
+        return position >= 0 && !removedBase.contains(position) ? snapshot.faq(position) : null;
     }
 }
-
@@ -0,0 +1,18 @@
+package com.chatbot.storage;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for one append to the FAQ log
+ */
+@Name("com.chatbot.LogWrite")
+@Label("FAQ Log Write")
+@Category("Chatbot")
+class LogWriteEvent extends Event {
+    
+    @Label("Records")
+    int records;
+}
@@ -0,0 +1,99 @@
+package com.chatbot.storage;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only memory mapping of a whole file.
+ *
+ * A single mapping is limited to 2 GB, so larger files are mapped as several
+ * regions; values spanning two regions are assembled byte by byte. Reads use
+ * absolute positions only and are safe from any number of threads. The
+ * mapping stays valid after the file is deleted or replaced.
+ */
+final class MappedFile {
+    
+    private static final int REGION_SHIFT = 30;
+    private static final long REGION_SIZE = 1L << REGION_SHIFT;
+    
+    private final MappedByteBuffer[] regions;
+    private final long size;
+    
+    private MappedFile(MappedByteBuffer[] regions, long size) {
+        this.regions = regions;
+        this.size = size;
+    }
+    
+    static MappedFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) >>> REGION_SHIFT)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = (long) i << REGION_SHIFT;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+            }
+            return new MappedFile(regions, size);
+        }
+    }
+    
+    long size() {
+        return size;
+    }
+    
+    int getInt(long position) throws IOException {
+        checkRange(position, 4);
+        MappedByteBuffer region = regions[(int) (position >>> REGION_SHIFT)];
+        int offset = (int) (position & (REGION_SIZE - 1));
+        if (offset + 4 <= region.limit()) {
+            return region.getInt(offset);
+        }
+        byte[] bytes = new byte[4];
+        get(position, bytes);
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+    }
+    
+    long getLong(long position) throws IOException {
+        return (long) getInt(position) << 32 | (getInt(position + 4) & 0xFFFFFFFFL);
+    }
+    
+    /**
+     * Read consecutive big-endian ints
+     */
+    int[] getInts(long position, int count) throws IOException {
+        checkRange(position, 4L * count);
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = getInt(position + 4L * i);
+        }
+        return values;
+    }
+    
+    String getString(long position, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    void get(long position, byte[] destination) throws IOException {
+        checkRange(position, destination.length);
+        int copied = 0;
+        while (copied < destination.length) {
+            long current = position + copied;
+            MappedByteBuffer region = regions[(int) (current >>> REGION_SHIFT)];
+            int offset = (int) (current & (REGION_SIZE - 1));
+            int length = Math.min(destination.length - copied, region.limit() - offset);
+            region.get(offset, destination, copied, length);
+            copied += length;
+        }
+    }
+    
+    private void checkRange(long position, long length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IOException("Read past the end of a mapped file at offset " + position);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.chatbot.storage;
+
+import com.chatbot.model.FAQ;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The FAQs of a memory-mapped snapshot, decoded only when they are used.
+ *
+ * Opening a snapshot reads its header alone. An FAQ is found through the
+ * table of record offsets and decoded the first time it is asked for, into
+ * the same {@link FAQ} object every time after. The snapshot also holds the
+ * posting list of every term, a table of the FAQs by question term ids and
+ * a hash table of the case-folded questions, so an index can be built over
+ * it and questions looked up without decoding the corpus.
+ *
+ * FAQs are identified by their position in corpus order, from 0. Safe for
+ * use from any number of threads.
+ */
+public final class SnapshotCorpus {
+    
+    private static final int[] NO_POSITIONS = new int[0];
+    
+    private final MappedFile file;
+    private final long lastSegment;
+    private final int termCount;
+    private final int size;
+    private final long recordTable;
+    private final long usageTable;
+    private final long keyHashes;
+    private final long keyTable;
+    private final long postingTable;
+    private final long postingPositions;
+    private final long signatureTable;
+    private final long emptyQueryList;
+    private final int tableMask;
+    private final AtomicReferenceArray<FAQ> faqs;
+    private final Map<FAQ, Integer> positions = new ConcurrentHashMap<>();
+    
+    private SnapshotCorpus(MappedFile file, long lastSegment, int termCount, int size, long[] sections) {
+        this.file = file;
+        this.lastSegment = lastSegment;
+        this.termCount = termCount;
+        this.size = size;
+        this.recordTable = sections[0];
+        this.usageTable = sections[1];
+        this.keyHashes = sections[2];
+        this.keyTable = sections[3];
+        this.postingTable = sections[4];
+        this.postingPositions = postingTable + 8L * (termCount + 1);
+        this.signatureTable = sections[5];
+        this.emptyQueryList = sections[6];
+        this.tableMask = FAQSnapshot.tableCapacity(size) - 1;
+        this.faqs = new AtomicReferenceArray<>(size);
+    }
+    
+    /**
+     * Check the header of a mapped snapshot and the bounds of its sections
+     */
+    static SnapshotCorpus open(MappedFile file) throws IOException {
+        long lastSegment = file.getLong(8);
+        int termCount = file.getInt(24);
+        int size = file.getInt(28);
+        long[] sections = new long[FAQSnapshot.SECTION_COUNT];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = file.getLong(FAQSnapshot.SECTIONS_OFFSET + 8L * i);
+        }
+        long capacity = FAQSnapshot.tableCapacity(Math.max(0, size));
+        long[] ends = {
+            sections[0] + 8L * (size + 1L),
+            sections[1] + 4L * size,
+            sections[2] + 4L * size,
+            sections[3] + 8L * capacity,
+            sections[4] + 8L * (termCount + 1L),
+            sections[5] + 8L * capacity,
+            sections[6] + 4
+        };
+        if (termCount < 0 || size < 0) {
+            throw new IOException("Corrupt snapshot");
+        }
+        long previous = FAQSnapshot.HEADER_SIZE;
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[i] < previous || ends[i] > file.size()) {
+                throw new IOException("Corrupt snapshot");
+            }
+            previous = ends[i];
+        }
+        return new SnapshotCorpus(file, lastSegment, termCount, size, sections);
+    }
+    
+    long lastSegment() {
+        return lastSegment;
+    }
+    
+    /**
+     * Decode the term dictionary, in id order
+     */
+    List<String> readTerms() throws IOException {
+        List<String> terms = new ArrayList<>(termCount);
+        long position = FAQSnapshot.HEADER_SIZE;
+        for (int i = 0; i < termCount; i++) {
+            int length = file.getInt(position);
+            if (length < 0) {
+                throw new IOException("Corrupt snapshot: term " + i);
+            }
+            terms.add(file.getString(position + 4, length));
+            position += 4 + length;
+        }
+        return terms;
+    }
+    
+    /**
+     * Number of FAQs in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Number of terms in the dictionary of the snapshot; later terms have no postings here
+     */
+    public int termCount() {
+        return termCount;
+    }
+    
+    /**
+     * The FAQ at a position, decoded with its term ids on first use. Its
+     * answer and keywords stay in the mapping until requested.
+     */
+    public FAQ faq(int position) {
+        FAQ faq = faqs.get(position);
+        if (faq != null) {
+            return faq;
+        }
+        FAQ decoded = FAQSnapshot.decode(() -> decodeFAQ(position));
+        // Registered before it is shared, so every FAQ handed out has a position
+        positions.put(decoded, position);
+        if (faqs.compareAndSet(position, null, decoded)) {
+            return decoded;
+        }
+        positions.remove(decoded);
+        return faqs.get(position);
+    }
+    
+    /**
+     * Position of an FAQ returned by {@link #faq(int)}, or -1 for any other FAQ
+     */
+    public int position(FAQ faq) {
+        Integer position = positions.get(faq);
+        return position != null ? position : -1;
+    }
+    
+    /**
+     * Usage count of an FAQ when the snapshot was written
+     */
+    public int usageCount(int position) {
+        checkPosition(position);
+        return FAQSnapshot.decode(() -> file.getInt(usageTable + 4L * position));
+    }
+    
+    /**
+     * Positions of the FAQs with a term in their question or keywords, ascending
+     */
+    public int[] postings(int term) {
+        if (term < 0 || term >= termCount) {
+            return NO_POSITIONS;
+        }
+        return FAQSnapshot.decode(() -> {
+            long start = file.getLong(postingTable + 8L * term);
+            long end = file.getLong(postingTable + 8L * (term + 1));
+            if (start < 0 || end < start || end - start > size) {
+                throw new IOException("Corrupt snapshot: postings of term " + term);
+            }
+            return checkPositions(file.getInts(postingPositions + 4 * start, (int) (end - start)));
+        });
+    }
+    
+    /**
+     * Number of FAQs with a term in their question or keywords
+     */
+    public int postingCount(int term) {
+        if (term < 0 || term >= termCount) {
+            return 0;
+        }
+        return FAQSnapshot.decode(() ->
+            (int) (file.getLong(postingTable + 8L * (term + 1)) - file.getLong(postingTable + 8L * term)));
+    }
+    
+    /**
+     * Positions of the FAQs whose question has exactly the given sorted
+     * term ids, ascending
+     */
+    public int[] sameQuestion(int[] terms) {
+        int hash = Arrays.hashCode(terms);
+        return FAQSnapshot.decode(() -> {
+            int[] found = NO_POSITIONS;
+            for (int slot = FAQSnapshot.mix(hash) & tableMask; ; slot = (slot + 1) & tableMask) {
+                int position = file.getInt(signatureTable + 8L * slot + 4) - 1;
+                if (position < 0) {
+                    return found;
+                }
+                if (file.getInt(signatureTable + 8L * slot) == hash
+                        && Arrays.equals(questionTerms(checkPosition(position)), terms)) {
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = position;
+                }
+            }
+        });
+    }
+    
+    /**
+     * Positions of the FAQs that score above zero against a query without
+     * any terms, ascending: those with an empty question or empty keywords
+     */
+    public int[] emptyQueryPositions() {
+        return FAQSnapshot.decode(() -> {
+            int count = file.getInt(emptyQueryList);
+            if (count < 0 || count > size) {
+                throw new IOException("Corrupt snapshot: empty query list");
+            }
+            return checkPositions(file.getInts(emptyQueryList + 4, count));
+        });
+    }
+    
+    /**
+     * Position of the FAQ with a case-folded question, see
+     * {@link FAQStorage#questionKey}, or -1 if there is none
+     */
+    int find(String key) {
+        int hash = key.hashCode();
+        return FAQSnapshot.decode(() -> {
+            for (int slot = FAQSnapshot.mix(hash) & tableMask; ; slot = (slot + 1) & tableMask) {
+                int position = file.getInt(keyTable + 8L * slot + 4) - 1;
+                if (position < 0) {
+                    return -1;
+                }
+                if (file.getInt(keyTable + 8L * slot) == hash) {
+                    String question = readQuestion(checkPosition(position));
+                    if (question != null && key.equals(FAQStorage.questionKey(question))) {
+                        return position;
+                    }
+                }
+            }
+        });
+    }
+    
+    /**
+     * Hash of the case-folded question of an FAQ
+     */
+    int keyHash(int position) throws IOException {
+        return file.getInt(keyHashes + 4L * checkPosition(position));
+    }
+    
+    long recordStart(int position) throws IOException {
+        return file.getLong(recordTable + 8L * checkPosition(position));
+    }
+    
+    long recordEnd(int position) throws IOException {
+        return file.getLong(recordTable + 8L * (checkPosition(position) + 1));
+    }
+    
+    /**
+     * Copy the encoded record of an FAQ
+     */
+    byte[] record(int position) throws IOException {
+        long start = recordStart(position);
+        long end = recordEnd(position);
+        if (start < FAQSnapshot.HEADER_SIZE || end < start || end - start > Integer.MAX_VALUE) {
+            throw new IOException("Corrupt snapshot: record " + position);
+        }
+        byte[] record = new byte[(int) (end - start)];
+        file.get(start, record);
+        return record;
+    }
+    
+    /**
+     * Decode the question term ids of an FAQ without decoding the FAQ
+     */
+    int[] questionTerms(int position) throws IOException {
+        int[] terms = FAQSnapshot.readTerms(file, termsPosition(position), termCount);
+        if (terms == null) {
+            throw new IOException("Corrupt snapshot: record " + position);
+        }
+        return terms;
+    }
+    
+    /**
+     * Decode the keyword term ids of an FAQ, or null if it has no keywords
+     */
+    int[] keywordTerms(int position) throws IOException {
+        long offset = termsPosition(position);
+        int count = file.getInt(offset);
+        return FAQSnapshot.readTerms(file, offset + 4 + 4L * Math.max(count, 0), termCount);
+    }
+    
+    private String readQuestion(int position) throws IOException {
+        long start = recordStart(position);
+        int length = file.getInt(start);
+        return length < 0 ? null : file.getString(start + 4, length);
+    }
+    
+    /**
+     * Offset of the question term ids in the record of an FAQ, past its
+     * question, answer and keyword block
+     */
+    private long termsPosition(int position) throws IOException {
+        long offset = recordStart(position);
+        for (int field = 0; field < 3; field++) {
+            offset += 4 + Math.max(file.getInt(offset), 0);
+        }
+        return offset;
+    }
+    
+    private FAQ decodeFAQ(int position) throws IOException {
+        long offset = recordStart(position);
+        int questionLength = file.getInt(offset);
+        String question = questionLength < 0 ? null : file.getString(offset + 4, questionLength);
+        offset += 4 + Math.max(questionLength, 0);
+        
+        long answerPosition = offset + 4;
+        int answerLength = file.getInt(offset);
+        offset += 4 + Math.max(answerLength, 0);
+        
+        long keywordPosition = offset + 4;
+        int keywordLength = file.getInt(offset);
+        if (keywordLength < 4) {
+            throw new IOException("Corrupt snapshot: record " + position);
+        }
+        
+        FAQ faq = new FAQ(question,
+            () -> answerLength < 0 ? null : FAQSnapshot.decode(() -> file.getString(answerPosition, answerLength)),
+            () -> FAQSnapshot.decode(() -> FAQSnapshot.readStrings(file, keywordPosition)),
+            usageCount(position));
+        faq.setTerms(questionTerms(position), keywordTerms(position));
+        return faq;
+    }
+    
+    private int checkPosition(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("No FAQ at position " + position + " of " + size);
+        }
+        return position;
+    }
+    
+    private int[] checkPositions(int[] found) throws IOException {
+        for (int position : found) {
+            if (position < 0 || position >= size) {
+                throw new IOException("Corrupt snapshot: unknown position " + position);
+            }
+        }
+        return found;
+    }
+}
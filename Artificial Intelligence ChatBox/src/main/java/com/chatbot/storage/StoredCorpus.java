@@ -0,0 +1,67 @@
+package com.chatbot.storage;
+
+import com.chatbot.model.FAQ;
+import java.util.*;
+
+/**
+ * The stored FAQs at one moment, in corpus order: those of the snapshot the
+ * storage was loaded from, except the ones removed or replaced since,
+ * followed by the FAQs added since. Lets an index be built over the
+ * snapshot without decoding it.
+ */
+public final class StoredCorpus {
+    
+    private final SnapshotCorpus snapshot;
+    private final int[] removedPositions;
+    private final List<FAQ> added;
+    
+    StoredCorpus(SnapshotCorpus snapshot, int[] removedPositions, List<FAQ> added) {
+        this.snapshot = snapshot;
+        this.removedPositions = removedPositions;
+        this.added = added;
+    }
+    
+    /**
+     * The snapshot the storage was loaded from, or null if there was none
+     */
+    public SnapshotCorpus getSnapshot() {
+        return snapshot;
+    }
+    
+    /**
+     * Positions of the snapshot FAQs removed or replaced since, ascending
+     */
+    public int[] getRemovedPositions() {
+        return removedPositions;
+    }
+    
+    /**
+     * FAQs added since the snapshot was loaded, in the order they were added
+     */
+    public List<FAQ> getAdded() {
+        return added;
+    }
+    
+    /**
+     * Every FAQ in corpus order. Decodes the whole snapshot.
+     */
+    public List<FAQ> getFAQs() {
+        List<FAQ> faqs = new ArrayList<>(size());
+        if (snapshot != null) {
+            int skip = 0;
+            for (int position = 0; position < snapshot.size(); position++) {
+                if (skip < removedPositions.length && removedPositions[skip] == position) {
+                    skip++;
+                } else {
+                    faqs.add(snapshot.faq(position));
+                }
+            }
+        }
+        faqs.addAll(added);
+        return faqs;
+    }
+    
+    public int size() {
+        return (snapshot != null ? snapshot.size() - removedPositions.length : 0) + added.size();
+    }
+}
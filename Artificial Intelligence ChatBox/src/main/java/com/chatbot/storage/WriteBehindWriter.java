@@ -0,0 +1,147 @@
+package com.chatbot.storage;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Coalesces frequent small changes into occasional background saves.
+ *
+ * Callers mark the data dirty after each change. The first change after a
+ * save schedules a flush at the end of the durability window, and reaching
+ * the pending-change limit flushes right away, so a burst of changes costs a
+ * single write and an idle period costs nothing. Changes made within the
+ * window may be lost if the process dies; a window of zero saves on the
+ * caller's thread for every change. A failed save keeps its changes
+ * pending and is retried at the end of the next window, and on close.
+ */
+public class WriteBehindWriter implements AutoCloseable {
+    
+    private final BooleanSupplier save;
+    private final long windowMillis;
+    private final long maxPending;
+    private final AtomicLong pending;
+    private final AtomicBoolean scheduled;
+    private final AtomicBoolean flushQueued;
+    private final ScheduledExecutorService executor;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+    
+    /**
+     * @param name name of the background writer thread
+     * @param save action writing the current state and returning whether it
+     *        succeeded; runs on one thread at a time
+     * @param windowMillis longest time a change may stay unsaved
+     * @param maxPending number of unsaved changes that triggers an immediate flush
+     */
+    public WriteBehindWriter(String name, BooleanSupplier save, long windowMillis, long maxPending) {
+        this.save = save;
+        this.windowMillis = windowMillis;
+        this.maxPending = Math.max(1, maxPending);
+        this.pending = new AtomicLong();
+        this.scheduled = new AtomicBoolean();
+        this.flushQueued = new AtomicBoolean();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Flush what is still pending when the JVM exits
+        this.shutdownHook = new Thread(this::flush, name + "-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+    
+    /**
+     * Record one unsaved change
+     */
+    public void markDirty() {
+        long count = pending.incrementAndGet();
+        if (windowMillis <= 0 || closed) {
+            flush();
+        } else if (count >= maxPending) {
+            submitFlush();
+        } else {
+            scheduleFlush();
+        }
+    }
+    
+    /**
+     * Save now if there are unsaved changes
+     */
+    public void flush() {
+        if (pending.get() > 0) {
+            write();
+        }
+    }
+    
+    /**
+     * Save now regardless of pending changes; they are covered by this save
+     */
+    public synchronized void write() {
+        // Reset before saving: changes made during the save are picked up next time
+        long saving = pending.getAndSet(0);
+        if (!save.getAsBoolean()) {
+            pending.addAndGet(saving);
+            if (windowMillis > 0 && !closed) {
+                scheduleFlush();
+            }
+        }
+    }
+    
+    /**
+     * Number of changes not yet saved
+     */
+    public long getPendingCount() {
+        return pending.get();
+    }
+    
+    /**
+     * Flush pending changes and stop the background thread
+     */
+    @Override
+    public void close() {
+        closed = true;
+        executor.shutdown();
+        flush();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; the hook flushes as well
+        }
+    }
+    
+    private void scheduleFlush() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.schedule(this::runScheduledFlush, windowMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed meanwhile; close flushes what is still pending
+            scheduled.set(false);
+        }
+    }
+    
+    private void submitFlush() {
+        // One size-triggered flush at a time: it saves every change counted before it runs
+        if (!flushQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::runQueuedFlush);
+        } catch (RejectedExecutionException e) {
+            runQueuedFlush();
+        }
+    }
+    
+    private void runQueuedFlush() {
+        flushQueued.set(false);
+        flush();
+    }
+    
+    private void runScheduledFlush() {
+        scheduled.set(false);
+        flush();
+    }
+}
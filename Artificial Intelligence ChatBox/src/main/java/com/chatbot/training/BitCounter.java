@@ -0,0 +1,30 @@
+package com.chatbot.training;
+
+/**
+ * Counts the bits a query bit vector shares with each row of a table.
+ *
+ * Tables are stored word by word: word w of row i is at
+ * {@code words[w * rows + i]}, so consecutive rows of one word are
+ * contiguous and can be processed several at a time.
+ */
+interface BitCounter {
+    
+    /**
+     * For rows from (inclusive) to to (exclusive), store the number of bits
+     * set in both the row and the query in counts, starting at counts[0]
+     */
+    void countShared(long[] words, int rows, int from, int to, long[] query, int[] counts);
+    
+    /**
+     * Counts with {@link Long#bitCount(long)}, one row at a time
+     */
+    BitCounter SCALAR = (words, rows, from, to, query, counts) -> {
+        for (int row = from; row < to; row++) {
+            int shared = 0;
+            for (int word = 0; word < query.length; word++) {
+                shared += Long.bitCount(words[word * rows + row] & query[word]);
+            }
+            counts[row - from] = shared;
+        }
+    };
+}
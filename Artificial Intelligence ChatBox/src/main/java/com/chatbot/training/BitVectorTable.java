@@ -0,0 +1,142 @@
+package com.chatbot.training;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashed bit vectors of the question and keyword terms of every FAQ,
+ * stored contiguously for a linear scan.
+ *
+ * Every term sets one of 256 bits. Scanning the table counts the bits each
+ * FAQ shares with a query, which bounds how many terms they can share:
+ * every term in common sets a shared bit, and at most as many of them can
+ * hide behind another term's bit as the set has terms landing on a bit
+ * already set. That gives an upper bound of the combined score, so FAQs
+ * that cannot reach the threshold are skipped without merging their term
+ * arrays, and the remaining ones are scored exactly. Results are the same
+ * as for exact matching.
+ */
+final class BitVectorTable {
+    
+    static final int WORDS = 4;
+    
+    // Rows counted per call, so buffers stay small however large the table is
+    private static final int BLOCK = 1024;
+    
+    private final BitCounter counter;
+    private final FAQIndex.Entry[] entries;
+    private final long[] questionWords;
+    private final long[] keywordWords;
+    private final int[] questionSlack;
+    private final int[] keywordSlack;
+    
+    /**
+     * @param entries FAQs in corpus order
+     */
+    BitVectorTable(BitCounter counter, List<FAQIndex.Entry> entries) {
+        this.counter = counter;
+        this.entries = entries.toArray(new FAQIndex.Entry[0]);
+        int rows = this.entries.length;
+        this.questionWords = new long[WORDS * rows];
+        this.keywordWords = new long[WORDS * rows];
+        this.questionSlack = new int[rows];
+        this.keywordSlack = new int[rows];
+        long[] bits = new long[WORDS];
+        for (int row = 0; row < rows; row++) {
+            FAQIndex.Entry entry = this.entries[row];
+            questionSlack[row] = encode(entry.questionTerms, bits);
+            for (int word = 0; word < WORDS; word++) {
+                questionWords[word * rows + row] = bits[word];
+            }
+            keywordSlack[row] = encode(entry.keywordTerms, bits);
+            for (int word = 0; word < WORDS; word++) {
+                keywordWords[word * rows + row] = bits[word];
+            }
+        }
+    }
+    
+    /**
+     * The Vector API counter if enabled and available, otherwise the scalar one.
+     * The Vector API counter is only built with the {@code simd} Maven profile,
+     * so it is loaded by name.
+     */
+    static BitCounter bitCounter() {
+        if (Boolean.parseBoolean(System.getProperty(FAQTrainer.BITVECTOR_SIMD_PROPERTY, "true"))) {
+            try {
+                return (BitCounter) Class.forName(BitVectorTable.class.getPackageName() + ".VectorBitCounter")
+                    .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not built, or jdk.incubator.vector is not in the module graph
+            }
+        }
+        return BitCounter.SCALAR;
+    }
+    
+    /**
+     * Add the FAQs, other than removed ones, whose combined score with a
+     * non-empty query may reach minScore, in corpus order
+     */
+    void collect(int[] queryTerms, double questionWeight, double keywordWeight, double minScore,
+            Set<FAQIndex.Entry> removed, List<FAQIndex.Entry> found) {
+        long[] query = new long[WORDS];
+        int querySlack = encode(queryTerms, query);
+        int rows = entries.length;
+        int[] questionShared = new int[BLOCK];
+        int[] keywordShared = new int[BLOCK];
+        for (int from = 0; from < rows; from += BLOCK) {
+            int to = Math.min(rows, from + BLOCK);
+            counter.countShared(questionWords, rows, from, to, query, questionShared);
+            counter.countShared(keywordWords, rows, from, to, query, keywordShared);
+            for (int row = from; row < to; row++) {
+                FAQIndex.Entry entry = entries[row];
+                double bound = questionWeight * similarityBound(queryTerms.length, querySlack,
+                    entry.questionTerms.length, questionSlack[row], questionShared[row - from]);
+                if (entry.hasKeywords) {
+                    bound += keywordWeight * similarityBound(queryTerms.length, querySlack,
+                        entry.keywordTerms.length, keywordSlack[row], keywordShared[row - from]);
+                }
+                if (bound >= minScore && bound > 0 && !removed.contains(entry)) {
+                    found.add(entry);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Upper bound of the Jaccard similarity of a non-empty query and a term
+     * set, given the bits they share and how many terms of each share a bit
+     * with another term of the same set
+     */
+    private static double similarityBound(int querySize, int querySlack, int size, int slack, int sharedBits) {
+        if (size == 0) {
+            return 0.0;
+        }
+        int shared = Math.min(Math.min(querySize, size), sharedBits + Math.min(querySlack, slack));
+        return (double) shared / (querySize + size - shared);
+    }
+    
+    /**
+     * Set one bit per term and return how many terms landed on a bit that
+     * was already set
+     */
+    private static int encode(int[] terms, long[] bits) {
+        Arrays.fill(bits, 0L);
+        int collisions = 0;
+        for (int term : terms) {
+            int bit = bit(term);
+            long mask = 1L << bit;
+            if ((bits[bit >>> 6] & mask) != 0) {
+                collisions++;
+            }
+            bits[bit >>> 6] |= mask;
+        }
+        return collisions;
+    }
+    
+    private static int bit(int term) {
+        long z = term * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 32)) * 0xD6E8FEB86659FD93L;
+        return (int) (z >>> 56);
+    }
+}
@@ -0,0 +1,253 @@
+package com.chatbot.training;
+
+import com.chatbot.model.DuplicatePair;
+import com.chatbot.model.FAQ;
+import java.util.*;
+
+/**
+ * Finds FAQs whose questions are near duplicates of each other.
+ *
+ * Two questions are duplicates when the Jaccard similarity of their term
+ * sets, computed as for matching, reaches the threshold. Instead of
+ * comparing every pair, the detector runs a similarity self-join with
+ * prefix and length filtering: terms are ranked from rarest to most common,
+ * questions are visited from shortest to longest, and a question is only
+ * compared with earlier ones that share a term within the first few of
+ * their rarest terms and are long enough to reach the threshold at all.
+ * Where a shared term sits in both questions also bounds how many more
+ * terms they can share, which rules out most remaining candidates before
+ * they are compared. Common words therefore never produce candidates, and
+ * the join runs in seconds on a million questions.
+ *
+ * FAQs must have been tokenized by the storage.
+ */
+public class DuplicateDetector {
+    
+    // Keeps prefixes and length bounds conservative despite rounding of threshold * size
+    private static final double EPSILON = 1e-9;
+    
+    // Overlap of a candidate ruled out by the position filter
+    private static final int PRUNED = Integer.MIN_VALUE / 2;
+    
+    private static final class Found {
+        final int first;
+        final int second;
+        final double score;
+        
+        Found(int one, int other, double score) {
+            this.first = Math.min(one, other);
+            this.second = Math.max(one, other);
+            this.score = score;
+        }
+    }
+    
+    private final double threshold;
+    
+    /**
+     * @param threshold similarity from which two questions are duplicates, above 0 and at most 1
+     */
+    public DuplicateDetector(double threshold) {
+        if (!(threshold > 0 && threshold <= 1)) {
+            throw new IllegalArgumentException("Threshold must be above 0 and at most 1: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Find every pair of FAQs whose questions are at least as similar as
+     * the threshold, ordered by the position of their FAQs in the list
+     */
+    public List<DuplicatePair> findDuplicates(List<FAQ> faqs) {
+        int count = faqs.size();
+        int[][] terms = rankTerms(faqs);
+        
+        // Visit questions from shortest to longest, in list order for equal lengths
+        long[] byLength = new long[count];
+        for (int i = 0; i < count; i++) {
+            byLength[i] = (long) terms[i].length << 32 | i;
+        }
+        Arrays.sort(byLength);
+        
+        List<Found> found = new ArrayList<>();
+        // Pairs of question and position of the term in it, by question length
+        int[][] postings = new int[maxTerm(terms) + 1][];
+        int[] postingSizes = new int[postings.length];
+        // The too-short questions at the front of each posting are skipped for good
+        int[] postingStarts = new int[postings.length];
+        int[] overlaps = new int[count];
+        int[] touched = new int[count];
+        List<Integer> empty = new ArrayList<>();
+        
+        for (long key : byLength) {
+            int current = (int) key;
+            int[] currentTerms = terms[current];
+            int length = currentTerms.length;
+            if (length == 0) {
+                // Two empty questions are identical; an empty and a non-empty one share nothing
+                for (int other : empty) {
+                    found.add(new Found(other, current, 1.0));
+                }
+                empty.add(current);
+                continue;
+            }
+            
+            // A duplicate is at least this long and shares at least this many terms
+            int minLength = minOverlap(threshold, length);
+            
+            // Probe with the rarest terms, one of which any duplicate must share
+            int touchedCount = 0;
+            int probe = length - minLength + 1;
+            for (int i = 0; i < probe; i++) {
+                int term = currentTerms[i];
+                int[] posting = postings[term];
+                if (posting == null) {
+                    continue;
+                }
+                int start = postingStarts[term];
+                while (start < postingSizes[term] && terms[posting[start]].length < minLength) {
+                    start += 2;
+                }
+                postingStarts[term] = start;
+                for (int j = start; j < postingSizes[term]; j += 2) {
+                    int other = posting[j];
+                    if (overlaps[other] < 0) {
+                        continue;
+                    }
+                    if (overlaps[other] == 0) {
+                        touched[touchedCount++] = other;
+                    }
+                    // Terms shared so far all come before this one in both questions
+                    int otherLength = terms[other].length;
+                    int remaining = Math.min(length - i - 1, otherLength - posting[j + 1] - 1);
+                    int required = (int) Math.ceil(threshold / (1 + threshold) * (length + otherLength) - EPSILON);
+                    overlaps[other] = overlaps[other] + 1 + remaining >= required ? overlaps[other] + 1 : PRUNED;
+                }
+            }
+            
+            // Verify the candidates, computing the similarity as for matching
+            for (int i = 0; i < touchedCount; i++) {
+                int other = touched[i];
+                boolean pruned = overlaps[other] < 0;
+                overlaps[other] = 0;
+                if (pruned) {
+                    continue;
+                }
+                int otherLength = terms[other].length;
+                int required = (int) Math.ceil(threshold / (1 + threshold) * (length + otherLength) - EPSILON);
+                int intersection = overlap(currentTerms, terms[other], required);
+                if (intersection < 0) {
+                    continue;
+                }
+                double score = (double) intersection / (length + otherLength - intersection);
+                if (score >= threshold) {
+                    found.add(new Found(other, current, score));
+                }
+            }
+            
+            // Index a prefix long enough for any longer question to find this one
+            int indexed = length - minOverlap(2 * threshold / (1 + threshold), length) + 1;
+            for (int i = 0; i < indexed; i++) {
+                int term = currentTerms[i];
+                if (postings[term] == null) {
+                    postings[term] = new int[4];
+                } else if (postingSizes[term] == postings[term].length) {
+                    postings[term] = Arrays.copyOf(postings[term], postings[term].length * 2);
+                }
+                postings[term][postingSizes[term]++] = current;
+                postings[term][postingSizes[term]++] = i;
+            }
+        }
+        
+        found.sort(Comparator.<Found>comparingInt(pair -> pair.first).thenComparingInt(pair -> pair.second));
+        List<DuplicatePair> duplicates = new ArrayList<>(found.size());
+        for (Found pair : found) {
+            duplicates.add(new DuplicatePair(faqs.get(pair.first), faqs.get(pair.second), pair.score));
+        }
+        return duplicates;
+    }
+    
+    /**
+     * Count the terms two sorted sets share, or return -1 as soon as they
+     * cannot share the required number any more
+     */
+    private static int overlap(int[] terms1, int[] terms2, int required) {
+        int shared = 0;
+        int i = 0;
+        int j = 0;
+        while (i < terms1.length && j < terms2.length) {
+            if (shared + Math.min(terms1.length - i, terms2.length - j) < required) {
+                return -1;
+            }
+            if (terms1[i] < terms2[j]) {
+                i++;
+            } else if (terms1[i] > terms2[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        return shared >= required ? shared : -1;
+    }
+    
+    /**
+     * Smallest number of shared terms that lets a set of the given size
+     * reach the threshold with a set at least as large
+     */
+    static int minOverlap(double threshold, int size) {
+        int overlap = (int) Math.ceil(threshold * size - EPSILON);
+        return Math.max(1, Math.min(size, overlap));
+    }
+    
+    /**
+     * Rewrite every question as a sorted array of term ranks, where rank 0
+     * is the term used by the fewest questions
+     */
+    private static int[][] rankTerms(List<FAQ> faqs) {
+        int maxId = -1;
+        for (FAQ faq : faqs) {
+            for (int term : faq.getQuestionTerms()) {
+                maxId = Math.max(maxId, term);
+            }
+        }
+        int[] frequencies = new int[maxId + 1];
+        for (FAQ faq : faqs) {
+            for (int term : faq.getQuestionTerms()) {
+                frequencies[term]++;
+            }
+        }
+        
+        long[] byFrequency = new long[frequencies.length];
+        for (int id = 0; id < frequencies.length; id++) {
+            byFrequency[id] = (long) frequencies[id] << 32 | id;
+        }
+        Arrays.sort(byFrequency);
+        int[] ranks = new int[frequencies.length];
+        for (int rank = 0; rank < byFrequency.length; rank++) {
+            ranks[(int) byFrequency[rank]] = rank;
+        }
+        
+        int[][] ranked = new int[faqs.size()][];
+        for (int i = 0; i < ranked.length; i++) {
+            int[] questionTerms = faqs.get(i).getQuestionTerms();
+            int[] terms = new int[questionTerms.length];
+            for (int j = 0; j < terms.length; j++) {
+                terms[j] = ranks[questionTerms[j]];
+            }
+            Arrays.sort(terms);
+            ranked[i] = terms;
+        }
+        return ranked;
+    }
+    
+    private static int maxTerm(int[][] terms) {
+        int max = -1;
+        for (int[] set : terms) {
+            if (set.length > 0) {
+                max = Math.max(max, set[set.length - 1]);
+            }
+        }
+        return max;
+    }
+}
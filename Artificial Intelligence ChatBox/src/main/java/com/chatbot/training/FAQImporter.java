@@ -0,0 +1,112 @@
+package com.chatbot.training;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.nlp.NLPProcessor;
+import com.chatbot.storage.CorpusReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Imports a corpus file into a trainer in bulk.
+ *
+ * Rows are streamed from a {@link CorpusReader} in chunks. While the next
+ * chunk is read, keywords are extracted for the FAQs of earlier chunks on
+ * the common fork/join pool, with a bounded number of chunks in flight.
+ * The FAQs are then added with a single commit, so matching sees either
+ * none or all of them. Rejected rows are reported as they are read.
+ */
+public class FAQImporter {
+    
+    /**
+     * Receives the progress of an import
+     */
+    public interface Listener {
+        /**
+         * Called every 100,000 rows and once all rows are read
+         */
+        void progress(long rows, long rejected);
+        
+        void rejected(long row, String reason);
+    }
+    
+    private static final int CHUNK = 4096;
+    private static final int PROGRESS_ROWS = 100_000;
+    
+    private final FAQTrainer trainer;
+    private final NLPProcessor nlpProcessor;
+    
+    public FAQImporter(FAQTrainer trainer) {
+        this.trainer = trainer;
+        this.nlpProcessor = new NLPProcessor();
+    }
+    
+    /**
+     * Read every row and add the valid FAQs, replacing stored FAQs with the
+     * same question
+     */
+    public ImportResult importFAQs(CorpusReader reader, Listener listener) throws IOException {
+        long started = System.nanoTime();
+        int maxInFlight = 2 * ForkJoinPool.getCommonPoolParallelism() + 1;
+        Deque<CompletableFuture<List<FAQ>>> inFlight = new ArrayDeque<>();
+        List<FAQ> faqs = new ArrayList<>();
+        long rows = 0;
+        long rejected = 0;
+        
+        List<FAQ> chunk = new ArrayList<>(CHUNK);
+        CorpusReader.Row row;
+        while ((row = reader.next()) != null) {
+            rows++;
+            if (row.getFaq() == null) {
+                rejected++;
+                listener.rejected(row.getNumber(), row.getError());
+            } else {
+                chunk.add(row.getFaq());
+                if (chunk.size() == CHUNK) {
+                    inFlight.add(extractKeywords(chunk));
+                    chunk = new ArrayList<>(CHUNK);
+                    if (inFlight.size() >= maxInFlight) {
+                        faqs.addAll(inFlight.remove().join());
+                    }
+                }
+            }
+            if (rows % PROGRESS_ROWS == 0) {
+                listener.progress(rows, rejected);
+            }
+        }
+        inFlight.add(extractKeywords(chunk));
+        while (!inFlight.isEmpty()) {
+            faqs.addAll(inFlight.remove().join());
+        }
+        if (rows % PROGRESS_ROWS != 0) {
+            listener.progress(rows, rejected);
+        }
+        
+        List<FAQ> replaced = trainer.trainFAQs(faqs);
+        Set<FAQ> batch = Collections.newSetFromMap(new IdentityHashMap<>());
+        batch.addAll(faqs);
+        long duplicates = 0;
+        for (FAQ faq : replaced) {
+            if (batch.contains(faq)) {
+                duplicates++;
+            }
+        }
+        return new ImportResult(rows, faqs.size() - duplicates, rejected, replaced.size() - duplicates,
+            duplicates, (System.nanoTime() - started) / 1e9);
+    }
+    
+    /**
+     * Give the FAQs without keywords those of their question, as training does
+     */
+    private CompletableFuture<List<FAQ>> extractKeywords(List<FAQ> chunk) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (FAQ faq : chunk) {
+                if (faq.getKeywords() == null) {
+                    faq.setKeywords(new ArrayList<>(nlpProcessor.extractKeywords(faq.getQuestion())));
+                }
+            }
+            return chunk;
+        }, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,748 @@
+package com.chatbot.training;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.nlp.NLPProcessor;
+import com.chatbot.nlp.TermDictionary;
+import com.chatbot.nlp.TokenBuffer;
+import com.chatbot.storage.SnapshotCorpus;
+import com.chatbot.storage.StoredCorpus;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Immutable inverted token index over one version of the FAQ corpus.
+ *
+ * Maps every question and keyword term to the FAQs containing it, so a query
+ * only has to be scored against FAQs that share at least one term with it.
+ * FAQs arrive already tokenized by the storage into sorted term id arrays
+ * of its {@link TermDictionary}. Entries carry an insertion
+ * sequence number that mirrors the storage order, which keeps tie-breaking
+ * identical to a linear scan of the corpus.
+ *
+ * An index is never modified once built, so any number of threads can query
+ * it without locking. Changes produce a new version that shares the posting
+ * lists of its predecessor: recent additions and removals are kept in a
+ * small delta next to the shared base, and the base is rebuilt once the
+ * delta outgrows the square root of the corpus size.
+ *
+ * FAQs of the snapshot the storage was loaded from are not indexed at all:
+ * their postings are read from the snapshot, and their entries are created
+ * the first time a query reaches them, with their snapshot position as
+ * sequence number. Only FAQs added since are indexed in memory, after them.
+ *
+ * When built with a {@link MinHash}, the base also buckets every FAQ by the
+ * band keys of its terms, so approximate candidates can be found with one
+ * lookup per band however common the query's tokens are. When built with a
+ * {@link BitCounter}, it keeps a {@link BitVectorTable} of the base to scan
+ * instead of merging posting lists. Both are built over every FAQ, so these
+ * engines decode the whole snapshot up front.
+ */
+class FAQIndex {
+    
+    /**
+     * Indexed, pre-tokenized view of a single FAQ
+     */
+    static final class Entry {
+        final FAQ faq;
+        final long sequence;
+        final int[] questionTerms;
+        final int[] keywordTerms;
+        final boolean hasKeywords;
+        final int[] terms;
+        final int[] bandKeys;
+        
+        Entry(FAQ faq, long sequence, int[] questionTerms, int[] keywordTerms, boolean hasKeywords, MinHash minHash) {
+            this.faq = faq;
+            this.sequence = sequence;
+            this.questionTerms = questionTerms;
+            this.keywordTerms = keywordTerms;
+            this.hasKeywords = hasKeywords;
+            this.terms = union(questionTerms, keywordTerms);
+            this.bandKeys = minHash != null ? minHash.bandKeys(terms) : null;
+        }
+        
+        /**
+         * Whether this FAQ shares a band key with the given ones
+         */
+        boolean sharesBand(int[] queryBandKeys) {
+            for (int band = 0; band < queryBandKeys.length; band++) {
+                if (bandKeys[band] == queryBandKeys[band]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        
+        /**
+         * Whether this FAQ can score above zero against a query without tokens.
+         * Jaccard similarity of two empty token sets is 1.0.
+         */
+        boolean matchesEmptyQuery() {
+            return questionTerms.length == 0 || (hasKeywords && keywordTerms.length == 0);
+        }
+        
+        /**
+         * Whether this FAQ shares a term with the given sorted query terms
+         */
+        boolean sharesTerm(int[] queryTerms) {
+            int i = 0;
+            int j = 0;
+            while (i < terms.length && j < queryTerms.length) {
+                if (terms[i] == queryTerms[j]) {
+                    return true;
+                } else if (terms[i] < queryTerms[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return false;
+        }
+    }
+    
+    private static final Comparator<Entry> BY_SEQUENCE = Comparator.comparingLong(e -> e.sequence);
+    private static final int[] NO_TERMS = new int[0];
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final int MIN_DELTA = 64;
+    
+    private final NLPProcessor nlpProcessor;
+    private final TermDictionary dictionary;
+    private final MinHash minHash;
+    private final BitCounter bitCounter;
+    private final long version;
+    private final long nextSequence;
+    
+    // FAQs of the storage snapshot, or null, and the positions removed before the base was built
+    private final SnapshotLevel snapshot;
+    private final int[] snapshotRemoved;
+    
+    // Base index of the FAQs held in memory, shared between versions
+    private final Map<Integer, Entry[]> postings;
+    private final Map<FAQ, Entry> baseEntries;
+    private final Entry[] baseOrder;
+    private final long baseFirstSequence;
+    private final int baseSpan;
+    // Base FAQs, snapshot and memory, by offset from the first base sequence number
+    private final long[] baseBits;
+    private final Entry[] emptyTokenEntries;
+    private final List<Map<Integer, Entry[]>> bandBuckets;
+    private final BitVectorTable bitVectors;
+    private final SignatureTable questionSignatures;
+    
+    // Changes since the base was built
+    private final Entry[] added;
+    private final Set<Entry> removed;
+    
+    // Every FAQ of this version, built on first use
+    private volatile List<FAQ> faqs;
+    
+    /**
+     * Build the first version of the index from the stored FAQs, in storage order
+     *
+     * @param minHash signatures to bucket FAQs by for approximate candidates, or null for none
+     * @param bitCounter counter to scan a bit vector table with, or null for no table
+     */
+    static FAQIndex build(NLPProcessor nlpProcessor, TermDictionary dictionary, MinHash minHash,
+            BitCounter bitCounter, StoredCorpus corpus) {
+        SnapshotCorpus snapshot = corpus.getSnapshot();
+        if (snapshot == null || minHash != null || bitCounter != null) {
+            return new FAQIndex(nlpProcessor, dictionary, minHash, bitCounter, 0, null, NO_POSITIONS,
+                toEntries(corpus.getFAQs(), 0, minHash));
+        }
+        return new FAQIndex(nlpProcessor, dictionary, null, null, 0, new SnapshotLevel(snapshot),
+            corpus.getRemovedPositions(), toEntries(corpus.getAdded(), snapshot.size(), null));
+    }
+    
+    private FAQIndex(NLPProcessor nlpProcessor, TermDictionary dictionary, MinHash minHash, BitCounter bitCounter,
+            long version, SnapshotLevel snapshot, int[] snapshotRemoved, List<Entry> entries) {
+        this.nlpProcessor = nlpProcessor;
+        this.dictionary = dictionary;
+        this.minHash = minHash;
+        this.bitCounter = bitCounter;
+        this.version = version;
+        this.snapshot = snapshot;
+        this.snapshotRemoved = snapshotRemoved;
+        long first = snapshot != null ? snapshot.size : 0;
+        this.nextSequence = entries.isEmpty() ? first : entries.get(entries.size() - 1).sequence + 1;
+        this.added = NO_ENTRIES;
+        this.removed = Collections.emptySet();
+        this.baseOrder = entries.toArray(NO_ENTRIES);
+        this.baseFirstSequence = snapshot != null || entries.isEmpty() ? 0 : entries.get(0).sequence;
+        this.baseSpan = (int) (nextSequence - baseFirstSequence);
+        
+        Map<Integer, List<Entry>> lists = new HashMap<>();
+        List<Entry> empty = new ArrayList<>();
+        this.baseEntries = new IdentityHashMap<>(entries.size());
+        for (Entry entry : entries) {
+            baseEntries.put(entry.faq, entry);
+            for (int term : entry.terms) {
+                lists.computeIfAbsent(term, t -> new ArrayList<>()).add(entry);
+            }
+            if (entry.matchesEmptyQuery()) {
+                empty.add(entry);
+            }
+        }
+        this.postings = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<Integer, List<Entry>> list : lists.entrySet()) {
+            postings.put(list.getKey(), list.getValue().toArray(NO_ENTRIES));
+        }
+        this.emptyTokenEntries = empty.toArray(NO_ENTRIES);
+        this.bandBuckets = minHash != null ? bucketByBand(minHash.bands(), entries) : null;
+        this.bitVectors = bitCounter != null ? new BitVectorTable(bitCounter, entries) : null;
+        this.questionSignatures = new SignatureTable(entries);
+        
+        this.baseBits = new long[(baseSpan + 63) >>> 6];
+        if (snapshot != null) {
+            for (int word = 0; word < snapshot.size >>> 6; word++) {
+                baseBits[word] = -1L;
+            }
+            for (int position = snapshot.size & ~63; position < snapshot.size; position++) {
+                baseBits[position >>> 6] |= 1L << position;
+            }
+            for (int position : snapshotRemoved) {
+                baseBits[position >>> 6] &= ~(1L << position);
+            }
+        }
+        for (Entry entry : entries) {
+            int bit = (int) (entry.sequence - baseFirstSequence);
+            baseBits[bit >>> 6] |= 1L << bit;
+        }
+    }
+    
+    private FAQIndex(FAQIndex base, long nextSequence, Entry[] added, Set<Entry> removed) {
+        this.nlpProcessor = base.nlpProcessor;
+        this.dictionary = base.dictionary;
+        this.minHash = base.minHash;
+        this.bitCounter = base.bitCounter;
+        this.version = base.version + 1;
+        this.nextSequence = nextSequence;
+        this.snapshot = base.snapshot;
+        this.snapshotRemoved = base.snapshotRemoved;
+        this.postings = base.postings;
+        this.baseEntries = base.baseEntries;
+        this.baseOrder = base.baseOrder;
+        this.baseFirstSequence = base.baseFirstSequence;
+        this.baseSpan = base.baseSpan;
+        this.baseBits = base.baseBits;
+        this.emptyTokenEntries = base.emptyTokenEntries;
+        this.bandBuckets = base.bandBuckets;
+        this.bitVectors = base.bitVectors;
+        this.questionSignatures = base.questionSignatures;
+        this.added = added;
+        this.removed = removed;
+    }
+    
+    /**
+     * Create the next version with the given FAQs removed and the stored
+     * FAQs added after every FAQ already in the index
+     */
+    FAQIndex update(Collection<FAQ> removedFaqs, Collection<FAQ> addedFaqs) {
+        Set<FAQ> dropped = Collections.newSetFromMap(new IdentityHashMap<>());
+        dropped.addAll(removedFaqs);
+        // An FAQ added again moves to the end of the corpus
+        dropped.addAll(addedFaqs);
+        
+        List<Entry> delta = new ArrayList<>(added.length + addedFaqs.size());
+        for (Entry entry : added) {
+            if (!dropped.contains(entry.faq)) {
+                delta.add(entry);
+            }
+        }
+        Set<Entry> gone = new HashSet<>(removed);
+        for (FAQ faq : dropped) {
+            Entry entry = baseEntry(faq);
+            if (entry != null) {
+                gone.add(entry);
+            }
+        }
+        delta.addAll(toEntries(addedFaqs, nextSequence, minHash));
+        long sequence = nextSequence + addedFaqs.size();
+        
+        int limit = Math.max(MIN_DELTA, (int) Math.sqrt(snapshotLive() + baseEntries.size()));
+        if (delta.size() + gone.size() <= limit) {
+            return new FAQIndex(this, sequence, delta.toArray(NO_ENTRIES), gone);
+        }
+        
+        // Fold the delta into a new base; snapshot FAQs only need their positions dropped
+        List<Entry> entries = new ArrayList<>(baseEntries.size() + delta.size());
+        for (Entry entry : baseEntries.values()) {
+            if (!gone.contains(entry)) {
+                entries.add(entry);
+            }
+        }
+        entries.addAll(delta);
+        entries.sort(BY_SEQUENCE);
+        int[] nowRemoved = snapshotRemoved;
+        if (snapshot != null) {
+            int[] positions = new int[snapshotRemoved.length + gone.size()];
+            System.arraycopy(snapshotRemoved, 0, positions, 0, snapshotRemoved.length);
+            int count = snapshotRemoved.length;
+            for (Entry entry : gone) {
+                if (entry.sequence < snapshot.size) {
+                    positions[count++] = (int) entry.sequence;
+                }
+            }
+            nowRemoved = Arrays.copyOf(positions, count);
+            Arrays.sort(nowRemoved);
+        }
+        return new FAQIndex(nlpProcessor, dictionary, minHash, bitCounter, version + 1, snapshot, nowRemoved,
+            entries);
+    }
+    
+    /**
+     * Tokenize a query and map its tokens to term ids; see
+     * {@link TermDictionary#lookupAll(TokenBuffer)}
+     */
+    int[] queryTerms(String query) {
+        return dictionary.lookupAll(nlpProcessor.scan(query));
+    }
+    
+    /**
+     * Collect the FAQs that may score above zero for the given query terms,
+     * in corpus order
+     */
+    List<Entry> candidates(int[] queryTerms) {
+        Set<Entry> found = new HashSet<>();
+        if (queryTerms.length == 0) {
+            if (snapshot != null) {
+                addLiveSnapshot(found, snapshot.emptyQuery());
+            }
+            addLive(found, emptyTokenEntries);
+        } else {
+            for (int term : queryTerms) {
+                if (snapshot != null && term >= 0) {
+                    addLiveSnapshot(found, snapshot.postings(term));
+                }
+                Entry[] posting = term >= 0 ? postings.get(term) : null;
+                if (posting != null) {
+                    addLive(found, posting);
+                }
+            }
+        }
+        for (Entry entry : added) {
+            if (queryTerms.length == 0 ? entry.matchesEmptyQuery() : entry.sharesTerm(queryTerms)) {
+                found.add(entry);
+            }
+        }
+        
+        List<Entry> ordered = new ArrayList<>(found);
+        ordered.sort(BY_SEQUENCE);
+        return ordered;
+    }
+    
+    /**
+     * Collect the FAQs that share one of the given number of rarest query
+     * terms, in corpus order. An FAQ containing k of n query terms always
+     * shares one of any n - k + 1 of them, so probing the rarest ones finds
+     * every FAQ with enough terms in common while skipping common words.
+     */
+    List<Entry> candidates(int[] queryTerms, int probeTerms) {
+        if (probeTerms >= queryTerms.length) {
+            return candidates(queryTerms);
+        }
+        long[] byFrequency = new long[queryTerms.length];
+        for (int i = 0; i < queryTerms.length; i++) {
+            Entry[] posting = queryTerms[i] >= 0 ? postings.get(queryTerms[i]) : null;
+            int frequency = (posting != null ? posting.length : 0)
+                + (snapshot != null ? snapshot.corpus.postingCount(queryTerms[i]) : 0);
+            byFrequency[i] = (long) frequency << 32 | i;
+        }
+        Arrays.sort(byFrequency);
+        int[] probe = new int[Math.max(1, probeTerms)];
+        for (int i = 0; i < probe.length; i++) {
+            probe[i] = queryTerms[(int) byFrequency[i]];
+        }
+        Arrays.sort(probe);
+        return candidates(probe);
+    }
+    
+    /**
+     * Collect the FAQs whose question has exactly the given terms, in
+     * corpus order
+     */
+    List<Entry> sameQuestion(int[] queryTerms) {
+        List<Entry> found = new ArrayList<>(1);
+        if (snapshot != null) {
+            for (int position : snapshot.corpus.sameQuestion(queryTerms)) {
+                if (!isSnapshotRemoved(position)) {
+                    found.add(snapshot.entry(position));
+                }
+            }
+        }
+        questionSignatures.collect(queryTerms, found);
+        if (!removed.isEmpty()) {
+            found.removeIf(removed::contains);
+        }
+        for (Entry entry : added) {
+            if (Arrays.equals(entry.questionTerms, queryTerms)) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * The entry of an FAQ in this version, or null if it is not indexed
+     */
+    Entry entry(FAQ faq) {
+        Entry entry = baseEntry(faq);
+        if (entry != null) {
+            return removed.contains(entry) ? null : entry;
+        }
+        for (Entry addedEntry : added) {
+            if (addedEntry.faq == faq) {
+                return addedEntry;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Collect the FAQs that share a MinHash band with the query terms, in
+     * corpus order. Falls back to the exact candidates for a query without
+     * tokens or an index built without MinHash.
+     */
+    List<Entry> approximateCandidates(int[] queryTerms) {
+        if (minHash == null || queryTerms.length == 0) {
+            return candidates(queryTerms);
+        }
+        int[] keys = minHash.bandKeys(queryTerms);
+        Set<Entry> found = new HashSet<>();
+        for (int band = 0; band < keys.length; band++) {
+            Entry[] bucket = bandBuckets.get(band).get(keys[band]);
+            if (bucket != null) {
+                addLive(found, bucket);
+            }
+        }
+        for (Entry entry : added) {
+            if (entry.sharesBand(keys)) {
+                found.add(entry);
+            }
+        }
+        
+        List<Entry> ordered = new ArrayList<>(found);
+        ordered.sort(BY_SEQUENCE);
+        return ordered;
+    }
+    
+    /**
+     * Collect the FAQs whose combined score with the query terms may reach
+     * minScore, in corpus order, by scanning the bit vector table of the
+     * base. Falls back to the exact candidates for a query without tokens or
+     * an index built without a table.
+     */
+    List<Entry> bitVectorCandidates(int[] queryTerms, double questionWeight, double keywordWeight,
+            double minScore) {
+        if (bitVectors == null || queryTerms.length == 0) {
+            return candidates(queryTerms);
+        }
+        List<Entry> found = new ArrayList<>();
+        bitVectors.collect(queryTerms, questionWeight, keywordWeight, minScore, removed, found);
+        // Added FAQs come after the base in corpus order
+        for (Entry entry : added) {
+            if (entry.sharesTerm(queryTerms)) {
+                found.add(entry);
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Find the FAQs whose question or keyword terms include at least one of
+     * every group.
+     *
+     * Each group is a union of posting lists, marked in a bit set over the
+     * base FAQs in corpus order, and the groups are intersected word by
+     * word, so the cost is linear in the postings read however many FAQs
+     * match.
+     *
+     * @param groups non-empty sorted arrays of term ids
+     */
+    FilterMatches containingAll(int[][] groups) {
+        long[] matches = null;
+        for (int[] group : groups) {
+            long[] bits = new long[(baseSpan + 63) >>> 6];
+            for (int term : group) {
+                if (snapshot != null) {
+                    for (int position : snapshot.postings(term)) {
+                        bits[position >>> 6] |= 1L << position;
+                    }
+                }
+                Entry[] posting = postings.get(term);
+                if (posting != null) {
+                    for (Entry entry : posting) {
+                        int bit = (int) (entry.sequence - baseFirstSequence);
+                        bits[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+            if (matches == null) {
+                matches = bits;
+            } else {
+                for (int word = 0; word < matches.length; word++) {
+                    matches[word] &= bits[word];
+                }
+            }
+        }
+        for (int position : snapshotRemoved) {
+            matches[position >>> 6] &= ~(1L << position);
+        }
+        for (Entry entry : removed) {
+            int bit = (int) (entry.sequence - baseFirstSequence);
+            matches[bit >>> 6] &= ~(1L << bit);
+        }
+        
+        List<Entry> addedMatches = new ArrayList<>();
+        for (Entry entry : added) {
+            if (containsAll(entry.terms, groups)) {
+                addedMatches.add(entry);
+            }
+        }
+        return new FilterMatches(this, matches, addedMatches);
+    }
+    
+    /**
+     * Every FAQ of this version in corpus order, as a read-only list that
+     * never changes. Positions are found in a bit set over the base, so the
+     * list costs a few bits per FAQ rather than a copy of the corpus.
+     */
+    List<FAQ> faqs() {
+        List<FAQ> view = faqs;
+        if (view == null) {
+            long[] bits = baseBits.clone();
+            for (Entry entry : removed) {
+                int bit = (int) (entry.sequence - baseFirstSequence);
+                bits[bit >>> 6] &= ~(1L << bit);
+            }
+            view = new FAQList(new FilterMatches(this, bits, Arrays.asList(added)));
+            faqs = view;
+        }
+        return view;
+    }
+    
+    private static boolean containsAll(int[] terms, int[][] groups) {
+        for (int[] group : groups) {
+            boolean contains = false;
+            for (int i = 0; i < terms.length && !contains; i++) {
+                contains = Arrays.binarySearch(group, terms[i]) >= 0;
+            }
+            if (!contains) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Whether the index buckets FAQs for approximate candidates
+     */
+    boolean hasMinHash() {
+        return minHash != null;
+    }
+    
+    int size() {
+        return snapshotLive() + baseEntries.size() - removed.size() + added.length;
+    }
+    
+    /**
+     * Number of changes published since the index was first built
+     */
+    long version() {
+        return version;
+    }
+    
+    /**
+     * The base entry at an offset from the first base sequence number,
+     * which must be in the base
+     */
+    Entry baseEntry(int offset) {
+        long sequence = baseFirstSequence + offset;
+        if (snapshot != null && sequence < snapshot.size) {
+            return snapshot.entry((int) sequence);
+        }
+        int low = 0;
+        int high = baseOrder.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (baseOrder[middle].sequence < sequence) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return baseOrder[low];
+    }
+    
+    /**
+     * The base entry of an FAQ, whether or not it was removed since, or null
+     */
+    private Entry baseEntry(FAQ faq) {
+        Entry entry = baseEntries.get(faq);
+        if (entry == null && snapshot != null) {
+            int position = snapshot.corpus.position(faq);
+            if (position >= 0 && !isSnapshotRemoved(position)) {
+                entry = snapshot.entry(position);
+            }
+        }
+        return entry;
+    }
+    
+    private int snapshotLive() {
+        return snapshot != null ? snapshot.size - snapshotRemoved.length : 0;
+    }
+    
+    private boolean isSnapshotRemoved(int position) {
+        return snapshotRemoved.length > 0 && Arrays.binarySearch(snapshotRemoved, position) >= 0;
+    }
+    
+    private void addLiveSnapshot(Set<Entry> found, int[] positions) {
+        for (int position : positions) {
+            if (!isSnapshotRemoved(position)) {
+                Entry entry = snapshot.entry(position);
+                if (removed.isEmpty() || !removed.contains(entry)) {
+                    found.add(entry);
+                }
+            }
+        }
+    }
+    
+    private void addLive(Set<Entry> found, Entry[] entries) {
+        if (removed.isEmpty()) {
+            Collections.addAll(found, entries);
+            return;
+        }
+        for (Entry entry : entries) {
+            if (!removed.contains(entry)) {
+                found.add(entry);
+            }
+        }
+    }
+    
+    private static List<Map<Integer, Entry[]>> bucketByBand(int bands, List<Entry> entries) {
+        List<Map<Integer, Entry[]>> buckets = new ArrayList<>(bands);
+        for (int band = 0; band < bands; band++) {
+            Map<Integer, List<Entry>> lists = new HashMap<>();
+            for (Entry entry : entries) {
+                lists.computeIfAbsent(entry.bandKeys[band], key -> new ArrayList<>()).add(entry);
+            }
+            Map<Integer, Entry[]> bucket = new HashMap<>(lists.size() * 2);
+            for (Map.Entry<Integer, List<Entry>> list : lists.entrySet()) {
+                bucket.put(list.getKey(), list.getValue().toArray(NO_ENTRIES));
+            }
+            buckets.add(bucket);
+        }
+        return buckets;
+    }
+    
+    private static List<Entry> toEntries(Collection<FAQ> faqs, long firstSequence, MinHash minHash) {
+        List<Entry> entries = new ArrayList<>(faqs.size());
+        long sequence = firstSequence;
+        for (FAQ faq : faqs) {
+            entries.add(toEntry(faq, sequence++, minHash));
+        }
+        return entries;
+    }
+    
+    private static Entry toEntry(FAQ faq, long sequence, MinHash minHash) {
+        boolean hasKeywords = faq.getKeywordTerms() != null;
+        int[] keywordTerms = hasKeywords ? faq.getKeywordTerms() : NO_TERMS;
+        return new Entry(faq, sequence, faq.getQuestionTerms(), keywordTerms, hasKeywords, minHash);
+    }
+    
+    private static final class FAQList extends AbstractList<FAQ> implements RandomAccess {
+        private final FilterMatches matches;
+        
+        FAQList(FilterMatches matches) {
+            this.matches = matches;
+        }
+        
+        @Override
+        public FAQ get(int index) {
+            return matches.get(index).faq;
+        }
+        
+        @Override
+        public int size() {
+            return matches.size();
+        }
+    }
+    
+    /**
+     * FAQs of a snapshot, shared by every version built over it. Entries and
+     * posting lists are decoded when first needed and kept.
+     */
+    private static final class SnapshotLevel {
+        final SnapshotCorpus corpus;
+        final int size;
+        private final AtomicReferenceArray<Entry> entries;
+        private final AtomicReferenceArray<int[]> postings;
+        private volatile int[] emptyQuery;
+        
+        SnapshotLevel(SnapshotCorpus corpus) {
+            this.corpus = corpus;
+            this.size = corpus.size();
+            this.entries = new AtomicReferenceArray<>(size);
+            this.postings = new AtomicReferenceArray<>(corpus.termCount());
+        }
+        
+        Entry entry(int position) {
+            Entry entry = entries.get(position);
+            if (entry == null) {
+                entry = toEntry(corpus.faq(position), position, null);
+                if (!entries.compareAndSet(position, null, entry)) {
+                    entry = entries.get(position);
+                }
+            }
+            return entry;
+        }
+        
+        int[] postings(int term) {
+            if (term >= postings.length()) {
+                return NO_POSITIONS;
+            }
+            int[] positions = postings.get(term);
+            if (positions == null) {
+                // Decoding twice on a race is harmless, the lists are equal
+                positions = corpus.postings(term);
+                postings.set(term, positions);
+            }
+            return positions;
+        }
+        
+        int[] emptyQuery() {
+            int[] positions = emptyQuery;
+            if (positions == null) {
+                positions = corpus.emptyQueryPositions();
+                emptyQuery = positions;
+            }
+            return positions;
+        }
+    }
+    
+    /**
+     * Merge two sorted term arrays into a sorted array of distinct terms
+     */
+    private static int[] union(int[] first, int[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        int[] merged = new int[first.length + second.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < second.length) {
+            int next;
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                next = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                next = second[j++];
+            } else {
+                next = first[i++];
+                j++;
+            }
+            merged[count++] = next;
+        }
+        return Arrays.copyOf(merged, count);
+    }
+}
@@ -1,94 +1,778 @@
 package com.chatbot.training;
 
 import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
+import com.chatbot.model.FAQPage;
 import com.chatbot.nlp.NLPProcessor;
 import com.chatbot.storage.FAQStorage;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
- * FAQ Trainer for machine learning-based responses
+ * FAQ Trainer for machine learning-based responses.
+ *
+ * Matching reads the current version of an immutable {@link FAQIndex}
+ * without locking, so one trainer can serve any number of threads. Training
+ * and removal are serialized and publish a new version once the storage
+ * has accepted the change.
+ *
+ * For very large corpora an approximate {@link MatchEngine} can be chosen,
+ * which only scores FAQs found through MinHash buckets.
+ * {@link #evaluateApproximateMatching(List)} measures what it costs in recall.
+ *
+ * Finding the best match takes two shortcuts that never change its result.
+ * An input with exactly the terms of an FAQ question is looked up by that
+ * signature and answered at once when no other FAQ could score higher. The
+ * most used FAQs are scored next, and the best of them sets the score the
+ * full search has to reach, which lets it probe fewer terms and skip more
+ * FAQs.
+ *
+ * A corpus too large for one JVM can be partitioned across worker
+ * processes, see {@link ShardCoordinator}. With {@link #SHARDS_PROPERTY}
+ * set, matching, training, removal and usage go to the shards, while
+ * listing, searching and bulk training still use the local storage.
  */
 public class FAQTrainer {
     
+    /**
+     * Minimum similarity for an FAQ to count as a match
+     */
+    public static final double DEFAULT_THRESHOLD = 0.3;
+    
+    /**
+     * System property: question similarity from which training warns that
+     * an FAQ is a near duplicate; above 1 turns the check off
+     */
+    public static final String DUPLICATE_THRESHOLD_PROPERTY = "chatbot.train.duplicateThreshold";
+    
+    /**
+     * System property: {@link MatchEngine} used to find the FAQs to score
+     */
+    public static final String MATCH_ENGINE_PROPERTY = "chatbot.match.engine";
+    
+    /**
+     * System property: number of MinHash bands; more bands raise recall and latency
+     */
+    public static final String MINHASH_BANDS_PROPERTY = "chatbot.minhash.bands";
+    
+    /**
+     * System property: MinHash values per band; more rows lower recall and latency
+     */
+    public static final String MINHASH_ROWS_PROPERTY = "chatbot.minhash.rows";
+    
+    /**
+     * System property: whether the bit vector engine counts bits with the
+     * Vector API when built with the {@code simd} profile and the JVM runs
+     * with {@code --add-modules jdk.incubator.vector}
+     */
+    public static final String BITVECTOR_SIMD_PROPERTY = "chatbot.bitvector.simd";
+    
+    /**
+     * System property: number of most used FAQs scored before searching the corpus
+     */
+    public static final String HOT_FAQS_PROPERTY = "chatbot.match.hotFaqs";
+    
+    /**
+     * System property: comma-separated host:port addresses of the shard
+     * workers to match against instead of the local corpus
+     */
+    public static final String SHARDS_PROPERTY = "chatbot.match.shards";
+    
+    /**
+     * System property: milliseconds to wait for the shards' answers before
+     * matching with those that answered
+     */
+    public static final String SHARD_TIMEOUT_PROPERTY = "chatbot.match.shardTimeoutMillis";
+    
+    /**
+     * Receives the FAQs added and removed by each change, after matching
+     * and searching see it. Called on the thread making the change, in
+     * the order of the changes.
+     */
+    public interface ChangeListener {
+        void faqsChanged(List<FAQ> added, List<FAQ> removed);
+    }
+    
+    private static final double QUESTION_WEIGHT = 0.7;
+    private static final double KEYWORD_WEIGHT = 0.3;
+    
+    // Batch slices small enough to balance well across the pool's workers
+    private static final int BATCH_SLICE = 16;
+    
     private final FAQStorage storage;
     private final NLPProcessor nlpProcessor;
+    private final double duplicateThreshold;
+    private final MatchEngine engine;
+    private final TermPrefixIndex termPrefixes;
+    private final UsageTier usageTier;
+    private volatile TierEntries tierEntries;
+    private volatile FAQIndex index;
+    private volatile Search lastSearch;
+    private final ShardCoordinator shards;
+    private volatile long shardChanges;
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
     
+    /**
+     * Create a trainer using the match engine and shards configured by
+     * system properties
+     */
     public FAQTrainer(FAQStorage storage) {
+        this(storage, MatchEngine.parse(System.getProperty(MATCH_ENGINE_PROPERTY, "exact")), configuredShards());
+    }
+    
+    public FAQTrainer(FAQStorage storage, MatchEngine engine) {
+        this(storage, engine, null);
+    }
+    
+    /**
+     * @param shards workers holding the corpus to match against, or null to match the local one
+     */
+    public FAQTrainer(FAQStorage storage, MatchEngine engine, ShardCoordinator shards) {
         this.storage = storage;
+        this.shards = shards;
         this.nlpProcessor = new NLPProcessor();
+        this.duplicateThreshold = Double.parseDouble(System.getProperty(DUPLICATE_THRESHOLD_PROPERTY, "0.9"));
+        this.engine = engine;
+        MinHash minHash = engine == MatchEngine.MINHASH
+            ? new MinHash(Integer.getInteger(MINHASH_BANDS_PROPERTY, 16), Integer.getInteger(MINHASH_ROWS_PROPERTY, 2))
+            : null;
+        BitCounter bitCounter = engine == MatchEngine.BITVECTOR ? BitVectorTable.bitCounter() : null;
+        int hotFAQs = Integer.getInteger(HOT_FAQS_PROPERTY, 32);
+        this.index = FAQIndex.build(nlpProcessor, storage.getTermDictionary(), minHash, bitCounter,
+            storage.getStoredCorpus());
+        this.termPrefixes = new TermPrefixIndex(storage.getTermDictionary());
+        this.usageTier = new UsageTier(hotFAQs, storage.getMostUsedFAQs(hotFAQs));
+    }
+    
+    private static ShardCoordinator configuredShards() {
+        String addresses = System.getProperty(SHARDS_PROPERTY, "");
+        if (addresses.trim().isEmpty()) {
+            return null;
+        }
+        return new ShardCoordinator(ShardCoordinator.parseAddresses(addresses),
+            Long.getLong(SHARD_TIMEOUT_PROPERTY, 500));
     }
     
     /**
-     * Train the bot with a new FAQ
+     * Train the bot with a new FAQ. The FAQ is added even if its question
+     * is a near duplicate of another FAQ's; the caller decides whether to
+     * warn about it.
+     *
+     * @return the FAQs whose questions were near duplicates of the new one,
+     *         most similar first; empty if none were or the check is off
+     * @throws UncheckedIOException if the FAQ could not be saved; nothing
+     *         is changed then
      */
-    public void trainFAQ(String question, String answer) {
+    public synchronized List<FAQMatch> trainFAQ(String question, String answer) {
+        if (shards != null) {
+            List<FAQMatch> duplicates = shards.train(question, answer);
+            shardChanges++;
+            return duplicates;
+        }
+        List<FAQMatch> duplicates = duplicateThreshold <= 1
+            ? findSimilarQuestions(question, duplicateThreshold)
+            : Collections.emptyList();
         List<String> keywords = new ArrayList<>(nlpProcessor.extractKeywords(question));
         FAQ faq = new FAQ(question, answer, keywords);
-        storage.addFAQ(faq);
-        storage.saveFAQs();
+        List<FAQ> replaced = storage.addFAQ(faq);
+        index = index.update(replaced, Collections.singletonList(faq));
+        usageTier.remove(replaced);
+        fireChange(Collections.singletonList(faq), replaced);
+        return duplicates;
+    }
+    
+    /**
+     * Add many FAQs with a single commit: one storage write, one new index
+     * version and one change event. FAQs without keywords get them
+     * extracted from their question. A later FAQ replaces an earlier one
+     * with the same question, in the corpus or among the given ones. With
+     * shards, each shard commits the FAQs whose questions it owns.
+     *
+     * @return the FAQs that were replaced, including any of the given ones
+     * @throws UncheckedIOException if the FAQs could not be saved; nothing
+     *         is changed then, except on the shards that confirmed theirs
+     */
+    public synchronized List<FAQ> trainFAQs(List<FAQ> faqs) {
+        for (FAQ faq : faqs) {
+            if (faq.getKeywords() == null) {
+                faq.setKeywords(new ArrayList<>(nlpProcessor.extractKeywords(faq.getQuestion())));
+            }
+        }
+        if (shards != null) {
+            List<FAQ> replaced = shards.trainAll(faqs);
+            shardChanges++;
+            return replaced;
+        }
+        List<FAQ> replaced = storage.addFAQs(faqs);
+        
+        // FAQs replaced within the batch never reach the index
+        Set<FAQ> superseded = Collections.newSetFromMap(new IdentityHashMap<>());
+        superseded.addAll(replaced);
+        Set<FAQ> batch = Collections.newSetFromMap(new IdentityHashMap<>());
+        batch.addAll(faqs);
+        List<FAQ> added = new ArrayList<>(faqs.size());
+        for (FAQ faq : faqs) {
+            if (!superseded.contains(faq)) {
+                added.add(faq);
+            }
+        }
+        List<FAQ> removed = new ArrayList<>();
+        for (FAQ faq : replaced) {
+            if (!batch.contains(faq)) {
+                removed.add(faq);
+            }
+        }
+        
+        index = index.update(removed, added);
+        usageTier.remove(removed);
+        fireChange(added, removed);
+        return replaced;
     }
     
     /**
      * Find best matching FAQ using similarity scoring
      */
     public FAQ findBestMatch(String userInput) {
-        List<FAQ> faqs = storage.getAllFAQs();
-        if (faqs.isEmpty()) {
+        FAQMatch match = scoreBestMatch(userInput);
+        if (match == null) {
             return null;
         }
+        recordUsage(match.getFaq());
+        return match.getFaq();
+    }
+    
+    /**
+     * Count an FAQ matched earlier, for example one taken from a cache, as used
+     */
+    public void recordUsage(FAQ faq) {
+        if (shards != null) {
+            shards.recordUsage(faq.getQuestion());
+            return;
+        }
+        storage.recordUsage(faq);
+        usageTier.used(faq);
+    }
+    
+    /**
+     * Find the k best matching FAQs with a score of at least minScore,
+     * best first, without counting them as used. FAQs with equal scores
+     * are ranked in corpus order.
+     */
+    public List<FAQMatch> findTopMatches(String userInput, int k, double minScore) {
+        if (shards != null) {
+            return shards.topMatches(userInput, k, minScore).getMatches();
+        }
+        return topMatches(this.index, userInput, k, minScore);
+    }
+    
+    /**
+     * Find the FAQs whose question is at least as similar to the given one
+     * as the threshold, most similar first. An FAQ with the same question
+     * ignoring case is left out, since training replaces it.
+     */
+    public List<FAQMatch> findSimilarQuestions(String question, double threshold) {
+        FAQIndex index = this.index;
+        int[] terms = index.queryTerms(question);
         
-        FAQ bestMatch = null;
-        double bestScore = 0.0;
-        double threshold = 0.3; // Minimum similarity threshold
+        // A similar question shares at least this many terms and is at least this long
+        int minOverlap = DuplicateDetector.minOverlap(threshold, terms.length);
         
-        for (FAQ faq : faqs) {
-            // Calculate similarity with the question
-            double questionScore = nlpProcessor.calculateSimilarity(userInput, faq.getQuestion());
+        List<FAQMatch> similar = new ArrayList<>();
+        for (FAQIndex.Entry candidate : index.candidates(terms, terms.length - minOverlap + 1)) {
+            if (similarityBound(terms.length, candidate.questionTerms.length) < threshold
+                    || candidate.faq.getQuestion().equalsIgnoreCase(question)) {
+                continue;
+            }
+            double score = nlpProcessor.calculateSimilarity(terms, candidate.questionTerms);
+            if (score >= threshold) {
+                similar.add(new FAQMatch(candidate.faq, score));
+            }
+        }
+        // Stable, so equally similar FAQs stay in corpus order
+        similar.sort(Comparator.comparingDouble(FAQMatch::getScore).reversed());
+        return similar;
+    }
+    
+    /**
+     * Find the best matching FAQ and its score without counting it as used
+     */
+    public FAQMatch scoreBestMatch(String userInput) {
+        return match(this.index, userInput);
+    }
+    
+    public MatchEngine getMatchEngine() {
+        return engine;
+    }
+    
+    /**
+     * Match sample inputs both exactly and approximately, without counting
+     * usage, and report how many exact best matches approximate matching
+     * found and how long each took. Needs the MinHash engine.
+     */
+    public MatchEvaluation evaluateApproximateMatching(List<String> sample) {
+        FAQIndex index = this.index;
+        if (!index.hasMinHash()) {
+            throw new IllegalStateException("Approximate matching needs the " + MatchEngine.MINHASH + " engine");
+        }
+        int exactMatches = 0;
+        int foundMatches = 0;
+        long exactNanos = 0;
+        long approximateNanos = 0;
+        long exactCandidates = 0;
+        long approximateCandidates = 0;
+        for (String input : sample) {
+            long start = System.nanoTime();
+            int[] inputTerms = index.queryTerms(input);
+            List<FAQIndex.Entry> exact = index.candidates(inputTerms);
+            FAQMatch exactMatch = first(topMatches(inputTerms, exact, 1, DEFAULT_THRESHOLD));
+            long middle = System.nanoTime();
+            inputTerms = index.queryTerms(input);
+            List<FAQIndex.Entry> approximate = index.approximateCandidates(inputTerms);
+            FAQMatch approximateMatch = first(topMatches(inputTerms, approximate, 1, DEFAULT_THRESHOLD));
+            long end = System.nanoTime();
+            
+            exactNanos += middle - start;
+            approximateNanos += end - middle;
+            exactCandidates += exact.size();
+            approximateCandidates += approximate.size();
+            if (exactMatch != null) {
+                exactMatches++;
+                if (approximateMatch != null && approximateMatch.getFaq() == exactMatch.getFaq()) {
+                    foundMatches++;
+                }
+            }
+        }
+        int size = Math.max(1, sample.size());
+        return new MatchEvaluation(sample.size(), exactMatches, foundMatches,
+            exactNanos / 1000.0 / size, approximateNanos / 1000.0 / size,
+            (double) exactCandidates / size, (double) approximateCandidates / size);
+    }
+    
+    /**
+     * Score many inputs in parallel on the common fork/join pool, all
+     * against the same version of the corpus. Matches are not counted as
+     * used.
+     *
+     * @return the best match for each input, or null where nothing matched
+     */
+    public List<FAQMatch> scoreBatch(List<String> inputs) {
+        FAQIndex index = this.index;
+        FAQMatch[] matches = new FAQMatch[inputs.size()];
+        ForkJoinPool.commonPool().invoke(new BatchTask(index, inputs, matches, 0, matches.length));
+        return Arrays.asList(matches);
+    }
+    
+    /**
+     * Find the best matches for many inputs in parallel and count them as used
+     */
+    public List<FAQ> findBestMatches(List<String> inputs) {
+        List<FAQ> matches = new ArrayList<>(inputs.size());
+        for (FAQMatch match : scoreBatch(inputs)) {
+            if (match != null) {
+                recordUsage(match.getFaq());
+            }
+            matches.add(match != null ? match.getFaq() : null);
+        }
+        return matches;
+    }
+    
+    /**
+     * Scores a range of a batch, splitting it while it is large
+     */
+    private final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final FAQIndex index;
+        private final List<String> inputs;
+        private final FAQMatch[] matches;
+        private final int from;
+        private final int to;
+        
+        BatchTask(FAQIndex index, List<String> inputs, FAQMatch[] matches, int from, int to) {
+            this.index = index;
+            this.inputs = inputs;
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SLICE) {
+                for (int i = from; i < to; i++) {
+                    matches[i] = match(index, inputs.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(index, inputs, matches, from, middle),
+                new BatchTask(index, inputs, matches, middle, to));
+        }
+    }
+    
+    /**
+     * Score an input against one version of the index
+     */
+    private FAQMatch match(FAQIndex index, String userInput) {
+        if (shards != null) {
+            return shards.match(userInput).getBestMatch();
+        }
+        if (index.size() == 0) {
+            return null;
+        }
+        int[] inputTerms = index.queryTerms(userInput);
+        if (inputTerms.length == 0) {
+            return first(topMatches(index, inputTerms, 1, DEFAULT_THRESHOLD));
+        }
+        
+        // Word for word an FAQ question: it wins unless another FAQ's keywords could outweigh it
+        Scored best = best(inputTerms, index.sameQuestion(inputTerms), null);
+        if (best != null && best.score >= DEFAULT_THRESHOLD
+                && best.score > otherQuestionBound(inputTerms.length)) {
+            return new FAQMatch(best.entry.faq, best.score);
+        }
+        
+        // The best of the most used FAQs is a score the search has to reach
+        best = best(inputTerms, tierEntries(index), best);
+        double minScore = DEFAULT_THRESHOLD;
+        if (best != null && best.score > minScore) {
+            minScore = best.score;
+        }
+        FAQMatch found = first(topMatches(index, inputTerms, 1, minScore));
+        if (best == null || best.score < DEFAULT_THRESHOLD) {
+            return found;
+        }
+        // Approximate engines may miss the FAQs already scored
+        if (found == null || found.getScore() < best.score
+                || (found.getScore() == best.score && index.entry(found.getFaq()).sequence > best.entry.sequence)) {
+            return new FAQMatch(best.entry.faq, best.score);
+        }
+        return found;
+    }
+    
+    /**
+     * Score candidates in any order and keep the best, or the earliest in
+     * corpus order among equal scores
+     */
+    private Scored best(int[] inputTerms, List<FAQIndex.Entry> candidates, Scored best) {
+        for (FAQIndex.Entry candidate : candidates) {
+            double score = score(inputTerms, candidate);
+            if (best == null || score > best.score
+                    || (score == best.score && candidate.sequence < best.entry.sequence)) {
+                best = new Scored(candidate, score);
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Highest combined score of an FAQ whose question terms differ from
+     * the given number of input terms: at best it has one term more, all
+     * the others shared, and matching keywords
+     */
+    private static double otherQuestionBound(int inputSize) {
+        return QUESTION_WEIGHT * inputSize / (inputSize + 1) + KEYWORD_WEIGHT;
+    }
+    
+    /**
+     * Entries of the usage tier's members in one version of the index,
+     * kept until either changes
+     */
+    private List<FAQIndex.Entry> tierEntries(FAQIndex index) {
+        TierEntries cached = tierEntries;
+        long tierVersion = usageTier.version();
+        if (cached != null && cached.index == index && cached.tierVersion == tierVersion) {
+            return cached.entries;
+        }
+        List<FAQIndex.Entry> entries = new ArrayList<>();
+        for (FAQ faq : usageTier.members()) {
+            FAQIndex.Entry entry = index.entry(faq);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        tierEntries = new TierEntries(index, tierVersion, entries);
+        return entries;
+    }
+    
+    private static final class TierEntries {
+        final FAQIndex index;
+        final long tierVersion;
+        final List<FAQIndex.Entry> entries;
+        
+        TierEntries(FAQIndex index, long tierVersion, List<FAQIndex.Entry> entries) {
+            this.index = index;
+            this.tierVersion = tierVersion;
+            this.entries = entries;
+        }
+    }
+    
+    private static FAQMatch first(List<FAQMatch> matches) {
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+    
+    /**
+     * Score an input against one version of the index, keeping the k best
+     * matches in a bounded heap
+     */
+    private List<FAQMatch> topMatches(FAQIndex index, String userInput, int k, double minScore) {
+        if (index.size() == 0 || k <= 0) {
+            return Collections.emptyList();
+        }
+        
+        // Tokenize the input once; FAQ terms were tokenized when indexed
+        return topMatches(index, index.queryTerms(userInput), k, minScore);
+    }
+    
+    private List<FAQMatch> topMatches(FAQIndex index, int[] inputTerms, int k, double minScore) {
+        // Only FAQs sharing a token with the input can reach the threshold
+        List<FAQIndex.Entry> candidates;
+        switch (engine) {
+            case MINHASH:
+                candidates = index.approximateCandidates(inputTerms);
+                break;
+            case BITVECTOR:
+                candidates = index.bitVectorCandidates(inputTerms, QUESTION_WEIGHT, KEYWORD_WEIGHT, minScore);
+                break;
+            default:
+                // The combined score is at most the share of input terms an FAQ contains
+                int minOverlap = (int) Math.ceil(minScore * inputTerms.length - 1e-9);
+                candidates = index.candidates(inputTerms, inputTerms.length - Math.max(1, minOverlap) + 1);
+                break;
+        }
+        return topMatches(inputTerms, candidates, k, minScore);
+    }
+    
+    /**
+     * Score candidates given in corpus order
+     */
+    private List<FAQMatch> topMatches(int[] inputTerms, List<FAQIndex.Entry> candidates, int k, double minScore) {
+        // Worst match on top; among equal scores the later FAQ is worse
+        PriorityQueue<Scored> heap = new PriorityQueue<>(Math.min(k, 64) + 1,
+            Comparator.comparingDouble((Scored scored) -> scored.score)
+                .thenComparing(scored -> scored.entry.sequence, Comparator.reverseOrder()));
+        
+        for (FAQIndex.Entry candidate : candidates) {
+            // Candidates come in corpus order, so a later FAQ must score strictly higher
+            double bar = heap.size() < k ? 0.0 : heap.peek().score;
             
-            // Calculate similarity with keywords
-            double keywordScore = 0.0;
-            if (faq.getKeywords() != null && !faq.getKeywords().isEmpty()) {
-                String keywordString = String.join(" ", faq.getKeywords());
-                keywordScore = nlpProcessor.calculateSimilarity(userInput, keywordString);
+            // Skip FAQs whose sizes alone rule out beating the bar
+            double bound = QUESTION_WEIGHT * similarityBound(inputTerms.length, candidate.questionTerms.length);
+            if (candidate.hasKeywords) {
+                bound += KEYWORD_WEIGHT * similarityBound(inputTerms.length, candidate.keywordTerms.length);
+            }
+            if (bound < minScore || bound <= bar) {
+                continue;
             }
             
-            // Combined score (weighted average)
-            double combinedScore = (questionScore * 0.7) + (keywordScore * 0.3);
+            double combinedScore = score(inputTerms, candidate);
             
-            if (combinedScore > bestScore && combinedScore >= threshold) {
-                bestScore = combinedScore;
-                bestMatch = faq;
+            if (combinedScore > bar && combinedScore >= minScore) {
+                heap.add(new Scored(candidate, combinedScore));
+                if (heap.size() > k) {
+                    heap.poll();
+                }
             }
         }
         
-        if (bestMatch != null) {
-            bestMatch.incrementUsageCount();
-            storage.saveFAQs();
+        FAQMatch[] ranked = new FAQMatch[heap.size()];
+        for (int i = ranked.length - 1; i >= 0; i--) {
+            Scored scored = heap.poll();
+            ranked[i] = new FAQMatch(scored.entry.faq, scored.score);
+        }
+        return Arrays.asList(ranked);
+    }
+    
+    private double score(int[] inputTerms, FAQIndex.Entry candidate) {
+        // Calculate similarity with the question
+        double questionScore = nlpProcessor.calculateSimilarity(inputTerms, candidate.questionTerms);
+        
+        // Calculate similarity with keywords
+        double keywordScore = 0.0;
+        if (candidate.hasKeywords) {
+            keywordScore = nlpProcessor.calculateSimilarity(inputTerms, candidate.keywordTerms);
+        }
+        
+        // Combined score (weighted average)
+        return (questionScore * QUESTION_WEIGHT) + (keywordScore * KEYWORD_WEIGHT);
+    }
+    
+    /**
+     * Upper bound of the Jaccard similarity of two sets with the given
+     * sizes: the intersection is at most the smaller set and the union at
+     * least the larger one
+     */
+    private static double similarityBound(int size1, int size2) {
+        if (size1 == 0 && size2 == 0) {
+            return 1.0;
         }
+        return (double) Math.min(size1, size2) / Math.max(size1, size2);
+    }
+    
+    private static final class Scored {
+        final FAQIndex.Entry entry;
+        final double score;
         
-        return bestMatch;
+        Scored(FAQIndex.Entry entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
     }
     
     /**
-     * Get all FAQs
+     * Get all FAQs of the current version of the corpus, in corpus order,
+     * as a read-only list that does not change afterwards. Nothing is
+     * copied, and it never waits for a change being saved.
      */
     public List<FAQ> getAllFAQs() {
-        return storage.getAllFAQs();
+        return index.faqs();
+    }
+    
+    /**
+     * Number of FAQs in the current version of the corpus
+     */
+    public int getCorpusSize() {
+        return index.size();
+    }
+    
+    /**
+     * Get one page of the FAQs whose question or keywords contain a word
+     * starting with each word of the filter, in corpus order. A filter
+     * without words pages through all FAQs.
+     *
+     * Matching words are looked up in a sorted term list and their FAQs
+     * in the index, so searching does not scan the corpus. The last search
+     * is kept, so paging through its results does not search again.
+     */
+    public FAQPage searchFAQs(String filter, int offset, int limit) {
+        List<String> words = filter == null ? Collections.emptyList() : nlpProcessor.tokenize(filter);
+        if (words.isEmpty()) {
+            return page(index.faqs(), offset, limit);
+        }
+        
+        FAQIndex current = index;
+        Search search = lastSearch;
+        if (search == null || search.index != current || !search.words.equals(words)) {
+            search = new Search(current, words, search(current, words));
+            lastSearch = search;
+        }
+        if (search.matches == null) {
+            return page(Collections.emptyList(), offset, limit);
+        }
+        int total = search.matches.size();
+        int from = Math.max(0, Math.min(offset, total));
+        List<FAQIndex.Entry> entries = search.matches.range(from, Math.min(total, from + Math.max(0, limit)));
+        List<FAQ> faqs = new ArrayList<>(entries.size());
+        for (FAQIndex.Entry entry : entries) {
+            faqs.add(entry.faq);
+        }
+        return new FAQPage(faqs, from, total);
+    }
+    
+    /**
+     * Find the FAQs matching the words of a filter, or null if a word
+     * starts no term at all
+     */
+    private FilterMatches search(FAQIndex current, List<String> words) {
+        int[][] groups = new int[words.size()][];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = termPrefixes.idsWithPrefix(words.get(i));
+            if (groups[i].length == 0) {
+                return null;
+            }
+        }
+        return current.containingAll(groups);
+    }
+    
+    private static FAQPage page(List<FAQ> faqs, int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, faqs.size()));
+        int to = Math.min(faqs.size(), from + Math.max(0, limit));
+        return new FAQPage(new ArrayList<>(faqs.subList(from, to)), from, faqs.size());
+    }
+    
+    /**
+     * FAQs found for the words of a filter in one version of the index
+     */
+    private static final class Search {
+        final FAQIndex index;
+        final List<String> words;
+        final FilterMatches matches;
+        
+        Search(FAQIndex index, List<String> words, FilterMatches matches) {
+            this.index = index;
+            this.words = words;
+            this.matches = matches;
+        }
     }
     
     /**
      * Remove an FAQ
+     *
+     * @return whether there was an FAQ with the question
+     * @throws UncheckedIOException if the removal could not be saved;
+     *         nothing is changed then
+     */
+    public synchronized boolean removeFAQ(String question) {
+        if (shards != null) {
+            boolean removed = shards.remove(question);
+            shardChanges++;
+            return removed;
+        }
+        List<FAQ> removed = storage.removeFAQ(question);
+        if (removed.isEmpty()) {
+            return false;
+        }
+        index = index.update(removed, Collections.emptyList());
+        usageTier.remove(removed);
+        fireChange(Collections.emptyList(), removed);
+        return true;
+    }
+    
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+    
+    private void fireChange(List<FAQ> added, List<FAQ> removed) {
+        for (ChangeListener listener : listeners) {
+            try {
+                listener.faqsChanged(added, removed);
+            } catch (RuntimeException e) {
+                System.err.println("Error notifying FAQ change: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Version of the corpus used for matching; it changes whenever an FAQ
+     * is trained or removed. With shards, only changes made through this
+     * trainer are seen.
      */
-    public void removeFAQ(String question) {
-        storage.removeFAQ(question);
-        storage.saveFAQs();
+    public long getCorpusVersion() {
+        return shards != null ? shardChanges : index.version();
+    }
+    
+    /**
+     * Close the connections to the shards, if any
+     */
+    public void close() {
+        if (shards != null) {
+            shards.close();
+        }
     }
     
     /**
      * Initialize with default FAQs
      */
-    public void initializeDefaultFAQs() {
-        if (storage.getAllFAQs().isEmpty()) {
+    public synchronized void initializeDefaultFAQs() {
+        // Shards are seeded where they are created
+        if (shards == null && index.size() == 0) {
             trainFAQ("What is your name?", "I am an AI chatbot designed to help you with various questions and tasks.");
             trainFAQ("What can you do?", "I can answer questions, have conversations, learn from FAQs, and assist you with various tasks.");
             trainFAQ("How do you work?", "I use natural language processing and machine learning techniques to understand and respond to your messages.");
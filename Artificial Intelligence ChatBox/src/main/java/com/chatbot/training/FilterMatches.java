@@ -0,0 +1,109 @@
+package com.chatbot.training;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FAQs matching a filter in one version of a {@link FAQIndex}, in corpus
+ * order.
+ *
+ * Base FAQs are kept as a bit set over the base in corpus order and only
+ * the requested range is turned into entries, so a filter matching most of
+ * a large corpus costs a few bits per FAQ rather than a list of them. A
+ * count of the matches before each word of the set finds the word holding
+ * any position by binary search.
+ */
+final class FilterMatches {
+    
+    private final FAQIndex index;
+    private final long[] bits;
+    private final int[] before;
+    private final int baseCount;
+    private final List<FAQIndex.Entry> added;
+    
+    /**
+     * @param index the version the matches were found in
+     * @param bits matching base entries, by offset in the base; see {@link FAQIndex#baseEntry(int)}
+     * @param added matching entries added after the base, in corpus order
+     */
+    FilterMatches(FAQIndex index, long[] bits, List<FAQIndex.Entry> added) {
+        this.index = index;
+        this.bits = bits;
+        this.added = added;
+        this.before = new int[bits.length];
+        int count = 0;
+        for (int word = 0; word < bits.length; word++) {
+            before[word] = count;
+            count += Long.bitCount(bits[word]);
+        }
+        this.baseCount = count;
+    }
+    
+    /**
+     * The matching entry at a position
+     */
+    FAQIndex.Entry get(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position " + position + " of " + size());
+        }
+        if (position >= baseCount) {
+            return added.get(position - baseCount);
+        }
+        int word = wordOf(position);
+        long remaining = bits[word];
+        for (int i = before[word]; i < position; i++) {
+            remaining &= remaining - 1;
+        }
+        return index.baseEntry((word << 6) + Long.numberOfTrailingZeros(remaining));
+    }
+    
+    int size() {
+        return baseCount + added.size();
+    }
+    
+    /**
+     * Matching entries from one position to another, exclusive
+     */
+    List<FAQIndex.Entry> range(int from, int to) {
+        List<FAQIndex.Entry> entries = new ArrayList<>(Math.max(0, to - from));
+        int position = from;
+        if (position < baseCount) {
+            int word = wordOf(position);
+            long remaining = bits[word];
+            for (int i = before[word]; i < position; i++) {
+                remaining &= remaining - 1;
+            }
+            while (position < to && position < baseCount) {
+                while (remaining == 0) {
+                    remaining = bits[++word];
+                }
+                int bit = (word << 6) + Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                entries.add(index.baseEntry(bit));
+                position++;
+            }
+        }
+        for (; position < to; position++) {
+            entries.add(added.get(position - baseCount));
+        }
+        return entries;
+    }
+    
+    /**
+     * The word of the bit set holding the base match at a position: the
+     * last word with no more matches before it
+     */
+    private int wordOf(int position) {
+        int low = 0;
+        int high = bits.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (before[middle] <= position) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+}
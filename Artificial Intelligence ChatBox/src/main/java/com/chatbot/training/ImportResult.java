@@ -0,0 +1,68 @@
+package com.chatbot.training;
+
+/**
+ * Outcome of importing a corpus file
+ */
+public class ImportResult {
+    
+    private final long rows;
+    private final long imported;
+    private final long rejected;
+    private final long replaced;
+    private final long duplicates;
+    private final double seconds;
+    
+    ImportResult(long rows, long imported, long rejected, long replaced, long duplicates, double seconds) {
+        this.rows = rows;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.replaced = replaced;
+        this.duplicates = duplicates;
+        this.seconds = seconds;
+    }
+    
+    /**
+     * Rows read from the file
+     */
+    public long getRows() {
+        return rows;
+    }
+    
+    /**
+     * FAQs in the corpus taken from the file
+     */
+    public long getImported() {
+        return imported;
+    }
+    
+    /**
+     * Rows that were not valid FAQs
+     */
+    public long getRejected() {
+        return rejected;
+    }
+    
+    /**
+     * FAQs already in the corpus that an imported FAQ replaced
+     */
+    public long getReplaced() {
+        return replaced;
+    }
+    
+    /**
+     * Rows replaced by a later row of the file with the same question
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+    
+    public double getSeconds() {
+        return seconds;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%,d rows in %.1f s: %,d FAQs imported, %,d rejected, %,d replaced, %,d duplicates in the file",
+            rows, seconds, imported, rejected, replaced, duplicates);
+    }
+}
@@ -0,0 +1,38 @@
+package com.chatbot.training;
+
+import java.util.Locale;
+
+/**
+ * How {@link FAQTrainer} finds the FAQs to score for an input
+ */
+public enum MatchEngine {
+    
+    /**
+     * Score every FAQ sharing a term with the input; always finds the best match
+     */
+    EXACT,
+    
+    /**
+     * Score only FAQs whose MinHash signature shares a band with the input's.
+     * Much faster on very large corpora, but may miss the best match.
+     */
+    MINHASH,
+    
+    /**
+     * Scan hashed bit vectors of every FAQ and score those that may reach
+     * the threshold; finds the same matches as {@link #EXACT}, and is faster
+     * for mid-sized corpora and inputs full of common tokens
+     */
+    BITVECTOR;
+    
+    /**
+     * Parse an engine name, ignoring case
+     */
+    public static MatchEngine parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown match engine: " + name);
+        }
+    }
+}
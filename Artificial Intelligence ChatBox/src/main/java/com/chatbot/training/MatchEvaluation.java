@@ -0,0 +1,87 @@
+package com.chatbot.training;
+
+/**
+ * How approximate matching compares with exact matching on a sample of inputs
+ */
+public class MatchEvaluation {
+    
+    private final int sampleSize;
+    private final int exactMatches;
+    private final int foundMatches;
+    private final double exactMicros;
+    private final double approximateMicros;
+    private final double exactCandidates;
+    private final double approximateCandidates;
+    
+    MatchEvaluation(int sampleSize, int exactMatches, int foundMatches, double exactMicros,
+            double approximateMicros, double exactCandidates, double approximateCandidates) {
+        this.sampleSize = sampleSize;
+        this.exactMatches = exactMatches;
+        this.foundMatches = foundMatches;
+        this.exactMicros = exactMicros;
+        this.approximateMicros = approximateMicros;
+        this.exactCandidates = exactCandidates;
+        this.approximateCandidates = approximateCandidates;
+    }
+    
+    public int getSampleSize() {
+        return sampleSize;
+    }
+    
+    /**
+     * Number of inputs exact matching found an FAQ for
+     */
+    public int getExactMatches() {
+        return exactMatches;
+    }
+    
+    /**
+     * Number of those inputs for which approximate matching found the same FAQ
+     */
+    public int getFoundMatches() {
+        return foundMatches;
+    }
+    
+    /**
+     * Share of exact matches that approximate matching also found, between 0 and 1
+     */
+    public double getRecall() {
+        return exactMatches == 0 ? 1.0 : (double) foundMatches / exactMatches;
+    }
+    
+    /**
+     * Mean time to match one input exactly, in microseconds
+     */
+    public double getExactMicros() {
+        return exactMicros;
+    }
+    
+    /**
+     * Mean time to match one input approximately, in microseconds
+     */
+    public double getApproximateMicros() {
+        return approximateMicros;
+    }
+    
+    /**
+     * Mean number of FAQs scored per input by exact matching
+     */
+    public double getExactCandidates() {
+        return exactCandidates;
+    }
+    
+    /**
+     * Mean number of FAQs scored per input by approximate matching
+     */
+    public double getApproximateCandidates() {
+        return approximateCandidates;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("recall %.4f (%d of %d matches, %d inputs); "
+                + "exact %.1f us with %.0f candidates, approximate %.1f us with %.0f candidates",
+            getRecall(), foundMatches, exactMatches, sampleSize,
+            exactMicros, exactCandidates, approximateMicros, approximateCandidates);
+    }
+}
@@ -0,0 +1,78 @@
+package com.chatbot.training;
+
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures of term sets, grouped into bands for locality
+ * sensitive hashing.
+ *
+ * Each of bands x rows hash functions keeps the smallest hash of any term
+ * in a set; two sets agree on one such minimum with a probability equal to
+ * their Jaccard similarity. The minima of a band are hashed into a single
+ * band key, so two sets with similarity s share at least one band key with
+ * probability 1 - (1 - s^rows)^bands. More bands raise recall for dissimilar
+ * sets; more rows make each band more selective and buckets smaller.
+ */
+final class MinHash {
+    
+    // Fixed, so signatures do not depend on when the index was built
+    private static final long SEED = 0x5DEECE66DL;
+    
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+    
+    MinHash(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("MinHash needs at least one band and one row: " + bands + " x " + rows);
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+    
+    int bands() {
+        return bands;
+    }
+    
+    int rows() {
+        return rows;
+    }
+    
+    /**
+     * Compute one key per band for a set of term ids
+     */
+    int[] bandKeys(int[] terms) {
+        int[] keys = new int[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int row = 0; row < rows; row++) {
+                long seed = seeds[band * rows + row];
+                int min = Integer.MAX_VALUE;
+                for (int term : terms) {
+                    min = Math.min(min, hash(term, seed));
+                }
+                key = mix(key * 31 + min);
+            }
+            keys[band] = (int) key;
+        }
+        return keys;
+    }
+    
+    private static int hash(int term, long seed) {
+        return (int) (mix(term ^ seed) >>> 32);
+    }
+    
+    /**
+     * Finalizer of SplitMix64, a cheap hash with good avalanche
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,524 @@
+package com.chatbot.training;
+
+import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
+import com.chatbot.storage.FAQStorage;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Matches inputs against a corpus partitioned across shard worker
+ * processes, each holding the FAQs whose questions hash to it, see
+ * {@link FAQStorage#shardOf}.
+ *
+ * Every input goes to all shards at once. Each shard returns its own best
+ * matches, and the merged ones are held to the score threshold again, so
+ * the result is the best match of the whole corpus. A shard that does not
+ * answer within the timeout, or cannot be reached, is left out and the
+ * result is marked partial instead of failing. Training, removal and usage
+ * go only to the shard owning the question, and a batch of FAQs is split
+ * into one batch per shard.
+ *
+ * Each shard is reached through one socket, on which requests are
+ * pipelined as JSON lines and answered in any order, see
+ * {@link com.chatbot.server.ShardWorker}. Requests are queued and written
+ * by a thread of the connection, so a shard that stops reading never
+ * blocks a caller; once its queue is full, further requests fail at once
+ * as if the shard had not answered. A broken connection is reopened by a
+ * later request, at most once a second.
+ */
+public class ShardCoordinator implements Closeable {
+    
+    private static final long RECONNECT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int SEND_QUEUE_CAPACITY = 1024;
+    
+    private final Shard[] shards;
+    private final long timeoutMillis;
+    private final AtomicLong nextId = new AtomicLong();
+    
+    /**
+     * @param addresses shards in order; FAQs are assigned by their position
+     * @param timeoutMillis how long to wait for the shards' answers
+     */
+    public ShardCoordinator(List<InetSocketAddress> addresses, long timeoutMillis) {
+        if (addresses.isEmpty()) {
+            throw new IllegalArgumentException("No shards given");
+        }
+        this.shards = new Shard[addresses.size()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, addresses.get(i));
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    /**
+     * Parse a comma-separated list of host:port shard addresses
+     */
+    public static List<InetSocketAddress> parseAddresses(String list) {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String address : list.split(",")) {
+            address = address.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            int colon = address.lastIndexOf(':');
+            try {
+                if (colon <= 0) {
+                    throw new NumberFormatException();
+                }
+                addresses.add(new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1))));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Shard address is not host:port: " + address);
+            }
+        }
+        return addresses;
+    }
+    
+    public int getShardCount() {
+        return shards.length;
+    }
+    
+    /**
+     * Find the best match with a score of at least the default threshold
+     */
+    public ShardedMatches match(String input) {
+        return topMatches(input, 1, FAQTrainer.DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Find the k best matches with a score of at least minScore among the
+     * shards that answer in time
+     */
+    public ShardedMatches topMatches(String input, int k, double minScore) {
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "match");
+        request.addProperty("input", input);
+        request.addProperty("k", k);
+        request.addProperty("minScore", minScore);
+        List<CompletableFuture<JsonObject>> replies = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            replies.add(shard.send(request));
+        }
+        
+        // All shards share one deadline, so a slow shard delays the result by the timeout at most
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<FAQMatch> merged = new ArrayList<>();
+        int answered = 0;
+        for (int i = 0; i < shards.length; i++) {
+            JsonObject reply = shards[i].await(replies.get(i), deadline);
+            if (reply == null) {
+                continue;
+            }
+            answered++;
+            for (JsonElement match : reply.getAsJsonArray("matches")) {
+                FAQMatch parsed = parseMatch(match.getAsJsonObject());
+                if (parsed.getScore() >= minScore) {
+                    merged.add(parsed);
+                }
+            }
+        }
+        // Stable, so equal scores stay in shard order and each shard's own order
+        merged.sort(Comparator.comparingDouble(FAQMatch::getScore).reversed());
+        if (merged.size() > k) {
+            merged = new ArrayList<>(merged.subList(0, Math.max(0, k)));
+        }
+        return new ShardedMatches(merged, shards.length, answered);
+    }
+    
+    /**
+     * Train an FAQ on the shard owning its question
+     *
+     * @return the FAQs of that shard whose questions were near duplicates of
+     *         the new one, most similar first
+     * @throws UncheckedIOException if the shard does not confirm the change in time
+     */
+    public List<FAQMatch> train(String question, String answer) {
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "train");
+        request.addProperty("question", question);
+        request.addProperty("answer", answer);
+        JsonArray duplicates = change(question, request).getAsJsonArray("duplicates");
+        List<FAQMatch> parsed = new ArrayList<>();
+        if (duplicates != null) {
+            for (JsonElement duplicate : duplicates) {
+                parsed.add(parseMatch(duplicate.getAsJsonObject()));
+            }
+        }
+        return parsed;
+    }
+    
+    /**
+     * Train many FAQs, sending each shard the batch of those whose
+     * questions it owns, all at once. The shards get the timeout once per
+     * thousand FAQs to confirm.
+     *
+     * @return the FAQs that were replaced: those of the shards, and any of
+     *         the given ones replaced by a later one with the same question
+     * @throws UncheckedIOException if a shard does not confirm its batch in
+     *         time; the shards that did keep theirs
+     */
+    public List<FAQ> trainAll(List<FAQ> faqs) {
+        List<List<FAQ>> batches = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (FAQ faq : faqs) {
+            batches.get(FAQStorage.shardOf(faq.getQuestion(), shards.length)).add(faq);
+        }
+        List<CompletableFuture<JsonObject>> replies = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            if (batches.get(i).isEmpty()) {
+                replies.add(null);
+                continue;
+            }
+            JsonArray batch = new JsonArray();
+            for (FAQ faq : batches.get(i)) {
+                batch.add(toJson(faq));
+            }
+            JsonObject request = new JsonObject();
+            request.addProperty("op", "trainAll");
+            request.add("faqs", batch);
+            replies.add(shards[i].send(request));
+        }
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis * (1 + faqs.size() / 1000));
+        List<FAQ> replaced = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (replies.get(i) == null) {
+                continue;
+            }
+            JsonObject reply = shards[i].await(replies.get(i), deadline);
+            if (reply == null) {
+                failed.add(shards[i].number + " at " + shards[i].address);
+                continue;
+            }
+            for (JsonElement position : reply.getAsJsonArray("superseded")) {
+                replaced.add(batches.get(i).get(position.getAsInt()));
+            }
+            for (JsonElement faq : reply.getAsJsonArray("replaced")) {
+                replaced.add(parseFAQ(faq.getAsJsonObject()));
+            }
+        }
+        if (!failed.isEmpty()) {
+            throw new UncheckedIOException(new IOException(
+                "Shard " + String.join(", ", failed) + " did not confirm the FAQs"));
+        }
+        return replaced;
+    }
+    
+    /**
+     * Remove an FAQ from the shard owning its question
+     *
+     * @return whether the shard had an FAQ with the question
+     * @throws UncheckedIOException if the shard does not confirm the change in time
+     */
+    public boolean remove(String question) {
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "remove");
+        request.addProperty("question", question);
+        JsonElement removed = change(question, request).get("removed");
+        return removed != null && removed.getAsBoolean();
+    }
+    
+    /**
+     * Count an FAQ as used on the shard owning its question, without
+     * waiting for the shard
+     */
+    public void recordUsage(String question) {
+        JsonObject request = new JsonObject();
+        request.addProperty("op", "use");
+        request.addProperty("question", question);
+        owner(question).send(request);
+    }
+    
+    private JsonObject change(String question, JsonObject request) {
+        Shard shard = owner(question);
+        CompletableFuture<JsonObject> reply = shard.send(request);
+        JsonObject result = shard.await(reply, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        if (result == null) {
+            throw new UncheckedIOException(new IOException(
+                "Shard " + shard.number + " at " + shard.address + " did not confirm the change"));
+        }
+        return result;
+    }
+    
+    private Shard owner(String question) {
+        return shards[FAQStorage.shardOf(question, shards.length)];
+    }
+    
+    private static FAQMatch parseMatch(JsonObject match) {
+        return new FAQMatch(parseFAQ(match), match.get("score").getAsDouble());
+    }
+    
+    /**
+     * Read an FAQ in the form of {@link #toJson(FAQ)}
+     */
+    public static FAQ parseFAQ(JsonObject object) {
+        List<String> keywords = new ArrayList<>();
+        JsonArray array = object.getAsJsonArray("keywords");
+        if (array != null) {
+            for (JsonElement keyword : array) {
+                keywords.add(keyword.getAsString());
+            }
+        }
+        return new FAQ(object.get("question").getAsString(), object.get("answer").getAsString(), keywords,
+            object.get("usageCount").getAsInt());
+    }
+    
+    /**
+     * An FAQ as sent between the coordinator and the shards: its question,
+     * answer, keywords and usage count
+     */
+    public static JsonObject toJson(FAQ faq) {
+        JsonObject object = new JsonObject();
+        object.addProperty("question", faq.getQuestion());
+        object.addProperty("answer", faq.getAnswer());
+        JsonArray keywords = new JsonArray();
+        if (faq.getKeywords() != null) {
+            for (String keyword : faq.getKeywords()) {
+                keywords.add(keyword);
+            }
+        }
+        object.add("keywords", keywords);
+        object.addProperty("usageCount", faq.getUsageCount());
+        return object;
+    }
+    
+    /**
+     * Close the connections to all shards; requests still waiting fail
+     */
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.close();
+        }
+    }
+    
+    /**
+     * One shard worker and the connection to it, if open
+     */
+    private final class Shard {
+        final int number;
+        final InetSocketAddress address;
+        private Connection connection;
+        private IOException connectFailure;
+        private long reconnectAt;
+        private boolean available = true;
+        
+        Shard(int number, InetSocketAddress address) {
+            this.number = number;
+            this.address = address;
+        }
+        
+        /**
+         * Send a request without waiting for it to be written; the reply
+         * fails at once if the shard cannot be reached or is not keeping up
+         */
+        synchronized CompletableFuture<JsonObject> send(JsonObject request) {
+            CompletableFuture<JsonObject> reply = new CompletableFuture<>();
+            try {
+                if (connection == null || connection.closed) {
+                    connection = null;
+                    if (connectFailure != null && System.nanoTime() - reconnectAt < 0) {
+                        throw connectFailure;
+                    }
+                    try {
+                        connection = new Connection(this);
+                        connectFailure = null;
+                    } catch (IOException e) {
+                        connectFailure = e;
+                        reconnectAt = System.nanoTime() + RECONNECT_NANOS;
+                        throw e;
+                    }
+                }
+                connection.send(request, reply);
+            } catch (IOException e) {
+                if (connection != null) {
+                    connection.close(e);
+                    connection = null;
+                }
+                reply.completeExceptionally(e);
+            }
+            return reply;
+        }
+        
+        /**
+         * Wait for a reply until the deadline, or return null if the shard
+         * failed to give one
+         */
+        JsonObject await(CompletableFuture<JsonObject> reply, long deadline) {
+            try {
+                JsonObject result = reply.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (result.has("error")) {
+                    System.err.printf("Shard %d at %s failed: %s%n", number, address, result.get("error").getAsString());
+                    return null;
+                }
+                setAvailable(true, null);
+                return result;
+            } catch (TimeoutException e) {
+                reply.cancel(false);
+                setAvailable(false, "no answer within " + timeoutMillis + " ms");
+            } catch (ExecutionException e) {
+                setAvailable(false, e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                reply.cancel(false);
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+        
+        /**
+         * Report when the shard stops or starts answering, rather than every request it misses
+         */
+        private synchronized void setAvailable(boolean available, String reason) {
+            if (available != this.available) {
+                this.available = available;
+                if (available) {
+                    System.err.printf("Shard %d at %s is answering again%n", number, address);
+                } else {
+                    System.err.printf("Shard %d at %s is unavailable: %s%n", number, address, reason);
+                }
+            }
+        }
+        
+        synchronized void close() {
+            if (connection != null) {
+                connection.close(new IOException("Coordinator closed"));
+                connection = null;
+            }
+        }
+    }
+    
+    /**
+     * A request waiting to be written, and its reply
+     */
+    private static final class Outbound {
+        final String line;
+        final CompletableFuture<JsonObject> reply;
+        
+        Outbound(String line, CompletableFuture<JsonObject> reply) {
+            this.line = line;
+            this.reply = reply;
+        }
+    }
+    
+    /**
+     * A socket to a shard, the requests queued for it and those sent on it
+     * awaiting their replies
+     */
+    private final class Connection {
+        private final Socket socket;
+        private final Writer out;
+        private final Thread writer;
+        private final BlockingQueue<Outbound> outbound = new ArrayBlockingQueue<>(SEND_QUEUE_CAPACITY);
+        private final Map<Long, CompletableFuture<JsonObject>> pending = new ConcurrentHashMap<>();
+        volatile boolean closed;
+        
+        Connection(Shard shard) throws IOException {
+            this.socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(shard.address, (int) Math.min(Integer.MAX_VALUE, Math.max(1, timeoutMillis)));
+                this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                // Started first: a failing reader closes the connection, stopping the writer
+                this.writer = new Thread(this::write, "shard-" + shard.number + "-writer");
+                writer.setDaemon(true);
+                writer.start();
+                Thread reader = new Thread(() -> read(in), "shard-" + shard.number + "-reader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        
+        /**
+         * Queue a request for the writer. Called with the shard locked, as
+         * the request is shared by all shards and given each one's id here.
+         */
+        void send(JsonObject request, CompletableFuture<JsonObject> reply) throws IOException {
+            long id = nextId.incrementAndGet();
+            pending.put(id, reply);
+            reply.whenComplete((result, error) -> pending.remove(id));
+            if (closed) {
+                throw new IOException("Connection closed");
+            }
+            request.addProperty("id", id);
+            if (!outbound.offer(new Outbound(request.toString(), reply))) {
+                reply.completeExceptionally(new IOException(SEND_QUEUE_CAPACITY + " requests waiting to be sent"));
+            }
+        }
+        
+        /**
+         * Write queued requests until the connection closes, flushing
+         * whenever the queue runs empty. Requests given up on meanwhile are
+         * not sent.
+         */
+        private void write() {
+            try {
+                while (!closed) {
+                    Outbound next = outbound.take();
+                    if (!next.reply.isDone()) {
+                        out.write(next.line);
+                        out.write('\n');
+                    }
+                    if (outbound.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Closed
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+        
+        private void read(BufferedReader in) {
+            IOException failure;
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    JsonObject reply = JsonParser.parseString(line).getAsJsonObject();
+                    JsonElement id = reply.get("id");
+                    CompletableFuture<JsonObject> request = id == null || id.isJsonNull() ? null : pending.get(id.getAsLong());
+                    if (request != null) {
+                        request.complete(reply);
+                    }
+                }
+                failure = new EOFException("Connection closed by the shard");
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException("Malformed reply: " + e.getMessage(), e);
+            }
+            close(failure);
+        }
+        
+        void close(IOException failure) {
+            closed = true;
+            writer.interrupt();
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+            for (CompletableFuture<JsonObject> reply : pending.values()) {
+                reply.completeExceptionally(failure);
+            }
+        }
+    }
+}
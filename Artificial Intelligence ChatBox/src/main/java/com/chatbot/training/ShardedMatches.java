@@ -0,0 +1,53 @@
+package com.chatbot.training;
+
+import com.chatbot.model.FAQMatch;
+import java.util.List;
+
+/**
+ * Matches merged from the shards of a partitioned corpus, and how many
+ * shards contributed to them
+ */
+public class ShardedMatches {
+    
+    private final List<FAQMatch> matches;
+    private final int shards;
+    private final int answeredShards;
+    
+    ShardedMatches(List<FAQMatch> matches, int shards, int answeredShards) {
+        this.matches = matches;
+        this.shards = shards;
+        this.answeredShards = answeredShards;
+    }
+    
+    /**
+     * Best matches first; among equal scores, those of lower shards first
+     */
+    public List<FAQMatch> getMatches() {
+        return matches;
+    }
+    
+    /**
+     * The best match, or null if no shard that answered had one
+     */
+    public FAQMatch getBestMatch() {
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+    
+    public int getShards() {
+        return shards;
+    }
+    
+    /**
+     * Number of shards that answered in time
+     */
+    public int getAnsweredShards() {
+        return answeredShards;
+    }
+    
+    /**
+     * Whether some shards did not answer, so a better match may have been missed
+     */
+    public boolean isPartial() {
+        return answeredShards < shards;
+    }
+}
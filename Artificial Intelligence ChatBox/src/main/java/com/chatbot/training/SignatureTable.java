@@ -0,0 +1,58 @@
+package com.chatbot.training;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Hash table from the sorted, distinct question term ids of each FAQ to the
+ * FAQ, so a query that is word for word an FAQ question up to case,
+ * punctuation and stop words finds it with one lookup.
+ *
+ * Open addressing over two flat arrays keeps it to a few bytes per FAQ
+ * however large the corpus is. FAQs sharing a signature are all kept, in
+ * corpus order.
+ */
+final class SignatureTable {
+    
+    private final int[] hashes;
+    private final FAQIndex.Entry[] slots;
+    private final int mask;
+    
+    /**
+     * @param entries FAQs in corpus order
+     */
+    SignatureTable(List<FAQIndex.Entry> entries) {
+        int capacity = Integer.highestOneBit(Math.max(4, entries.size() * 2 - 1)) << 1;
+        this.hashes = new int[capacity];
+        this.slots = new FAQIndex.Entry[capacity];
+        this.mask = capacity - 1;
+        for (FAQIndex.Entry entry : entries) {
+            int hash = Arrays.hashCode(entry.questionTerms);
+            int slot = mix(hash) & mask;
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            slots[slot] = entry;
+        }
+    }
+    
+    /**
+     * Add the FAQs whose question terms are exactly the given ones, in
+     * corpus order
+     */
+    void collect(int[] terms, List<FAQIndex.Entry> found) {
+        int hash = Arrays.hashCode(terms);
+        // Probing visits entries of one signature in the order they were inserted
+        for (int slot = mix(hash) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && Arrays.equals(slots[slot].questionTerms, terms)) {
+                found.add(slots[slot]);
+            }
+        }
+    }
+    
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
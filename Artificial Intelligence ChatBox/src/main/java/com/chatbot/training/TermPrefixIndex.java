@@ -0,0 +1,79 @@
+package com.chatbot.training;
+
+import com.chatbot.nlp.TermDictionary;
+import java.util.Arrays;
+
+/**
+ * Finds the terms of a {@link TermDictionary} that start with a prefix.
+ *
+ * Terms are kept sorted, so the terms with a prefix are found by binary
+ * search. The dictionary keeps growing; terms added since the last sort are
+ * checked one by one, and the whole dictionary is sorted again once they
+ * make up a noticeable share of it.
+ */
+final class TermPrefixIndex {
+    
+    private static final int MIN_UNSORTED = 1024;
+    
+    private final TermDictionary dictionary;
+    private String[] sortedTerms;
+    private int[] sortedIds;
+    
+    TermPrefixIndex(TermDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.sortedTerms = new String[0];
+        this.sortedIds = new int[0];
+    }
+    
+    /**
+     * Sorted ids of the terms starting with the prefix
+     */
+    synchronized int[] idsWithPrefix(String prefix) {
+        int size = dictionary.size();
+        if (size - sortedIds.length > Math.max(MIN_UNSORTED, sortedIds.length / 8)) {
+            sort(size);
+        }
+        
+        int from = Arrays.binarySearch(sortedTerms, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int[] ids = new int[16];
+        int count = 0;
+        for (int i = from; i < sortedTerms.length && sortedTerms[i].startsWith(prefix); i++) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = sortedIds[i];
+        }
+        for (int id = sortedIds.length; id < size; id++) {
+            if (dictionary.term(id).startsWith(prefix)) {
+                if (count == ids.length) {
+                    ids = Arrays.copyOf(ids, count * 2);
+                }
+                ids[count++] = id;
+            }
+        }
+        ids = Arrays.copyOf(ids, count);
+        Arrays.sort(ids);
+        return ids;
+    }
+    
+    private void sort(int size) {
+        Integer[] order = new Integer[size];
+        for (int id = 0; id < size; id++) {
+            order[id] = id;
+        }
+        String[] terms = new String[size];
+        for (int id = 0; id < size; id++) {
+            terms[id] = dictionary.term(id);
+        }
+        Arrays.sort(order, (a, b) -> terms[a].compareTo(terms[b]));
+        sortedTerms = new String[size];
+        sortedIds = new int[size];
+        for (int i = 0; i < size; i++) {
+            sortedIds[i] = order[i];
+            sortedTerms[i] = terms[order[i]];
+        }
+    }
+}
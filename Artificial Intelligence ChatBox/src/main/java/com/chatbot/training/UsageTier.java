@@ -0,0 +1,121 @@
+package com.chatbot.training;
+
+import com.chatbot.model.FAQ;
+import java.util.*;
+
+/**
+ * The few FAQs with the highest usage counts.
+ *
+ * Filled from the stored counts and kept current as FAQs are used: an FAQ
+ * whose count passes the least used member takes its place. Reading the
+ * members takes no lock, and each change publishes a new version.
+ */
+final class UsageTier {
+    
+    private static final FAQ[] NO_FAQS = new FAQ[0];
+    
+    private final int capacity;
+    // Most used first as of the last change
+    private volatile FAQ[] members;
+    private volatile long version;
+    
+    UsageTier(int capacity, Collection<FAQ> faqs) {
+        this.capacity = Math.max(0, capacity);
+        PriorityQueue<FAQ> least = new PriorityQueue<>(Math.max(1, this.capacity),
+            Comparator.comparingInt(FAQ::getUsageCount));
+        if (this.capacity > 0) {
+            for (FAQ faq : faqs) {
+                if (faq.getUsageCount() > 0 && (least.size() < this.capacity
+                        || faq.getUsageCount() > least.peek().getUsageCount())) {
+                    least.add(faq);
+                    if (least.size() > this.capacity) {
+                        least.poll();
+                    }
+                }
+            }
+        }
+        FAQ[] initial = least.toArray(NO_FAQS);
+        sortByUsage(initial, initial.length);
+        this.members = initial;
+    }
+    
+    FAQ[] members() {
+        return members;
+    }
+    
+    /**
+     * Changes whenever the members do
+     */
+    long version() {
+        return version;
+    }
+    
+    /**
+     * Take in an FAQ whose usage count just went up, if it now ranks among
+     * the most used
+     */
+    void used(FAQ faq) {
+        FAQ[] current = members;
+        if (capacity == 0 || (current.length == capacity
+                && faq.getUsageCount() <= current[current.length - 1].getUsageCount())) {
+            return;
+        }
+        synchronized (this) {
+            current = members;
+            for (FAQ member : current) {
+                if (member == faq) {
+                    return;
+                }
+            }
+            FAQ[] next = Arrays.copyOf(current, Math.min(capacity, current.length + 1));
+            // Counts move on concurrently, so rank by the current ones
+            sortByUsage(next, current.length);
+            if (next.length == current.length
+                    && faq.getUsageCount() <= next[next.length - 1].getUsageCount()) {
+                return;
+            }
+            next[next.length - 1] = faq;
+            sortByUsage(next, next.length);
+            publish(next);
+        }
+    }
+    
+    /**
+     * Drop FAQs that were removed or replaced
+     */
+    synchronized void remove(Collection<FAQ> removed) {
+        Set<FAQ> gone = Collections.newSetFromMap(new IdentityHashMap<>());
+        gone.addAll(removed);
+        FAQ[] current = members;
+        List<FAQ> kept = new ArrayList<>(current.length);
+        for (FAQ member : current) {
+            if (!gone.contains(member)) {
+                kept.add(member);
+            }
+        }
+        if (kept.size() != current.length) {
+            publish(kept.toArray(NO_FAQS));
+        }
+    }
+    
+    /**
+     * Sort the first FAQs most used first by a snapshot of their counts,
+     * which other threads may be raising meanwhile
+     */
+    private static void sortByUsage(FAQ[] faqs, int length) {
+        long[] keys = new long[length];
+        for (int i = 0; i < length; i++) {
+            keys[i] = (long) -faqs[i].getUsageCount() << 32 | i;
+        }
+        Arrays.sort(keys);
+        FAQ[] sorted = Arrays.copyOf(faqs, length);
+        for (int i = 0; i < length; i++) {
+            faqs[i] = sorted[(int) keys[i]];
+        }
+    }
+    
+    private void publish(FAQ[] next) {
+        members = next;
+        version++;
+    }
+}
@@ -2,34 +2,38 @@ package com.chatbot.ui;
 
 import com.chatbot.core.ChatBotEngine;
 import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQMatch;
 import javafx.application.Platform;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 import javafx.scene.control.*;
-import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
-import javafx.scene.text.Font;
-import javafx.scene.text.Text;
-import javafx.scene.text.TextFlow;
 
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Controller for the ChatBot GUI
+ * Controller for the ChatBot GUI.
+ *
+ * The chat transcript is a list view over a bounded {@link ChatTranscript},
+ * so only the visible messages have nodes however long the conversation
+ * gets. The FAQ list shows one page of an {@link FAQListModel}, loaded in
+ * the background and kept up to date as FAQs are trained and removed.
+ *
+ * Messages, training and deletion run in order on a single worker thread,
+ * so the JavaFX thread never waits for matching or storage. A reply shows
+ * a typing placeholder until it is posted back; sending another message or
+ * clearing the chat cancels replies that have not started yet.
  */
 public class ChatBotController implements Initializable {
     
     @FXML
-    private ScrollPane chatScrollPane;
-    
-    @FXML
-    private VBox chatContainer;
+    private ListView<ChatMessage> chatListView;
     
     @FXML
     private TextField userInputField;
@@ -50,7 +54,19 @@ public class ChatBotController implements Initializable {
     private Button trainButton;
     
     @FXML
-    private ListView<String> faqListView;
+    private TextField faqFilterField;
+    
+    @FXML
+    private Label faqCountLabel;
+    
+    @FXML
+    private ListView<FAQ> faqListView;
+    
+    @FXML
+    private Button previousFAQPageButton;
+    
+    @FXML
+    private Button nextFAQPageButton;
     
     @FXML
     private Button deleteFAQButton;
@@ -59,34 +75,47 @@ public class ChatBotController implements Initializable {
     private TabPane mainTabPane;
     
     private ChatBotEngine chatBot;
-    private ObservableList<String> faqList;
+    private ChatTranscript transcript;
+    private FAQListModel faqList;
+    private ExecutorService worker;
+    // Replies queued on the worker, oldest first
+    private final List<PendingReply> pendingReplies = new ArrayList<>();
     
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         chatBot = new ChatBotEngine();
-        faqList = FXCollections.observableArrayList();
-        faqListView.setItems(faqList);
-        
-        // Initialize chat container
-        chatContainer.setSpacing(10);
-        chatContainer.setPadding(new Insets(10));
-        chatContainer.setStyle("-fx-background-color: #f5f5f5;");
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chatbot-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        faqList = new FAQListModel(chatBot);
+        faqList.setOnPageLoaded(this::updateFAQPaging);
+        faqListView.setItems(faqList.getRows());
+        faqListView.setCellFactory(listView -> new FAQCell());
         
-        // Configure scroll pane
-        chatScrollPane.setFitToWidth(true);
-        chatScrollPane.setVvalue(1.0);
+        // Initialize chat transcript
+        transcript = new ChatTranscript();
+        chatListView.setItems(transcript.getMessages());
+        chatListView.setCellFactory(MessageCell::new);
+        chatListView.setFocusTraversable(false);
+        chatListView.setStyle("-fx-background-color: #f5f5f5; -fx-control-inner-background: #f5f5f5;");
         
         // Set up event handlers
         sendButton.setOnAction(e -> sendMessage());
         clearButton.setOnAction(e -> clearChat());
         trainButton.setOnAction(e -> trainBot());
         deleteFAQButton.setOnAction(e -> deleteFAQ());
+        previousFAQPageButton.setOnAction(e -> faqList.previousPage());
+        nextFAQPageButton.setOnAction(e -> faqList.nextPage());
+        faqFilterField.textProperty().addListener((observable, previous, filter) -> faqList.load(filter, 0));
         
         // Allow Enter key to send message
         userInputField.setOnAction(e -> sendMessage());
         
         // Load FAQs
-        refreshFAQList();
+        updateFAQPaging();
+        faqList.load("", 0);
         
         // Add welcome message
         addBotMessage("Hello! I'm your AI chatbot. How can I help you today?");
@@ -102,60 +131,63 @@ public class ChatBotController implements Initializable {
         addUserMessage(userInput);
         userInputField.clear();
         
-        // Process and get response
-        String response = chatBot.processInput(userInput);
-        
-        // Add bot response
-        addBotMessage(response);
+        // Process in the background behind a placeholder
+        cancelPendingReplies("(Skipped: a newer message was sent.)");
+        PendingReply reply = new PendingReply(addMessage(ChatMessage.Sender.BOT, "Typing..."));
+        pendingReplies.add(reply);
+        worker.execute(() -> {
+            if (!reply.start()) {
+                return;
+            }
+            String response;
+            try {
+                response = chatBot.processInput(userInput);
+            } catch (RuntimeException e) {
+                System.err.println("Error processing message: " + e.getMessage());
+                response = "Sorry, something went wrong while answering.";
+            }
+            String text = response;
+            Platform.runLater(() -> {
+                pendingReplies.remove(reply);
+                transcript.replace(reply.placeholder, text);
+            });
+        });
+    }
+    
+    /**
+     * Cancel the replies that have not started and show why in their place
+     */
+    private void cancelPendingReplies(String note) {
+        for (PendingReply reply : pendingReplies) {
+            if (reply.cancel()) {
+                transcript.replace(reply.placeholder, note);
+            }
+        }
+        pendingReplies.removeIf(PendingReply::isCancelled);
     }
     
     private void addUserMessage(String message) {
-        HBox messageBox = new HBox();
-        messageBox.setAlignment(Pos.CENTER_RIGHT);
-        messageBox.setPadding(new Insets(5, 10, 5, 50));
-        
-        TextFlow textFlow = new TextFlow();
-        Text text = new Text(message);
-        text.setFont(Font.font("Arial", 14));
-        text.setFill(Color.WHITE);
-        textFlow.getChildren().add(text);
-        textFlow.setPadding(new Insets(10, 15, 10, 15));
-        textFlow.setStyle("-fx-background-color: #007bff; -fx-background-radius: 15;");
-        
-        messageBox.getChildren().add(textFlow);
-        chatContainer.getChildren().add(messageBox);
-        
-        scrollToBottom();
+        addMessage(ChatMessage.Sender.USER, message);
     }
     
     private void addBotMessage(String message) {
-        HBox messageBox = new HBox();
-        messageBox.setAlignment(Pos.CENTER_LEFT);
-        messageBox.setPadding(new Insets(5, 50, 5, 10));
-        
-        TextFlow textFlow = new TextFlow();
-        Text text = new Text(message);
-        text.setFont(Font.font("Arial", 14));
-        text.setFill(Color.BLACK);
-        textFlow.getChildren().add(text);
-        textFlow.setPadding(new Insets(10, 15, 10, 15));
-        textFlow.setStyle("-fx-background-color: #ffffff; -fx-background-radius: 15; -fx-border-color: #e0e0e0; -fx-border-radius: 15;");
-        
-        messageBox.getChildren().add(textFlow);
-        chatContainer.getChildren().add(messageBox);
-        
-        scrollToBottom();
+        addMessage(ChatMessage.Sender.BOT, message);
     }
     
-    private void scrollToBottom() {
-        Platform.runLater(() -> {
-            chatScrollPane.setVvalue(1.0);
-        });
+    private ChatMessage addMessage(ChatMessage.Sender sender, String message) {
+        ChatMessage added = transcript.add(sender, message);
+        chatListView.scrollTo(transcript.getMessages().size() - 1);
+        return added;
     }
     
     private void clearChat() {
-        chatContainer.getChildren().clear();
-        chatBot.clearHistory();
+        for (PendingReply reply : pendingReplies) {
+            reply.cancel();
+        }
+        pendingReplies.clear();
+        transcript.clear();
+        // Behind any reply already running, so its turn is cleared too
+        worker.execute(chatBot::clearHistory);
         addBotMessage("Chat cleared. How can I help you?");
     }
     
@@ -168,37 +200,112 @@ public class ChatBotController implements Initializable {
             return;
         }
         
-        chatBot.trainBot(question, answer);
-        trainQuestionField.clear();
-        trainAnswerArea.clear();
-        
-        refreshFAQList();
-        showAlert("Success", "FAQ added successfully!");
+        trainButton.setDisable(true);
+        worker.execute(() -> {
+            try {
+                List<FAQMatch> duplicates = chatBot.trainBot(question, answer);
+                Platform.runLater(() -> {
+                    trainButton.setDisable(false);
+                    trainQuestionField.clear();
+                    trainAnswerArea.clear();
+                    if (duplicates.isEmpty()) {
+                        showAlert("Success", "FAQ added successfully!");
+                    } else {
+                        FAQMatch closest = duplicates.get(0);
+                        showAlert("Possible Duplicate", String.format(
+                            "FAQ added, but it is a near duplicate of \"%s\" (similarity %.2f).",
+                            closest.getFaq().getQuestion(), closest.getScore()));
+                    }
+                });
+            } catch (RuntimeException e) {
+                System.err.println("Error training FAQ: " + e.getMessage());
+                Platform.runLater(() -> {
+                    trainButton.setDisable(false);
+                    showAlert("Training Error", "The FAQ could not be added.");
+                });
+            }
+        });
     }
     
     private void deleteFAQ() {
-        String selected = faqListView.getSelectionModel().getSelectedItem();
+        FAQ selected = faqListView.getSelectionModel().getSelectedItem();
         if (selected == null) {
             showAlert("Selection Error", "Please select an FAQ to delete.");
             return;
         }
         
-        // Extract question from list item
-        String question = selected.split(" -> ")[0];
-        chatBot.removeFAQ(question);
-        refreshFAQList();
-        showAlert("Success", "FAQ deleted successfully!");
+        deleteFAQButton.setDisable(true);
+        worker.execute(() -> {
+            try {
+                chatBot.removeFAQ(selected.getQuestion());
+                Platform.runLater(() -> {
+                    deleteFAQButton.setDisable(false);
+                    showAlert("Success", "FAQ deleted successfully!");
+                });
+            } catch (RuntimeException e) {
+                System.err.println("Error deleting FAQ: " + e.getMessage());
+                Platform.runLater(() -> {
+                    deleteFAQButton.setDisable(false);
+                    showAlert("Delete Error", "The FAQ could not be deleted.");
+                });
+            }
+        });
+    }
+    
+    private void updateFAQPaging() {
+        int shown = faqList.getRows().size();
+        faqCountLabel.setText(shown == 0
+            ? String.format("%,d FAQs", faqList.getTotal())
+            : String.format("%,d-%,d of %,d FAQs", faqList.getOffset() + 1, faqList.getOffset() + shown, faqList.getTotal()));
+        previousFAQPageButton.setDisable(!faqList.hasPreviousPage());
+        nextFAQPageButton.setDisable(!faqList.hasNextPage());
+    }
+    
+    /**
+     * Release the chatbot when the window closes
+     */
+    public void shutdown() {
+        for (PendingReply reply : pendingReplies) {
+            reply.cancel();
+        }
+        faqList.close();
+        worker.shutdown();
+        try {
+            // Let a running request finish before the storage closes
+            if (!worker.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Chatbot worker still busy at shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        transcript.close();
+        chatBot.shutdown();
     }
     
-    private void refreshFAQList() {
-        faqList.clear();
-        List<FAQ> faqs = chatBot.getAllFAQs();
-        for (FAQ faq : faqs) {
-            String display = faq.getQuestion() + " -> " + 
-                (faq.getAnswer().length() > 50 ? 
-                    faq.getAnswer().substring(0, 50) + "..." : 
-                    faq.getAnswer());
-            faqList.add(display);
+    /**
+     * A reply queued on the worker. Whichever of the worker and the UI
+     * claims it first decides whether it runs or is cancelled.
+     */
+    private static final class PendingReply {
+        final ChatMessage placeholder;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile boolean cancelled;
+        
+        PendingReply(ChatMessage placeholder) {
+            this.placeholder = placeholder;
+        }
+        
+        boolean start() {
+            return claimed.compareAndSet(false, true);
+        }
+        
+        boolean cancel() {
+            cancelled = claimed.compareAndSet(false, true);
+            return cancelled;
+        }
+        
+        boolean isCancelled() {
+            return cancelled;
         }
     }
     
@@ -0,0 +1,55 @@
+package com.chatbot.ui;
+
+import java.io.IOException;
+
+/**
+ * One message of the chat transcript. The text of an old message may have
+ * been moved to a {@link TranscriptSpill}; it is then read back on demand.
+ */
+public final class ChatMessage {
+    
+    /**
+     * Who wrote a message
+     */
+    public enum Sender {
+        USER, BOT
+    }
+    
+    private final Sender sender;
+    private String text;
+    private TranscriptSpill spill;
+    private long spillOffset;
+    
+    ChatMessage(Sender sender, String text) {
+        this.sender = sender;
+        this.text = text;
+    }
+    
+    public Sender getSender() {
+        return sender;
+    }
+    
+    /**
+     * Text of the message, read from the spill file if it was moved there
+     */
+    public String getText() {
+        if (text != null) {
+            return text;
+        }
+        try {
+            return spill.read(spillOffset);
+        } catch (IOException e) {
+            System.err.println("Error reading chat transcript: " + e.getMessage());
+            return "";
+        }
+    }
+    
+    /**
+     * Move the text to the spill file and release it
+     */
+    void spillTo(TranscriptSpill spill) throws IOException {
+        this.spillOffset = spill.append(text);
+        this.spill = spill;
+        this.text = null;
+    }
+}
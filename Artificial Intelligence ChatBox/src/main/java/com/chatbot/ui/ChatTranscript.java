@@ -0,0 +1,156 @@
+package com.chatbot.ui;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.io.IOException;
+
+/**
+ * Bounded list of chat messages backing the transcript view.
+ *
+ * At most a fixed number of message texts are kept in memory. Beyond that,
+ * the oldest messages are either dropped or, with spilling enabled, have
+ * their text moved to a temporary file. Spilled messages stay in the list
+ * as small handles and are read back when their rows scroll into view, so
+ * the whole conversation remains scrollable at a bounded text footprint.
+ * Only to be used on the JavaFX application thread.
+ */
+public class ChatTranscript implements AutoCloseable {
+    
+    /**
+     * System property: number of message texts kept in memory
+     */
+    public static final String CAPACITY_PROPERTY = "chatbot.ui.transcriptCapacity";
+    
+    /**
+     * System property: whether older messages are moved to a temporary file
+     * instead of being dropped
+     */
+    public static final String SPILL_PROPERTY = "chatbot.ui.transcriptSpill";
+    
+    private final int capacity;
+    private final ObservableList<ChatMessage> messages;
+    private TranscriptSpill spill;
+    // Messages before this index have been spilled
+    private int firstInMemory;
+    
+    /**
+     * Create a transcript configured by system properties
+     */
+    public ChatTranscript() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, 1000), Boolean.getBoolean(SPILL_PROPERTY));
+    }
+    
+    /**
+     * @param capacity number of message texts kept in memory
+     * @param spill whether older messages are moved to a temporary file instead of being dropped
+     */
+    public ChatTranscript(int capacity, boolean spill) {
+        this.capacity = Math.max(1, capacity);
+        this.messages = FXCollections.observableArrayList();
+        if (spill) {
+            try {
+                this.spill = new TranscriptSpill();
+            } catch (IOException e) {
+                System.err.println("Error creating transcript spill file, dropping old messages instead: "
+                    + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Messages in the order they were added
+     */
+    public ObservableList<ChatMessage> getMessages() {
+        return messages;
+    }
+    
+    /**
+     * Add a message at the end
+     *
+     * @return the message added
+     */
+    public ChatMessage add(ChatMessage.Sender sender, String text) {
+        ChatMessage message = new ChatMessage(sender, text);
+        messages.add(message);
+        evictOverflow();
+        return message;
+    }
+    
+    /**
+     * Replace the text of a message still held in memory, such as a
+     * placeholder for a reply being computed
+     *
+     * @return false if the message was cleared, dropped or spilled meanwhile
+     */
+    public boolean replace(ChatMessage message, String text) {
+        for (int i = messages.size() - 1; i >= firstInMemory; i--) {
+            if (messages.get(i) == message) {
+                messages.set(i, new ChatMessage(message.getSender(), text));
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void evictOverflow() {
+        int overflow = messages.size() - firstInMemory - capacity;
+        if (overflow <= 0) {
+            return;
+        }
+        if (spill != null) {
+            try {
+                for (int i = 0; i < overflow; i++) {
+                    messages.get(firstInMemory).spillTo(spill);
+                    firstInMemory++;
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("Error spilling chat transcript, dropping old messages instead: "
+                    + e.getMessage());
+                dropSpilled();
+            }
+        }
+        messages.remove(0, messages.size() - capacity);
+    }
+    
+    public void clear() {
+        messages.clear();
+        firstInMemory = 0;
+        if (spill != null) {
+            try {
+                spill.clear();
+            } catch (IOException e) {
+                System.err.println("Error clearing chat transcript: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Remove the spilled messages and stop spilling
+     */
+    private void dropSpilled() {
+        messages.remove(0, firstInMemory);
+        firstInMemory = 0;
+        closeSpill();
+    }
+    
+    private void closeSpill() {
+        if (spill != null) {
+            try {
+                spill.close();
+            } catch (IOException e) {
+                System.err.println("Error deleting chat transcript: " + e.getMessage());
+            }
+            spill = null;
+        }
+    }
+    
+    /**
+     * Delete the spill file
+     */
+    @Override
+    public void close() {
+        closeSpill();
+    }
+}
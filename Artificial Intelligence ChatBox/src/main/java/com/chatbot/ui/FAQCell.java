@@ -0,0 +1,25 @@
+package com.chatbot.ui;
+
+import com.chatbot.model.FAQ;
+import javafx.scene.control.ListCell;
+
+/**
+ * Shows an FAQ as its question followed by the start of its answer
+ */
+class FAQCell extends ListCell<FAQ> {
+    
+    private static final int ANSWER_PREVIEW = 50;
+    
+    @Override
+    protected void updateItem(FAQ faq, boolean empty) {
+        super.updateItem(faq, empty);
+        if (empty || faq == null) {
+            setText(null);
+            return;
+        }
+        
+        String answer = faq.getAnswer();
+        setText(faq.getQuestion() + " -> "
+            + (answer.length() > ANSWER_PREVIEW ? answer.substring(0, ANSWER_PREVIEW) + "..." : answer));
+    }
+}
@@ -0,0 +1,242 @@
+package com.chatbot.ui;
+
+import com.chatbot.core.ChatBotEngine;
+import com.chatbot.model.FAQ;
+import com.chatbot.model.FAQPage;
+import com.chatbot.training.FAQTrainer;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One page of the FAQs matching a filter, backing the FAQ management view.
+ *
+ * Pages are searched on a background thread and only the latest request is
+ * shown, so typing a filter or paging never blocks the UI however large the
+ * corpus is. FAQ changes are applied to the shown rows as they happen:
+ * removed FAQs disappear, and new ones are appended when the last page of
+ * the unfiltered list is shown. The page is then reloaded in the background
+ * to pick up everything else a change moved. Rows are the FAQs themselves,
+ * so they are told apart by identity rather than by their text. Only to be
+ * used on the JavaFX application thread, apart from {@link #close()}.
+ */
+public class FAQListModel implements AutoCloseable {
+    
+    /**
+     * System property: number of FAQs shown per page
+     */
+    public static final String PAGE_SIZE_PROPERTY = "chatbot.ui.faqPageSize";
+    
+    private final ChatBotEngine chatBot;
+    private final int pageSize;
+    private final ObservableList<FAQ> rows;
+    private final ExecutorService loader;
+    private final AtomicLong latestRequest;
+    private final FAQTrainer.ChangeListener listener;
+    private final Queue<Change> pendingChanges;
+    private final AtomicBoolean changesScheduled;
+    private Runnable onPageLoaded;
+    private String filter;
+    private int offset;
+    private int total;
+    
+    /**
+     * Create a model with the page size configured by system properties.
+     * Nothing is shown until the first {@link #load}.
+     */
+    public FAQListModel(ChatBotEngine chatBot) {
+        this.chatBot = chatBot;
+        this.pageSize = Math.max(1, Integer.getInteger(PAGE_SIZE_PROPERTY, 100));
+        this.rows = FXCollections.observableArrayList();
+        this.loader = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "faq-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.latestRequest = new AtomicLong();
+        this.pendingChanges = new ConcurrentLinkedQueue<>();
+        this.changesScheduled = new AtomicBoolean();
+        this.filter = "";
+        this.listener = this::queueChange;
+        chatBot.addFAQChangeListener(listener);
+    }
+    
+    /**
+     * FAQs of the page shown
+     */
+    public ObservableList<FAQ> getRows() {
+        return rows;
+    }
+    
+    /**
+     * Run after every page or change applied to the rows, e.g. to update
+     * paging controls
+     */
+    public void setOnPageLoaded(Runnable onPageLoaded) {
+        this.onPageLoaded = onPageLoaded;
+    }
+    
+    /**
+     * Show the page of the FAQs matching a filter that starts at an offset
+     */
+    public void load(String filter, int offset) {
+        this.filter = filter;
+        this.offset = Math.max(0, offset);
+        long request = latestRequest.incrementAndGet();
+        String requestedFilter = this.filter;
+        int requestedOffset = this.offset;
+        loader.execute(() -> {
+            // A newer request makes this one moot before it starts
+            if (request != latestRequest.get()) {
+                return;
+            }
+            FAQPage page = chatBot.searchFAQs(requestedFilter, requestedOffset, pageSize);
+            Platform.runLater(() -> {
+                if (request == latestRequest.get()) {
+                    show(page);
+                }
+            });
+        });
+    }
+    
+    public void nextPage() {
+        if (hasNextPage()) {
+            load(filter, offset + pageSize);
+        }
+    }
+    
+    public void previousPage() {
+        if (hasPreviousPage()) {
+            load(filter, Math.max(0, offset - pageSize));
+        }
+    }
+    
+    public boolean hasNextPage() {
+        return offset + pageSize < total;
+    }
+    
+    public boolean hasPreviousPage() {
+        return offset > 0;
+    }
+    
+    /**
+     * Position of the first row among all matching FAQs
+     */
+    public int getOffset() {
+        return offset;
+    }
+    
+    /**
+     * Number of matching FAQs on all pages
+     */
+    public int getTotal() {
+        return total;
+    }
+    
+    private void show(FAQPage page) {
+        offset = page.getOffset();
+        total = page.getTotal();
+        List<FAQ> faqs = page.getFaqs();
+        if (!sameFAQs(rows, faqs)) {
+            rows.setAll(faqs);
+        }
+        // Paging past the end after removals shows the last page instead
+        if (faqs.isEmpty() && offset > 0 && offset >= total) {
+            load(filter, Math.max(0, (total - 1) / pageSize * pageSize));
+        }
+        pageLoaded();
+    }
+    
+    private static boolean sameFAQs(List<FAQ> shown, List<FAQ> loaded) {
+        if (shown.size() != loaded.size()) {
+            return false;
+        }
+        for (int i = 0; i < shown.size(); i++) {
+            if (shown.get(i) != loaded.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Called on the thread changing the FAQs; changes are applied together
+     * on the JavaFX application thread
+     */
+    private void queueChange(List<FAQ> added, List<FAQ> removed) {
+        pendingChanges.add(new Change(added, removed));
+        if (changesScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::applyChanges);
+        }
+    }
+    
+    private void applyChanges() {
+        changesScheduled.set(false);
+        List<FAQ> added = new ArrayList<>();
+        Set<FAQ> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        Change change;
+        while ((change = pendingChanges.poll()) != null) {
+            for (FAQ faq : change.removed) {
+                // An FAQ added and removed again before being shown is not shown at all
+                if (!added.removeIf(a -> a == faq)) {
+                    removed.add(faq);
+                }
+            }
+            added.addAll(change.added);
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        
+        int shown = rows.size();
+        rows.removeIf(removed::contains);
+        if (filter.trim().isEmpty()) {
+            boolean lastPage = offset + shown >= total;
+            total += added.size() - removed.size();
+            if (lastPage) {
+                for (int i = 0; i < added.size() && rows.size() < pageSize; i++) {
+                    rows.add(added.get(i));
+                }
+            }
+        }
+        pageLoaded();
+        
+        // Rows shift across pages and filters match new FAQs, which only a reload shows
+        load(filter, offset);
+    }
+    
+    private void pageLoaded() {
+        if (onPageLoaded != null) {
+            onPageLoaded.run();
+        }
+    }
+    
+    /**
+     * FAQs added and removed by one change
+     */
+    private static final class Change {
+        final List<FAQ> added;
+        final List<FAQ> removed;
+        
+        Change(List<FAQ> added, List<FAQ> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+    
+    /**
+     * Stop loading pages and following changes
+     */
+    @Override
+    public void close() {
+        chatBot.removeFAQChangeListener(listener);
+        loader.shutdownNow();
+    }
+}
@@ -0,0 +1,67 @@
+package com.chatbot.ui;
+
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+/**
+ * Renders a chat message as a speech bubble. The list view only creates as
+ * many cells as fit on screen and reuses them while scrolling, so the bubble
+ * nodes are built once per cell and only their text and style change.
+ */
+class MessageCell extends ListCell<ChatMessage> {
+    
+    private static final String USER_STYLE = "-fx-background-color: #007bff; -fx-background-radius: 15;";
+    private static final String BOT_STYLE = "-fx-background-color: #ffffff; -fx-background-radius: 15; -fx-border-color: #e0e0e0; -fx-border-radius: 15;";
+    
+    // Horizontal space around a bubble: cell padding, bubble padding and scroll bar
+    private static final double MARGIN = 110;
+    
+    private final HBox messageBox;
+    private final TextFlow textFlow;
+    private final Text text;
+    
+    MessageCell(ListView<ChatMessage> listView) {
+        text = new Text();
+        text.setFont(Font.font("Arial", 14));
+        
+        textFlow = new TextFlow(text);
+        textFlow.setPadding(new Insets(10, 15, 10, 15));
+        textFlow.maxWidthProperty().bind(listView.widthProperty().subtract(MARGIN));
+        
+        messageBox = new HBox(textFlow);
+        
+        setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+        setStyle("-fx-background-color: transparent; -fx-padding: 0;");
+    }
+    
+    @Override
+    protected void updateItem(ChatMessage message, boolean empty) {
+        super.updateItem(message, empty);
+        if (empty || message == null) {
+            setGraphic(null);
+            return;
+        }
+        
+        text.setText(message.getText());
+        if (message.getSender() == ChatMessage.Sender.USER) {
+            messageBox.setAlignment(Pos.CENTER_RIGHT);
+            messageBox.setPadding(new Insets(5, 10, 5, 50));
+            text.setFill(Color.WHITE);
+            textFlow.setStyle(USER_STYLE);
+        } else {
+            messageBox.setAlignment(Pos.CENTER_LEFT);
+            messageBox.setPadding(new Insets(5, 50, 5, 10));
+            text.setFill(Color.BLACK);
+            textFlow.setStyle(BOT_STYLE);
+        }
+        setGraphic(messageBox);
+    }
+}
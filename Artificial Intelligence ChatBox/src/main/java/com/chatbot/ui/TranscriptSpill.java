@@ -0,0 +1,56 @@
+package com.chatbot.ui;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Temporary file holding the texts of old chat messages, each as a length
+ * followed by its UTF-8 bytes, so any of them can be read back by offset.
+ * The file is deleted when the spill is closed or the JVM exits.
+ */
+final class TranscriptSpill implements AutoCloseable {
+    
+    private final Path path;
+    private final RandomAccessFile file;
+    
+    TranscriptSpill() throws IOException {
+        this.path = Files.createTempFile("chatbot-transcript", ".bin");
+        path.toFile().deleteOnExit();
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+    }
+    
+    /**
+     * Append a text and return its offset
+     */
+    long append(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        long offset = file.length();
+        file.seek(offset);
+        file.writeInt(bytes.length);
+        file.write(bytes);
+        return offset;
+    }
+    
+    String read(long offset) throws IOException {
+        file.seek(offset);
+        byte[] bytes = new byte[file.readInt()];
+        file.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Drop every text
+     */
+    void clear() throws IOException {
+        file.setLength(0);
+    }
+    
+    @Override
+    public void close() throws IOException {
+        file.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,145 @@
+package com.chatbot.nlp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the single-pass scanner against the regex pipeline it replaced
+ */
+class NLPProcessorTest {
+    
+    private static final Set<String> STOP_WORDS = Set.of(
+        "a", "an", "the", "is", "are", "was", "were", "be", "been", "being",
+        "have", "has", "had", "do", "does", "did", "will", "would", "should",
+        "could", "may", "might", "must", "can", "this", "that", "these", "those",
+        "i", "you", "he", "she", "it", "we", "they", "me", "him", "her", "us", "them"
+    );
+    
+    private static final String[] WORDS = {
+        "how", "reset", "password", "The", "IS", "Them", "thesE", "being", "beings", "a1", "i", "us",
+        "usa", "wouldn", "shouldshould", "thosethose1", "account", "login", "2fa", "café", "İstanbul",
+        "KELVIN", "K", "straße", "ﬁle", "ǅ", "ΣΑΣ"
+    };
+    
+    private static final String SEPARATORS = " \t\n\r.,;:!?-_'\"()[]{}/\\@#$%^&*+=<>|~`  　";
+    
+    private final NLPProcessor nlp = new NLPProcessor();
+    
+    /**
+     * The tokenizer before the scanner: lower-case, replace every character
+     * outside [a-z0-9\s] with a space, split on whitespace, drop stop words
+     */
+    private static List<String> regexTokenize(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return new ArrayList<>();
+        }
+        String normalized = text.toLowerCase()
+            .replaceAll("[^a-z0-9\\s]", " ")
+            .trim();
+        return Arrays.stream(normalized.split("\\s+"))
+            .filter(word -> !word.isEmpty() && !STOP_WORDS.contains(word))
+            .collect(Collectors.toList());
+    }
+    
+    private void assertSameTokens(String text) {
+        assertEquals(regexTokenize(text), nlp.tokenize(text), () -> "Tokens of " + escape(text));
+    }
+    
+    @Test
+    void everyCharacterFoldsLikeToLowerCase() {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            assertSameTokens("x" + (char) c + "y");
+            assertSameTokens("a " + (char) c + " it");
+        }
+    }
+    
+    @Test
+    void stopWordsAndTheirNeighboursMatch() {
+        for (String stopWord : STOP_WORDS) {
+            assertSameTokens(stopWord);
+            assertSameTokens(stopWord.toUpperCase());
+            assertSameTokens(stopWord + "s");
+            assertSameTokens("x" + stopWord);
+            assertSameTokens(stopWord.substring(0, stopWord.length() - 1));
+            // Longer than a packed key, with a stop word as its prefix
+            assertSameTokens(stopWord + stopWord + stopWord + stopWord + stopWord + stopWord);
+        }
+    }
+    
+    @Test
+    void randomAsciiMatches() {
+        Random random = new Random(1);
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                text.append((char) random.nextInt(128));
+            }
+            assertSameTokens(text.toString());
+        }
+    }
+    
+    @Test
+    void randomWordsMatch() {
+        Random random = new Random(2);
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder text = new StringBuilder();
+            int words = random.nextInt(12);
+            for (int i = 0; i < words; i++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                text.append(random.nextBoolean() ? word : word.toUpperCase());
+                text.append(SEPARATORS.charAt(random.nextInt(SEPARATORS.length())));
+            }
+            assertSameTokens(text.toString());
+        }
+    }
+    
+    @Test
+    void randomUnicodeMatches() {
+        Random random = new Random(3);
+        for (int n = 0; n < 20_000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int i = 0; i < length; i++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        text.append((char) random.nextInt(128));
+                        break;
+                    case 1:
+                        text.append((char) (128 + random.nextInt(0x2000 - 128)));
+                        break;
+                    case 2:
+                        text.appendCodePoint(random.nextInt(Character.MAX_CODE_POINT + 1));
+                        break;
+                    default:
+                        text.append(WORDS[random.nextInt(WORDS.length)]);
+                        break;
+                }
+            }
+            assertSameTokens(text.toString());
+        }
+    }
+    
+    @Test
+    void emptyAndBlankInputsHaveNoTokens() {
+        assertEquals(Collections.emptyList(), nlp.tokenize(null));
+        assertSameTokens("");
+        assertSameTokens(" \t\n ");
+        assertSameTokens("the a an");
+    }
+    
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c >= 0x20 && c < 0x7F) {
+                escaped.append(c);
+            } else {
+                escaped.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return escaped.toString();
+    }
+}
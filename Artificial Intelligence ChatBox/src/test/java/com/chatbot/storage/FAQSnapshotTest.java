@@ -0,0 +1,180 @@
+package com.chatbot.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.chatbot.model.FAQ;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that compaction and snapshot upgrades keep the corpus intact
+ */
+class FAQSnapshotTest {
+    
+    @TempDir
+    Path directory;
+    
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(FAQStorage.COMPACT_BYTES_PROPERTY);
+    }
+    
+    private static FAQ faq(int i) {
+        return new FAQ("Where is order " + i + "?", "Answer " + i, Arrays.asList("order", "track" + i));
+    }
+    
+    /**
+     * Snapshot files in the test directory, by segment
+     */
+    private Map<Long, Path> snapshots() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            Map<Long, Path> snapshots = new TreeMap<>();
+            for (Path file : files.collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(FAQSnapshot.FILE_PREFIX) && !name.endsWith("tmp")) {
+                    snapshots.put(Long.parseLong(name.substring(FAQSnapshot.FILE_PREFIX.length())), file);
+                }
+            }
+            return snapshots;
+        }
+    }
+    
+    private static int version(Path snapshot) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(snapshot))) {
+            in.readInt();
+            return in.readInt();
+        }
+    }
+    
+    private List<String> questionTerms(FAQStorage storage, String question) {
+        List<String> terms = new ArrayList<>();
+        for (int id : storage.getFAQ(question).getQuestionTerms()) {
+            terms.add(storage.getTermDictionary().term(id));
+        }
+        return terms;
+    }
+    
+    @Test
+    void compactedSnapshotAndLaterSegmentsSurviveARestart() throws IOException {
+        System.setProperty(FAQStorage.COMPACT_BYTES_PROPERTY, "1");
+        FAQStorage storage = new FAQStorage(directory);
+        List<FAQ> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(faq(i));
+        }
+        storage.addFAQs(batch);
+        storage.recordUsage(storage.getFAQ(faq(4).getQuestion()));
+        List<String> compacted = FAQStorageTest.contents(storage);
+        storage.close();
+        
+        Map<Long, Path> snapshots = snapshots();
+        assertEquals(1, snapshots.size());
+        assertEquals(3, version(snapshots.values().iterator().next()));
+        long covered = snapshots.keySet().iterator().next();
+        
+        System.clearProperty(FAQStorage.COMPACT_BYTES_PROPERTY);
+        FAQStorage reopened = new FAQStorage(directory);
+        assertEquals(compacted, FAQStorageTest.contents(reopened));
+        assertEquals(Arrays.asList("where", "order", "7"), questionTerms(reopened, faq(7).getQuestion()));
+        
+        // Changes to snapshot FAQs and new ones go to the segments after it
+        reopened.removeFAQ(faq(2).getQuestion().toUpperCase());
+        reopened.addFAQ(new FAQ(faq(3).getQuestion(), "Replaced", null));
+        reopened.addFAQ(faq(20));
+        for (int i = 0; i < 3; i++) {
+            reopened.recordUsage(reopened.getFAQ(faq(9).getQuestion()));
+        }
+        reopened.recordUsage(reopened.getFAQ(faq(20).getQuestion()));
+        List<String> expected = FAQStorageTest.contents(reopened);
+        assertEquals(20, expected.size());
+        reopened.close();
+        
+        assertEquals(Collections.singleton(covered), snapshots().keySet());
+        assertTrue(FAQLog.listSegments(directory).stream().allMatch(segment -> segment > covered));
+        FAQStorage again = new FAQStorage(directory);
+        assertEquals(expected, FAQStorageTest.contents(again));
+        assertNull(again.getFAQ(faq(2).getQuestion()));
+        assertEquals("Replaced", again.getFAQ(faq(3).getQuestion()).getAnswer());
+        assertEquals(1, again.getFAQ(faq(4).getQuestion()).getUsageCount());
+        assertEquals(3, again.getFAQ(faq(9).getQuestion()).getUsageCount());
+        again.close();
+    }
+    
+    /**
+     * Write a version 2 snapshot: usage count, question, answer, keyword
+     * block and term ids of each FAQ after the terms, with no tables
+     */
+    private void writeVersion2(List<String> terms, List<FAQ> faqs, List<int[][]> termIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(new byte[32]);
+        for (String term : terms) {
+            FAQLog.writeString(out, term);
+        }
+        for (int i = 0; i < faqs.size(); i++) {
+            FAQ faq = faqs.get(i);
+            out.writeInt(faq.getUsageCount());
+            FAQLog.writeString(out, faq.getQuestion());
+            FAQLog.writeString(out, faq.getAnswer());
+            ByteArrayOutputStream keywords = new ByteArrayOutputStream();
+            FAQLog.writeStrings(new DataOutputStream(keywords), faq.getKeywords());
+            out.writeInt(keywords.size());
+            keywords.writeTo(out);
+            for (int[] ids : termIds.get(i)) {
+                out.writeInt(ids == null ? -1 : ids.length);
+                for (int id : ids == null ? new int[0] : ids) {
+                    out.writeInt(id);
+                }
+            }
+        }
+        byte[] file = bytes.toByteArray();
+        ByteBuffer.wrap(file)
+            .putInt(0x46415153)
+            .putInt(2)
+            .putLong(0)
+            .putLong(file.length)
+            .putInt(terms.size())
+            .putInt(faqs.size());
+        Files.write(directory.resolve(FAQSnapshot.FILE_PREFIX + 0), file);
+    }
+    
+    @Test
+    void version2SnapshotIsUpgraded() throws IOException {
+        writeVersion2(Arrays.asList("reset", "password", "login", "help"),
+            Arrays.asList(
+                new FAQ("Reset password", "Use the link", Arrays.asList("reset", "password"), 4),
+                new FAQ("Login help", "Call us", null, 0)),
+            Arrays.asList(
+                new int[][] { { 0, 1 }, { 0, 1 } },
+                new int[][] { { 2, 3 }, null }));
+        
+        FAQStorage storage = new FAQStorage(directory);
+        List<String> expected = Arrays.asList(
+            "Reset password | Use the link | [reset, password] | 4",
+            "Login help | Call us | null | 0");
+        assertEquals(expected, FAQStorageTest.contents(storage));
+        storage.addFAQ(new FAQ("Change email", "In settings", Arrays.asList("email")));
+        storage.close();
+        
+        Map<Long, Path> snapshots = snapshots();
+        assertEquals(1, snapshots.size());
+        assertTrue(snapshots.keySet().iterator().next() > 0);
+        assertEquals(3, version(snapshots.values().iterator().next()));
+        
+        FAQStorage reopened = new FAQStorage(directory);
+        List<String> upgraded = new ArrayList<>(expected);
+        upgraded.add("Change email | In settings | [email] | 0");
+        assertEquals(upgraded, FAQStorageTest.contents(reopened));
+        assertEquals(Arrays.asList("login", "help"), questionTerms(reopened, "login HELP"));
+        assertNull(reopened.getFAQ("Login help").getKeywordTerms());
+        reopened.close();
+    }
+}
@@ -0,0 +1,171 @@
+package com.chatbot.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.chatbot.model.FAQ;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that the FAQ store keeps every saved change across restarts
+ */
+class FAQStorageTest {
+    
+    @TempDir
+    Path directory;
+    
+    // Makes the next log sync fail, after the records were written
+    private static final AtomicBoolean failNextSync = new AtomicBoolean();
+    
+    /**
+     * Store in the test directory whose log fails a sync when asked to
+     */
+    private final class FailingStorage extends FAQStorage {
+        FailingStorage() {
+            super(directory);
+        }
+        
+        @Override
+        FAQLog openLog(long segment, long existingBytes) throws IOException {
+            return new FAQLog(directory.toAbsolutePath(), segment, existingBytes) {
+                @Override
+                void sync() throws IOException {
+                    if (failNextSync.getAndSet(false)) {
+                        throw new IOException("Simulated disk failure");
+                    }
+                    super.sync();
+                }
+            };
+        }
+    }
+    
+    @BeforeEach
+    void saveUsageOnlyWhenAsked() {
+        System.setProperty(FAQStorage.USAGE_FLUSH_MILLIS_PROPERTY, "600000");
+        failNextSync.set(false);
+    }
+    
+    @AfterEach
+    void clearProperties() {
+        System.clearProperty(FAQStorage.USAGE_FLUSH_MILLIS_PROPERTY);
+        System.clearProperty(FAQStorage.COMPACT_BYTES_PROPERTY);
+    }
+    
+    private static FAQ faq(int i) {
+        return new FAQ("How do I reset password " + i + "?", "Answer " + i, Arrays.asList("reset", "key" + i));
+    }
+    
+    /**
+     * Everything stored about each FAQ, in corpus order
+     */
+    static List<String> contents(FAQStorage storage) {
+        List<String> contents = new ArrayList<>();
+        for (FAQ faq : storage.getAllFAQs()) {
+            contents.add(faq.getQuestion() + " | " + faq.getAnswer() + " | " + faq.getKeywords() + " | "
+                + faq.getUsageCount());
+        }
+        return contents;
+    }
+    
+    private Path lastSegment() throws IOException {
+        List<Long> segments = FAQLog.listSegments(directory);
+        return FAQLog.segmentPath(directory, segments.get(segments.size() - 1));
+    }
+    
+    @Test
+    void changesSurviveARestart() {
+        FAQStorage storage = new FAQStorage(directory);
+        for (int i = 0; i < 10; i++) {
+            storage.addFAQ(faq(i));
+        }
+        storage.addFAQs(Arrays.asList(faq(10), faq(11), faq(10)));
+        storage.addFAQ(new FAQ(faq(3).getQuestion().toUpperCase(), "Replaced", null));
+        assertEquals(1, storage.removeFAQ(faq(5).getQuestion()).size());
+        storage.removeFAQs(Arrays.asList(faq(6).getQuestion(), "No such question"));
+        storage.recordUsage(storage.getFAQ(faq(1).getQuestion()));
+        storage.recordUsage(storage.getFAQ(faq(1).getQuestion()));
+        storage.recordUsage(storage.getFAQ(faq(11).getQuestion()));
+        List<String> expected = contents(storage);
+        assertEquals(10, expected.size());
+        storage.close();
+        
+        FAQStorage reopened = new FAQStorage(directory);
+        assertEquals(expected, contents(reopened));
+        assertEquals(2, reopened.getFAQ(faq(1).getQuestion().toLowerCase()).getUsageCount());
+        assertNull(reopened.getFAQ(faq(5).getQuestion()));
+        reopened.close();
+    }
+    
+    @Test
+    void tornRecordIsCutOffOnRestart() throws IOException {
+        FAQStorage storage = new FAQStorage(directory);
+        storage.addFAQ(faq(1));
+        storage.addFAQ(faq(2));
+        storage.close();
+        Path segment = lastSegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        
+        FAQStorage reopened = new FAQStorage(directory);
+        assertNotNull(reopened.getFAQ(faq(1).getQuestion()));
+        assertNull(reopened.getFAQ(faq(2).getQuestion()));
+        reopened.addFAQ(faq(3));
+        List<String> expected = contents(reopened);
+        reopened.close();
+        
+        FAQStorage again = new FAQStorage(directory);
+        assertEquals(expected, contents(again));
+        assertEquals(2, again.size());
+        again.close();
+    }
+    
+    @Test
+    void failedAppendIsRolledBack() throws IOException {
+        FAQStorage storage = new FailingStorage();
+        storage.addFAQ(faq(1));
+        long size = Files.size(lastSegment());
+        failNextSync.set(true);
+        assertThrows(UncheckedIOException.class, () -> storage.addFAQs(Arrays.asList(faq(2), faq(3))));
+        assertNull(storage.getFAQ(faq(2).getQuestion()));
+        assertEquals(size, Files.size(lastSegment()));
+        storage.addFAQ(faq(4));
+        storage.removeFAQ(faq(1).getQuestion());
+        List<String> expected = contents(storage);
+        storage.close();
+        
+        FAQStorage reopened = new FAQStorage(directory);
+        assertEquals(expected, contents(reopened));
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.getFAQ(faq(4).getQuestion()));
+        reopened.close();
+    }
+    
+    @Test
+    void usageOfAFailedFlushIsSavedOnClose() {
+        FAQStorage storage = new FailingStorage();
+        storage.addFAQ(faq(1));
+        FAQ stored = storage.getFAQ(faq(1).getQuestion());
+        for (int i = 0; i < 3; i++) {
+            storage.recordUsage(stored);
+        }
+        failNextSync.set(true);
+        storage.saveFAQs();
+        assertFalse(failNextSync.get(), "the flush should have reached the log");
+        storage.close();
+        
+        FAQStorage reopened = new FAQStorage(directory);
+        assertEquals(3, reopened.getFAQ(faq(1).getQuestion()).getUsageCount());
+        reopened.close();
+    }
+}